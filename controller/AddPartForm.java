@@ -108,7 +108,6 @@ public class AddPartForm
      */
     public boolean createOutsourcedPart()
     {
-        int partId = Inventory.generateId("Part"); // Generates unique ID
         String partName = partNameField.getText();
         String partCompanyName = partSource.getText();
         int partInv, partMax, partMin;
@@ -146,6 +145,7 @@ public class AddPartForm
             return false;
         }
 
+        int partId = Inventory.generateId("Part"); // Generates unique ID, only once input is valid so no ID is wasted
         Inventory.addPart(new Outsourced(partId, partName, partPrice, partInv, partMin, partMax, partCompanyName));
         System.out.println("ObjectCreated-> Outsourced Part");
 
@@ -160,7 +160,6 @@ public class AddPartForm
      */
     public boolean createInHousePart()
     {
-        int partId = Inventory.generateId("Part");  // Generates unique ID
         String partName = partNameField.getText();
         int partMachineId, partInv, partMax, partMin;
         double partPrice;
@@ -199,6 +198,7 @@ public class AddPartForm
             return false;
         }
 
+        int partId = Inventory.generateId("Part");  // Generates unique ID, only once input is valid so no ID is wasted
         Inventory.addPart(new InHouse(partId, partName, partPrice, partInv, partMin, partMax, partMachineId));
         System.out.println("ObjectCreated-> In-House Part");
 
@@ -1,7 +1,10 @@
 package controller;
 
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -15,7 +18,12 @@ import javafx.scene.control.TextField;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.stage.Stage;
 
+import model.BackgroundSearch;
+import model.BillOfMaterials;
 import model.Inventory;
+import model.SearchFilter;
+import model.SearchMatcher;
+import model.SearchSession;
 import model.Part;
 import model.Product;
 import model.Tools;
@@ -49,31 +57,49 @@ public class AddProductForm implements Initializable
     public TableColumn<Part, String> removePartNameCol;
     public TableColumn<Part, Integer> removePartInvCol;
     public TableColumn<Part, Double> removePartPriceCol;
+    public TableColumn<Part, Integer> removePartQtyCol;
 
-    ObservableList<Part> associatedParts = FXCollections.observableArrayList();  // Temporarily holds parts associated with product
+    ObservableList<Part> associatedParts = FXCollections.observableArrayList();  // Temporarily holds parts associated with product, one row per part
+    BillOfMaterials associatedQuantities = new BillOfMaterials();  // Quantity of each part in associatedParts
 
     int productId;  // ID of product currently being created
 
+    private static final SearchSession.Matcher<Part> partMatcher =
+            (query, part) -> SearchMatcher.matches(query, part.getId(), part.getName());
+
+    // Part searches narrow down the previous result and run off the JavaFX thread
+    private final SearchSession<Part> partSearch = new SearchSession<>(Inventory::lookupPart, partMatcher, Inventory::getPartVersion);
+    private final BackgroundSearch<SearchFilter<Part>> partSearchTask = new BackgroundSearch<>(
+            input -> new SearchFilter<>(input, partSearch.search(input), partMatcher, Part::getId), Inventory::getPartVersion, this::showPartResults);
+
+    private FilteredList<Part> partView;  // Live view of all parts shown in addPartTable
+    private final Label partsNotFoundLabel = new Label("Nothing Found, Please Try A Different Input.");
+
     /**
      * Sets up parts table that user can use to associate parts with product.
      */
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) // Populate parts table
     {
+        // Populates addPartTable TableView, searching only swaps the predicate of its view
+        partView = Inventory.createPartView();
+        SortedList<Part> sortedParts = new SortedList<>(partView);
+        sortedParts.comparatorProperty().bind(addPartTable.comparatorProperty());  // Clicking a column header sorts the view
+        addPartTable.setItems(sortedParts);
+        addPartIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
+        addPartNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
+        addPartInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
+        addPartPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+
         loadAllParts();
     }
 
     /**
-     * Loads all existing parts into the addPartsTable.
+     * Shows all existing parts in the addPartsTable.
      */
     public void loadAllParts()
     {
-        // Populates addPartTable TableView
-        addPartTable.setItems(Inventory.getAllParts());
-        addPartIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
-        addPartNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        addPartInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        addPartPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+        partView.setPredicate(null);  // No predicate shows every part
     }
 
     /**
@@ -86,7 +112,6 @@ public class AddProductForm implements Initializable
     {
         System.out.println("ActionEvent-> Save Product button triggered");
 
-        productId = Inventory.generateId("Product");  // Generate unique ID
         String productName = productNameField.getText();
         int productInv, productMax, productMin;
         double productPrice;
@@ -123,13 +148,16 @@ public class AddProductForm implements Initializable
             return;
         }
 
-        Inventory.addProduct(new Product(productId, productName, productPrice, productInv, productMin, productMax));  // Create the product
+        productId = Inventory.generateId("Product");  // Generate unique ID, only once input is valid so no ID is wasted
+        Product newProduct = new Product(productId, productName, productPrice, productInv, productMin, productMax);  // Create the product
 
         for (Part associatedPart : associatedParts)
         {
-            Inventory.lookupProduct(productId).addAssociatedPart(associatedPart);  // Fetches current product, and adds associated part
+            newProduct.addAssociatedPart(associatedPart, associatedQuantities.quantityOf(associatedPart.getId()));  // Parts are added before the product is saved, so the journal records them
         }
 
+        Inventory.addProduct(newProduct);
+
         returnToMain(actionEvent);  // Go back to MainForm
     }
 
@@ -143,7 +171,7 @@ public class AddProductForm implements Initializable
     }
 
     /**
-     * Removes part from associated part table.
+     * Removes one of the selected part from associated part table, the row goes once its quantity reaches 0.
      */
     public void onRemoveAssociatedPart()
     {
@@ -157,14 +185,25 @@ public class AddProductForm implements Initializable
         {
             if(associatedParts.get(i).getId() == selectedPartId)  // ID match found
             {
-                associatedParts.remove(i);
+                int quantity = associatedQuantities.quantityOf(selectedPartId) - 1;
+                associatedQuantities.setQuantity(selectedPartId, quantity);
+
+                if (quantity == 0)
+                {
+                    associatedParts.remove(i);
+                }
+                else
+                {
+                    removePartTable.refresh();  // Redraws the quantity column
+                }
                 return;
             }
         }
     }
 
     /**
-     * Adds part from table containing all parts, to table containing associated parts.
+     * Adds part from table containing all parts, to table containing associated parts. Adding a part that
+     * is already associated raises its quantity.
      */
     public void onAddAssociatedPart()
     {
@@ -172,7 +211,14 @@ public class AddProductForm implements Initializable
 
         ObservableList<Part> selectedPart = addPartTable.getSelectionModel().getSelectedItems();  // Grabs the part information in list form
 
-        associatedParts.add(selectedPart.get(0));  // Add part to temporary list of associated parts
+        if (associatedQuantities.add(selectedPart.get(0).getId(), 1) == 1)  // Part was not associated yet
+        {
+            associatedParts.add(selectedPart.get(0));  // Add part to temporary list of associated parts
+        }
+        else
+        {
+            removePartTable.refresh();
+        }
 
         // Updates bottom table to now contain new part
         removePartTable.setItems(associatedParts);
@@ -180,27 +226,35 @@ public class AddProductForm implements Initializable
         removePartNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
         removePartInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
         removePartPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+        removePartQtyCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(associatedQuantities.quantityOf(cell.getValue().getId())));
     }
 
     /**
-     * Populates AddPartTable with results of user's search. Uses lookup function from Inventory class.
+     * Starts a background search of parts, AddPartTable is filled by showPartResults once it finishes.
+     * Uses lookup function from Inventory class.
      */
     public void onSearchParts()  // Locates part by ID or name
     {
         System.out.println("ActionEvent-> Search parts triggered");
 
-        addPartTable.setItems(Inventory.lookupPart(searchPartField.getText()));  // Lookup function will return a list of parts
-        addPartIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
-        addPartNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        addPartInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        addPartPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
-
-        addPartTable.setPlaceholder(new Label("Nothing Found, Please Try A Different Input."));
-
         if(Objects.equals(searchPartField.getText().replaceAll("\\s", ""), ""))  // If input is nothing but spaces, refresh table to original state
         {
+            partSearchTask.cancel();
             loadAllParts();
+            return;
         }
+
+        partSearchTask.submit(searchPartField.getText());
+    }
+
+    /**
+     * Makes AddPartTable show the result of the latest search. Called on the JavaFX thread.
+     * @param foundParts filter matching the parts found by the search.
+     */
+    private void showPartResults(SearchFilter<Part> foundParts)
+    {
+        foundParts.applyTo(partView);  // Table only receives the rows that changed
+        addPartTable.setPlaceholder(partsNotFoundLabel);
     }
 
     /**
@@ -208,6 +262,7 @@ public class AddProductForm implements Initializable
      */
     public void returnToMain(ActionEvent actionEvent) throws IOException  // Returns to MainForm
     {
+        partSearchTask.cancel();  // No result arrives for this form's table once it is left
         Parent root = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("/view/mainForm.fxml")));
         Stage stage = (Stage)((Node)actionEvent.getSource()).getScene().getWindow();
         Scene scene = new Scene(root, 1000, 400); // Length, height
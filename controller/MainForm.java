@@ -1,6 +1,10 @@
 package controller;
 
+import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -11,15 +15,25 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.stage.Stage;
 
+import model.BackgroundSearch;
 import model.Inventory;
+import model.PagedList;
 import model.Part;
 import model.Product;
+import model.SearchFilter;
+import model.SearchMatcher;
+import model.SearchSession;
 import model.Tools;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.ResourceBundle;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 /**
  * A controller that handles main menu of application.
@@ -42,13 +56,56 @@ public class MainForm implements Initializable
     public TextField partSearchField;
     public TextField productSearchField;
 
+    private static final SearchSession.Matcher<Part> partMatcher =
+            (query, part) -> SearchMatcher.matches(query, part.getId(), part.getName());
+    private static final SearchSession.Matcher<Product> productMatcher =
+            (query, product) -> SearchMatcher.matches(query, product.getId(), product.getName());
+
+    // Remember previous results so each typed character only narrows down the last search
+    private final SearchSession<Part> partSearch = new SearchSession<>(Inventory::lookupPart, partMatcher, Inventory::getPartVersion);
+    private final SearchSession<Product> productSearch = new SearchSession<>(Inventory::lookupProduct, productMatcher, Inventory::getProductVersion);
+
+    // Searches run off the JavaFX thread, results are shown once the user stops typing
+    private final BackgroundSearch<SearchFilter<Part>> partSearchTask = new BackgroundSearch<>(
+            input -> new SearchFilter<>(input, partSearch.search(input), partMatcher, Part::getId), Inventory::getPartVersion, this::showPartResults);
+    private final BackgroundSearch<SearchFilter<Product>> productSearchTask = new BackgroundSearch<>(
+            input -> new SearchFilter<>(input, productSearch.search(input), productMatcher, Product::getId), Inventory::getProductVersion, this::showProductResults);
+
+    private TableRows<Part> partRows;  // What the part table shows, paged unless a search or sort needs a view
+    private TableRows<Product> productRows;
+
+    private final Label noPartsLabel = new Label("Currently No Parts");
+    private final Label noProductsLabel = new Label("Currently No Products");
+    private final Label partsNotFoundLabel = new Label("Nothing Found, Please Try A Different Input.");
+    private final Label productsNotFoundLabel = new Label("Nothing Found, Please Try A Different Input.");
+
     /**
      * Populates part and product table fields with information from user generated objects.
      * Additionally, tables can be populated with test data if Inventory.loadTestData = true.
+     * Tables are given their rows and column setup once, searches only change what the rows show.
      */
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle)
     {
+        // Fetches data to populate PART table views
+        partRows = new TableRows<>(partTable, partPriceCol, partInvCol, Inventory.createPagedPartList(),
+                Inventory.getPartTableOrder(), Inventory::getPartOrder, Inventory::createPartView, Part::getId);
+        partIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
+        partNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
+        partInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
+        partPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+
+        // Fetches data to populate PRODUCT table views
+        productRows = new TableRows<>(productTable, productPriceCol, productInvCol, Inventory.createPagedProductList(),
+                Inventory.getProductTableOrder(), Inventory::getProductOrder, Inventory::createProductView, Product::getId);
+        productIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
+        productNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
+        productInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
+        productPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+
+        partTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);  // Several rows can be deleted at once
+        productTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+
         loadAllParts();
         loadAllProducts();
 
@@ -62,6 +119,7 @@ public class MainForm implements Initializable
     {
         System.out.println("ActionEvent-> Add parts button triggered");
 
+        cancelSearches();
         Parent root = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("/view/addPartForm.fxml")));
         Stage stage = (Stage)((Node)actionEvent.getSource()).getScene().getWindow();
         Scene scene = new Scene(root, 600, 600); // Length, height
@@ -85,6 +143,7 @@ public class MainForm implements Initializable
         if (selectedPart.size() > 0)  // Checks to verify user has selected a row
         {
             Tools.modifyId = selectedPart.get(0).getId();  // modifyId is used to transfer part ID across scenes
+            cancelSearches();
 
             Parent root = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("/view/modifyPartForm.fxml")));
             Stage stage = (Stage)((Node)actionEvent.getSource()).getScene().getWindow();
@@ -96,21 +155,41 @@ public class MainForm implements Initializable
     }
 
     /**
-     * Deletes selected part from list. Asks user to confirm deletion.
+     * Deletes selected part(s) from list in one batch. Asks user to confirm deletion.
      * Will notify user if deletion fails to execute.
      */
     public void onPartDelete()
     {
         System.out.println("ActionEvent-> Part delete triggered");
 
-        ObservableList<Part> selection = partTable.getSelectionModel().getSelectedItems();  // Fetches the part information in list form
+        List<Part> selection = new ArrayList<>(partTable.getSelectionModel().getSelectedItems());  // Copied, selection changes as rows are removed
         boolean successfulDeletion = false;
 
         if (selection.size() > 0) // Checks to verify user has selected a row
         {
-            if(Tools.confirmationMessage("","Permanently Delete Part?"))
+            boolean partsInUse = false;
+
+            for (Part selectedPart : selection)
+            {
+                if (Inventory.isPartUsed(selectedPart.getId()))  // Checks no product lists the part
+                {
+                    partsInUse = true;
+                    break;
+                }
+            }
+
+            if (partsInUse)
+            {
+                Tools.errorMessage("Cannot Delete This Part", "Parts associated with a product cannot be deleted");
+            }
+            else
             {
-                successfulDeletion = Inventory.deletePart(selection.get(0)); // Will return false if deletion fails
+                String message = selection.size() == 1 ? "Permanently Delete Part?" : "Permanently Delete " + selection.size() + " Parts?";
+
+                if(Tools.confirmationMessage("", message))
+                {
+                    successfulDeletion = Inventory.deleteParts(selection) > 0; // Will return 0 if deletion fails
+                }
             }
         }
 
@@ -118,9 +197,7 @@ public class MainForm implements Initializable
         {
             Tools.infoMessage("Deletion Not Executed", "");
         }
-
-        onSearchParts();  // If search box is not empty, changes will not be reflected visually, unless this is called
-
+        // Table view is live, the deleted part disappears from any active search on its own
     }
 
     /**
@@ -130,6 +207,7 @@ public class MainForm implements Initializable
     {
         System.out.println("ActionEvent-> Add products button triggered");
 
+        cancelSearches();
         Parent root = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("/view/addProductForm.fxml")));
         Stage stage = (Stage)((Node)actionEvent.getSource()).getScene().getWindow();
         Scene scene = new Scene(root, 800, 500); // Length, height
@@ -153,6 +231,7 @@ public class MainForm implements Initializable
         if (selectedProduct.size() > 0)  // Checks to verify user has selected a row
         {
             Tools.modifyId = selectedProduct.get(0).getId(); // modifyId is used to pass the product ID between scenes
+            cancelSearches();
 
             Parent root = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("/view/modifyProductForm.fxml")));
             Stage stage = (Stage) ((Node) actionEvent.getSource()).getScene().getWindow();
@@ -164,7 +243,7 @@ public class MainForm implements Initializable
     }
 
     /**
-     * Deletes selected product from list. Asks user to confirm deletion.
+     * Deletes selected product(s) from list in one batch. Asks user to confirm deletion.
      * Will notify user if deletion fails to execute.
      * Products with associated parts will not be deleted.
      */
@@ -172,23 +251,33 @@ public class MainForm implements Initializable
     {
         System.out.println("ActionEvent-> Delete products button triggered");
 
-        ObservableList<Product> selection = productTable.getSelectionModel().getSelectedItems();  // Fetches the product information in list form
+        List<Product> selection = new ArrayList<>(productTable.getSelectionModel().getSelectedItems());  // Copied, selection changes as rows are removed
         boolean successfulDeletion = false;
 
         if (selection.size() > 0) // Checks to verify user has selected a row
         {
-            Product selectedProduct = selection.get(0);
+            List<Product> deletableProducts = new ArrayList<>();
 
-            if(!(selectedProduct.getAllAssociatedParts().size() > 0))  // Checks product has no associated parts
+            for (Product selectedProduct : selection)
             {
-                if (Tools.confirmationMessage(" ", "Permanently Delete Product?"))  // User must confirm deletion
+                if(!(selectedProduct.getAssociatedPartCount() > 0) && !Inventory.isProductUsed(selectedProduct.getId()))  // Checks product has no associated parts, and is not a component
                 {
-                    successfulDeletion = Inventory.deleteProduct(selectedProduct); // Will equal true if product deleted
+                    deletableProducts.add(selectedProduct);
+                }
+            }
+
+            if(deletableProducts.size() == selection.size())
+            {
+                String message = selection.size() == 1 ? "Permanently Delete Product?" : "Permanently Delete " + selection.size() + " Products?";
+
+                if (Tools.confirmationMessage(" ", message))  // User must confirm deletion
+                {
+                    successfulDeletion = Inventory.deleteProducts(deletableProducts) > 0; // Will be true if products deleted
                 }
             }
             else
             {
-                Tools.errorMessage("Cannot Delete This Product", "Products with parts associated cannot be deleted");
+                Tools.errorMessage("Cannot Delete This Product", "Products with parts associated, or used by other products, cannot be deleted");
             }
         }
 
@@ -196,95 +285,249 @@ public class MainForm implements Initializable
         {
             Tools.infoMessage("Select A Valid Part To Delete", "");
         }
-
-        onSearchProducts();  // If search box is not empty, changes will not be reflected visually, unless this is called
+        // Table view is live, the deleted product disappears from any active search on its own
     }
 
     /**
-     *  Activated when user types in search box. Fills part table with result of search.
-     *  If search box is empty, table goes back to original state.
-     *  Uses lookup function from the Inventory class.
+     *  Activated when user types in search box. Starts a background search, the part table is filled
+     *  by showPartResults once it finishes. If search box is empty, table goes back to original state.
+     *  Uses lookup function from the Inventory class, narrowing down the previous result when possible.
      */
     public void onSearchParts()
     {
         System.out.println("ActionEvent-> Search parts triggered");
 
-
-        partTable.setItems(Inventory.lookupPart(partSearchField.getText()));
-        partIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
-        partNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        partInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        partPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
-
-        partTable.setPlaceholder(new Label("Nothing Found, Please Try A Different Input."));
-
         if(Objects.equals(partSearchField.getText().replaceAll("\\s", ""), ""))  // If input is nothing but spaces, refresh table to original state
         {
+            partSearchTask.cancel();
             loadAllParts();
+            return;
         }
+
+        partSearchTask.submit(partSearchField.getText());
     }
 
     /**
-     * Populates product table with results of user's search.
-     * Uses lookup function from Inventory class.
+     * Starts a background search of products, the product table is filled by showProductResults
+     * once it finishes. Uses lookup function from Inventory class, narrowing down the previous result when possible.
      * Triggers when interacting with search box.
      */
     public void onSearchProducts()
     {
         System.out.println("ActionEvent-> Search products triggered");
 
-        productTable.setItems(Inventory.lookupProduct(productSearchField.getText()));  // Set items to search result
-        productIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
-        productNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        productInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        productPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
-
-        productTable.setPlaceholder(new Label("Nothing Found, Please Try A Different Input."));
-
         if(Objects.equals(productSearchField.getText().replaceAll("\\s", ""), ""))  // If input is nothing but spaces, refresh table to original state
         {
+            productSearchTask.cancel();
             loadAllProducts();
+            return;
         }
+
+        productSearchTask.submit(productSearchField.getText());
     }
 
     /**
-     * Fetches all parts in existence, loads them into table.
-     * Will also load test data if Inventory.loadTestData = true.
+     * Makes part table show the result of the latest search. Called on the JavaFX thread.
+     * @param foundParts filter matching the parts found by the search.
      */
-    public void loadAllParts()
+    private void showPartResults(SearchFilter<Part> foundParts)
     {
-        // Fetches data to populate PART table views
-        partTable.setItems(Inventory.getAllParts());
-        partIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
-        partNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        partInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        partPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+        partTable.setPlaceholder(partsNotFoundLabel);
+        partRows.show(foundParts);
+    }
 
-        partTable.setPlaceholder(new Label("Currently No Parts")); // Will appear if all parts are deleted
+    /**
+     * Makes product table show the result of the latest search. Called on the JavaFX thread.
+     * @param foundProducts filter matching the products found by the search.
+     */
+    private void showProductResults(SearchFilter<Product> foundProducts)
+    {
+        productTable.setPlaceholder(productsNotFoundLabel);
+        productRows.show(foundProducts);
     }
 
     /**
-     * Fetches all products in existence, loads them into table.
-     * Will also load test data if Inventory.loadTestData = true.
+     * Shows all parts in existence in the table.
+     * Test data is loaded when the view is created if Inventory.loadTestData = true.
      */
-    public void loadAllProducts()
+    public void loadAllParts()
     {
-        // Fetches data to populate PRODUCT table views
-        productTable.setItems(Inventory.getAllProducts());
-        productIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
-        productNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        productInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        productPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+        partTable.setPlaceholder(noPartsLabel); // Will appear if all parts are deleted
+        partRows.show(null);  // Every part is shown by the paged list again
+    }
 
-        productTable.setPlaceholder(new Label("Currently No Products")); // Will appear if all parts are deleted
+    /**
+     * Shows all products in existence in the table.
+     * Test data is loaded when the view is created if Inventory.loadTestData = true.
+     */
+    public void loadAllProducts()
+    {
+        productTable.setPlaceholder(noProductsLabel); // Will appear if all parts are deleted
+        productRows.show(null);
     }
 
     /**
-     * Close application with exit code 0.
+     * Close application with exit code 0, after writing any unsaved changes to disk.
      * Activated when user clicks "Exit" button.
      */
     public void onExit()
     {
-        System.exit(0);
+        Platform.exit();  // Runs Main.stop(), which saves the inventory
+    }
+
+    /**
+     * Stops searches still running for this form's tables, called before switching to another form.
+     */
+    private void cancelSearches()
+    {
+        partSearchTask.cancel();
+        productSearchTask.cancel();
+    }
+
+    /**
+     * Decides what a table shows. While no search is shown and the table is unsorted, or sorted by price or
+     * stock alone, it shows a paged list that only loads the rows it draws, in table order or in the order of
+     * the inventory's sorted indexes. A filtered view of every row is only made while a search is shown or
+     * the table is sorted by another column, and dropped once neither is. Search results sorted by price or
+     * stock (or not sorted) are paged too, placed by their positions in the same order, so showing them
+     * again after a change costs the number of results rather than the number of rows.
+     * @param <T> Part or Product.
+     */
+    private static class TableRows<T>
+    {
+        private final TableView<T> table;
+        private final TableColumn<T, ?> priceCol;
+        private final TableColumn<T, ?> stockCol;
+        private final PagedList<T> paged;
+        private final PagedList.RowOrder tableOrder;
+        private final Function<Boolean, PagedList.RowOrder> orderBy;
+        private final Supplier<FilteredList<T>> createView;
+        private final ToIntFunction<T> idOf;
+
+        private SearchFilter<T> search;  // Search shown, null while every row is shown
+        private FilteredList<T> view;  // Rows the search matches, null unless a search or another sort needs it
+        private SortedList<T> sorted;  // View sorted by a column without an index, null unless shown
+        private PagedList.RowOrder pagedOrder;  // Order the paged list follows, null while the sorted view is shown
+        private boolean descending;
+
+        /**
+         * Takes over sorting of a table and shows every row.
+         * @param table table being shown.
+         * @param priceCol column showing price.
+         * @param stockCol column showing stock.
+         * @param paged paged list of every row.
+         * @param tableOrder order of the rows when the table is not sorted.
+         * @param orderBy order of the rows by price (true) or stock (false), lowest first.
+         * @param createView makes a live filtered view of every row.
+         * @param idOf reads the ID of a row.
+         */
+        TableRows(TableView<T> table, TableColumn<T, ?> priceCol, TableColumn<T, ?> stockCol, PagedList<T> paged,
+                PagedList.RowOrder tableOrder, Function<Boolean, PagedList.RowOrder> orderBy,
+                Supplier<FilteredList<T>> createView, ToIntFunction<T> idOf)
+        {
+            this.table = table;
+            this.priceCol = priceCol;
+            this.stockCol = stockCol;
+            this.paged = paged;
+            this.tableOrder = tableOrder;
+            this.orderBy = orderBy;
+            this.createView = createView;
+            this.idOf = idOf;
+
+            table.setSortPolicy(sortedTable ->  // Clicking a column header sorts through here
+            {
+                showSorted();
+                return true;
+            });
+        }
+
+        /**
+         * Shows the result of a search, or every row again.
+         * @param found filter matching the rows found, or null to show every row.
+         */
+        void show(SearchFilter<T> found)
+        {
+            search = found;
+
+            if (found != null)
+            {
+                if (view == null)
+                {
+                    view = newView();
+                }
+                found.applyTo(view);  // Table only receives the rows that changed
+            }
+            else if (view != null)
+            {
+                view.setPredicate(null);
+            }
+            table.sort();
+        }
+
+        private void showSorted()
+        {
+            List<TableColumn<T, ?>> order = table.getSortOrder();
+            boolean byIndex = order.size() == 1 && (order.get(0) == priceCol || order.get(0) == stockCol);
+
+            if (order.isEmpty() || byIndex)
+            {
+                pagedOrder = order.isEmpty() ? tableOrder : orderBy.apply(order.get(0) == priceCol);
+                descending = byIndex && order.get(0).getSortType() == TableColumn.SortType.DESCENDING;
+                sorted = null;
+
+                if (search == null)
+                {
+                    view = null;  // Not needed while every row is paged
+                    paged.setOrder(pagedOrder, descending);
+                }
+                else
+                {
+                    pageResults();
+                }
+                table.setItems(paged);
+            }
+            else
+            {
+                pagedOrder = null;
+                if (view == null)
+                {
+                    view = newView();
+                }
+                if (sorted == null)
+                {
+                    sorted = new SortedList<>(view);
+                }
+                sorted.setComparator(table.getComparator());
+                table.setItems(sorted);
+            }
+        }
+
+        /**
+         * Pages through the search results in the order the table is sorted by.
+         */
+        private void pageResults()
+        {
+            int[] ids = new int[view.size()];
+
+            for (int i = 0; i < ids.length; i++)
+            {
+                ids[i] = idOf.applyAsInt(view.get(i));
+            }
+            paged.setOrder(new PagedList.Subset(pagedOrder, ids), descending);
+        }
+
+        private FilteredList<T> newView()
+        {
+            FilteredList<T> created = createView.get();
+
+            created.addListener((ListChangeListener<T>) change ->  // Rows added, removed, changed or filtered
+            {
+                if (created == view && pagedOrder != null && search != null)
+                {
+                    pageResults();
+                }
+            });
+            return created;
+        }
     }
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package controller;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -38,13 +41,27 @@ public class ModifyProductForm implements Initializable
     public TableColumn<Part, String> removePartNameCol;
     public TableColumn<Part, Integer> removePartInvCol;
     public TableColumn<Part, Double> removePartPriceCol;
+    public TableColumn<Part, Integer> removePartQtyCol;
 
     public TableView<Part> addPartTable;  // Table displaying parts that have not yet been added
     public TableView<Part> removePartTable;  // Table displaying parts that have already been added
 
     public Button saveProductButton;
 
-    ObservableList<Part> associatedParts = FXCollections.observableArrayList();
+    ObservableList<Part> associatedParts = FXCollections.observableArrayList();  // One row per part
+    BillOfMaterials associatedQuantities = new BillOfMaterials();  // Quantity of each part in associatedParts
+    BillOfMaterials components = new BillOfMaterials();  // Sub-assemblies of the product, not edited here but kept on save
+
+    private static final SearchSession.Matcher<Part> partMatcher =
+            (query, part) -> SearchMatcher.matches(query, part.getId(), part.getName());
+
+    // Part searches narrow down the previous result and run off the JavaFX thread
+    private final SearchSession<Part> partSearch = new SearchSession<>(Inventory::lookupPart, partMatcher, Inventory::getPartVersion);
+    private final BackgroundSearch<SearchFilter<Part>> partSearchTask = new BackgroundSearch<>(
+            input -> new SearchFilter<>(input, partSearch.search(input), partMatcher, Part::getId), Inventory::getPartVersion, this::showPartResults);
+
+    private FilteredList<Part> partView;  // Live view of all parts shown in addPartTable
+    private final Label partsNotFoundLabel = new Label("Nothing Found, Please Try A Different Input.");
 
     /**
      * Since part is being modified, all its existing data is filled into the text boxes.
@@ -53,6 +70,16 @@ public class ModifyProductForm implements Initializable
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle)
     {
+        // Populates addPartTable TableView, searching only swaps the predicate of its view
+        partView = Inventory.createPartView();
+        SortedList<Part> sortedParts = new SortedList<>(partView);
+        sortedParts.comparatorProperty().bind(addPartTable.comparatorProperty());  // Clicking a column header sorts the view
+        addPartTable.setItems(sortedParts);
+        addPartIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
+        addPartNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
+        addPartInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
+        addPartPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+
         populateFields();
     }
 
@@ -108,7 +135,12 @@ public class ModifyProductForm implements Initializable
 
             for (Part part : associatedParts) // Add all associated parts
             {
-                newProduct.addAssociatedPart(part);
+                newProduct.addAssociatedPart(part, associatedQuantities.quantityOf(part.getId()));
+            }
+
+            for (int i = 0; i < components.size(); i++) // Keep the components, the form only edits parts
+            {
+                newProduct.setComponentQuantity(components.partIdAt(i), components.quantityAt(i));
             }
 
             Inventory.updateProduct(productIndex, newProduct);  // Overwrite old product object with new product object
@@ -131,8 +163,8 @@ public class ModifyProductForm implements Initializable
     }
 
     /**
-     *  Removes associated part from visual table, no part is actually removed from the product object until user saves changes to product.
-     *  User is asked to press confirm before removing.
+     *  Removes one of the selected associated part from visual table, the row goes once its quantity reaches 0. No part is
+     *  actually removed from the product object until user saves changes to product. User is asked to press confirm before removing.
      */
     public void onRemoveAssociatedPart()
     {
@@ -149,7 +181,17 @@ public class ModifyProductForm implements Initializable
             {
                 if(Tools.confirmationMessage("", "Remove Associated Part?"))
                 {
-                    associatedParts.remove(i);
+                    int quantity = associatedQuantities.quantityOf(selectedPartId) - 1;
+                    associatedQuantities.setQuantity(selectedPartId, quantity);
+
+                    if (quantity == 0)
+                    {
+                        associatedParts.remove(i);
+                    }
+                    else
+                    {
+                        removePartTable.refresh();  // Redraws the quantity column
+                    }
                 }
                 return;
             }
@@ -157,7 +199,8 @@ public class ModifyProductForm implements Initializable
     }
 
     /**
-     *  Adds associated part to the visual table, no part is added to the product object until user saves product.
+     *  Adds associated part to the visual table, or raises its quantity if it is already there. No part is added to
+     *  the product object until user saves product.
      */
     public void onAddAssociatedPart()
     {
@@ -166,36 +209,50 @@ public class ModifyProductForm implements Initializable
         ObservableList<Part> selectedPart;
         selectedPart = addPartTable.getSelectionModel().getSelectedItems();  // Grabs the part information in list form
 
-        associatedParts.add(selectedPart.get(0));
+        if (associatedQuantities.add(selectedPart.get(0).getId(), 1) == 1)  // Part was not associated yet
+        {
+            associatedParts.add(selectedPart.get(0));
+        }
+        else
+        {
+            removePartTable.refresh();
+        }
 
         removePartTable.setItems(associatedParts);
         removePartIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
         removePartNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
         removePartInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
         removePartPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+        removePartQtyCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(associatedQuantities.quantityOf(cell.getValue().getId())));
     }
 
     /**
-     *  Activated when user types in search box. Fills addPartTable with result of search.
-     *  If search box is empty, table goes back to original state.
+     *  Activated when user types in search box. Starts a background search, addPartTable is filled
+     *  by showPartResults once it finishes. If search box is empty, table goes back to original state.
      *  Uses lookup function from the Inventory class.
      */
     public void onSearchParts()
     {
         System.out.println("ActionEvent-> Search parts triggered");
 
-        addPartTable.setItems(Inventory.lookupPart(searchPartField.getText()));
-        addPartIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
-        addPartNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        addPartInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        addPartPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
-
-        addPartTable.setPlaceholder(new Label("Nothing Found, Please Try A Different Input."));
-
         if(Objects.equals(searchPartField.getText().replaceAll("\\s", ""), ""))  // If input is nothing but spaces, refresh table to original state
         {
+            partSearchTask.cancel();
             loadAllParts();
+            return;
         }
+
+        partSearchTask.submit(searchPartField.getText());
+    }
+
+    /**
+     *  Makes addPartTable show the result of the latest search. Called on the JavaFX thread.
+     *  @param foundParts filter matching the parts found by the search.
+     */
+    private void showPartResults(SearchFilter<Part> foundParts)
+    {
+        foundParts.applyTo(partView);  // Table only receives the rows that changed
+        addPartTable.setPlaceholder(partsNotFoundLabel);
     }
 
     /**
@@ -203,6 +260,7 @@ public class ModifyProductForm implements Initializable
      */
     public void returnToMain(ActionEvent actionEvent) throws IOException  // Returns to main screen
     {
+        partSearchTask.cancel();  // No result arrives for this form's table once it is left
         Tools.modifyId = -1; // Reset modify ID to default value
 
         Parent root = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("/view/mainForm.fxml")));
@@ -234,12 +292,15 @@ public class ModifyProductForm implements Initializable
             loadAllParts();
 
             // // Populates removePartTable TableView (parts associated with product)
-            associatedParts.addAll(Inventory.lookupProduct(Tools.modifyId).getAllAssociatedParts());
+            associatedParts.addAll(currentProduct.getAllAssociatedParts());
+            associatedQuantities = currentProduct.getBillOfMaterials();
+            components = currentProduct.getComponents();
             removePartTable.setItems(associatedParts);
             removePartIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
             removePartNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
             removePartInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
             removePartPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+            removePartQtyCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(associatedQuantities.quantityOf(cell.getValue().getId())));
         }
         else
         {
@@ -248,15 +309,10 @@ public class ModifyProductForm implements Initializable
     }
 
     /**
-     * Loads all existing parts into the addPartsTable.
+     * Shows all existing parts in the addPartsTable.
      */
     public void loadAllParts()
     {
-        // Populates addPartTable TableView
-        addPartTable.setItems(Inventory.getAllParts());
-        addPartIdCol.setCellValueFactory(new PropertyValueFactory<>("Id"));
-        addPartNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        addPartInvCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        addPartPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+        partView.setPredicate(null);  // No predicate shows every part
     }
 }
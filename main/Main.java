@@ -1,11 +1,19 @@
 package main;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
+import model.FxProjection;
+import model.Inventory;
+import model.InventoryJournal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Objects;
 
 /**
@@ -13,12 +21,60 @@ import java.util.Objects;
  */
 public class Main extends Application
 {
+    private static final Path snapshotFile = Path.of(System.getProperty("inventory.snapshot", "inventory.snapshot"));
+
+    private static final Path journalFile = Path.of(System.getProperty("inventory.journal", "inventory.journal"));
+
+    private static boolean saveOnExit = true;  // False if the saved inventory could not be read, so it is not replaced
+
     /**
-     * Loads mainForm, gives window size.
+     * Restores saved inventory, loads mainForm, gives window size.
+     * Snapshot location can be set with -Dinventory.snapshot, journal location and durability can be set
+     * with -Dinventory.journal and -Dinventory.durability (PER_OP, BATCHED, ASYNC).
+     * -Dinventory.partStorage=columnar keeps parts in arrays instead of one object per part, and
+     * -Dinventory.partStorage=offheap keeps them outside the Java heap.
+     * If the snapshot cannot be read, it and the journal are moved aside (.bad) and nothing is saved until the next start.
      */
     @Override
     public void start(Stage primaryStage) throws Exception
     {
+        FxProjection.attachToFxThread();  // Changes made by other threads reach the tables on this thread
+
+        try
+        {
+            Inventory.loadSnapshot(snapshotFile);
+        }
+        catch (IOException failedToLoad)  // Damaged, or written by a different version, saving now would replace it
+        {
+            System.out.println("Debug Info (Main): Snapshot not loaded: " + failedToLoad.getMessage());
+            saveOnExit = false;
+            Inventory.loadTestData = false;  // Test data would look like the saved inventory
+
+            if (!moveAside(journalFile) || !moveAside(snapshotFile))  // Journal records only make sense on top of the snapshot, a snapshot left in place fails again
+            {
+                System.out.println("Debug Info (Main): Move or repair " + snapshotFile + " before starting again");
+                Platform.exit();
+                return;
+            }
+        }
+
+        if (saveOnExit)
+        {
+            try
+            {
+                Inventory.openJournal(journalFile,
+                        InventoryJournal.Durability.valueOf(System.getProperty("inventory.durability", "BATCHED")));
+            }
+            catch (IOException | IllegalArgumentException failedToOpen)  // Application still runs, changes are only kept in memory
+            {
+                System.out.println("Debug Info (Main): Journal not opened, changes will not be saved: " + failedToOpen.getMessage());
+            }
+        }
+        else
+        {
+            System.out.println("Debug Info (Main): Saved inventory moved to .bad files, changes will not be saved");
+        }
+
         Parent root = FXMLLoader.load(Objects.requireNonNull(getClass().getResource("/view/mainForm.fxml")));
         primaryStage.setTitle("Inventory System"); // Window name
         primaryStage.setScene(new Scene(root, 1000, 400));  // Window size (horizontal, vertical)
@@ -26,6 +82,48 @@ public class Main extends Application
         primaryStage.show();
     }
 
+    /**
+     * Saves a snapshot of the inventory when the window is closed, so the next start does not replay the journal.
+     */
+    @Override
+    public void stop()
+    {
+        if (saveOnExit)
+        {
+            try
+            {
+                Inventory.saveSnapshot(snapshotFile);
+            }
+            catch (IOException failedToSave)  // Journal still holds every change
+            {
+                System.out.println("Debug Info (Main): Snapshot not saved: " + failedToSave.getMessage());
+            }
+        }
+        Inventory.closeJournal();
+    }
+
+    /**
+     * Renames a file that could not be loaded to the same name ending in .bad, so it is kept for recovery.
+     * @param file file to move, nothing happens if it does not exist.
+     * @return true if the file was moved or did not exist, false if it is still in place.
+     */
+    private static boolean moveAside(Path file)
+    {
+        try
+        {
+            if (Files.exists(file))
+            {
+                Files.move(file, file.resolveSibling(file.getFileName() + ".bad"));  // Fails if an earlier .bad file is still there
+            }
+            return true;
+        }
+        catch (IOException failedToMove)
+        {
+            System.out.println("Debug Info (Main): " + file + " not moved: " + failedToMove.getMessage());
+            return false;
+        }
+    }
+
     /**
      * main method of application.
      */
@@ -0,0 +1,140 @@
+package model;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Runs searches for a search box on a background thread so the GUI does not freeze while typing.
+ * Input is only searched once the user stops typing for debounceMillis. A newer input cancels the
+ * older search, and only the result of the latest input is handed back on the JavaFX thread.
+ * A form should cancel its searches when it is left, so no result arrives for a table no longer shown.
+ * @param <R> type of search result.
+ */
+public class BackgroundSearch<R>
+{
+    public static long debounceMillis = 150;  // How long typing must pause before a search starts
+
+    // One daemon thread is shared by every search box, so searches never run at the same time as each other
+    private static final ScheduledExecutorService searchThread = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "inventory-search");
+        thread.setDaemon(true);  // Does not keep application open after the window closes
+        return thread;
+    });
+
+    private final Function<String, R> search;
+    private final IntSupplier inventoryVersion;
+    private final Consumer<R> publisher;
+
+    private final AtomicLong latestRequest = new AtomicLong();
+    private Future<?> pendingSearch;  // Only touched on the JavaFX thread
+
+    /**
+     * Constructs background search.
+     * @param search function that performs the search, runs on the background thread.
+     * @param inventoryVersion returns a number that changes whenever the searched list changes.
+     * @param publisher receives the result on the JavaFX thread, for example to fill a table.
+     */
+    public BackgroundSearch(Function<String, R> search, IntSupplier inventoryVersion, Consumer<R> publisher)
+    {
+        this.search = search;
+        this.inventoryVersion = inventoryVersion;
+        this.publisher = publisher;
+    }
+
+    /**
+     * Schedules a search of the input, cancelling any search that has not finished yet.
+     * Must be called on the JavaFX thread, returns immediately.
+     * @param input text typed by the user.
+     */
+    public void submit(String input)
+    {
+        schedule(input, debounceMillis, false);
+    }
+
+    /**
+     * Cancels any scheduled or running search without starting a new one.
+     */
+    public void cancel()
+    {
+        latestRequest.incrementAndGet();  // Any result still on its way will be ignored
+
+        if (pendingSearch != null)
+        {
+            pendingSearch.cancel(true);
+            pendingSearch = null;
+        }
+    }
+
+    private void schedule(String input, long delayMillis, boolean rerun)
+    {
+        cancel();
+
+        long request = latestRequest.get();
+        pendingSearch = searchThread.schedule(() -> run(input, request, rerun), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs on the background thread. Searches read published snapshots and the thread safe core, never the
+     * lists being changed. The inventory version only changes on the JavaFX thread, so if it is the same before
+     * the search and when the result is published, the result is not older than what the table shows.
+     * If it changed, the result is still published and the search runs once more, so a search that takes
+     * longer than the time between changes (such as during an import) still shows something.
+     * @param rerun true if this search runs again because the inventory changed during the last one.
+     */
+    private void run(String input, long request, boolean rerun)
+    {
+        if (request != latestRequest.get())  // A newer input arrived while this one was waiting
+        {
+            return;
+        }
+
+        int versionBefore = inventoryVersion.getAsInt();
+        R result;
+
+        try
+        {
+            result = search.apply(input);
+        }
+        catch (CancellationException cancelled)  // Newer input interrupted the search
+        {
+            return;
+        }
+        catch (RuntimeException failed)  // Would otherwise be kept in a Future nobody reads, and the table stops updating
+        {
+            System.out.println("Debug Info (BackgroundSearch): Search for \"" + input + "\" failed: " + failed);
+            Platform.runLater(() ->
+            {
+                if (request == latestRequest.get())
+                {
+                    pendingSearch = null;
+                }
+            });
+            return;
+        }
+
+        Platform.runLater(() ->
+        {
+            if (request != latestRequest.get())  // Result is out of date, user kept typing
+            {
+                return;
+            }
+            pendingSearch = null;
+            publisher.accept(result);
+
+            if (versionBefore != inventoryVersion.getAsInt() && !rerun)  // Inventory changed during search, result may miss the change
+            {
+                schedule(input, 0, true);
+            }
+        });
+    }
+}
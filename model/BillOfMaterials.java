@@ -0,0 +1,284 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * The parts a product is built from, as part ID -> quantity. IDs and quantities are kept in two
+ * primitive arrays sorted by part ID, so a product needing four tires stores one entry, lookups are a
+ * binary search, and comparing two bills (such as finding the parts two products share) is a single
+ * merge of both arrays. Quantities are always positive, a part whose quantity drops to 0 is removed.
+ */
+public class BillOfMaterials
+{
+    private int[] partIds;
+    private int[] quantities;
+    private int size = 0;
+
+    /**
+     * Constructs an empty bill.
+     */
+    public BillOfMaterials()
+    {
+        this(4);
+    }
+
+    private BillOfMaterials(int capacity)
+    {
+        partIds = new int[Math.max(capacity, 1)];
+        quantities = new int[partIds.length];
+    }
+
+    /**
+     * @return number of different parts.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param index position in ID order, between 0 and size() - 1.
+     * @return part ID at this position.
+     */
+    public int partIdAt(int index)
+    {
+        return partIds[index];
+    }
+
+    /**
+     * @param index position in ID order, between 0 and size() - 1.
+     * @return quantity at this position.
+     */
+    public int quantityAt(int index)
+    {
+        return quantities[index];
+    }
+
+    /**
+     * @param partId numeric ID of part.
+     * @return quantity of the part, 0 if it is not listed.
+     */
+    public int quantityOf(int partId)
+    {
+        int index = indexOf(partId);
+        return index >= 0 ? quantities[index] : 0;
+    }
+
+    /**
+     * @param partId numeric ID of part.
+     * @return true if the part is listed.
+     */
+    public boolean contains(int partId)
+    {
+        return indexOf(partId) >= 0;
+    }
+
+    /**
+     * @return sum of all quantities.
+     */
+    public long totalQuantity()
+    {
+        long total = 0;
+
+        for (int i = 0; i < size; i++)
+        {
+            total += quantities[i];
+        }
+        return total;
+    }
+
+    /**
+     * Adds to the quantity of a part, listing it if it is not listed yet.
+     * @param partId numeric ID of part.
+     * @param quantity amount added, must be positive.
+     * @return new quantity, or -1 if quantity is not positive or the total would overflow (nothing is changed).
+     */
+    public int add(int partId, int quantity)
+    {
+        int index = indexOf(partId);
+
+        if (quantity <= 0 || (index >= 0 && quantities[index] > Integer.MAX_VALUE - quantity))
+        {
+            return -1;
+        }
+
+        if (index >= 0)
+        {
+            quantities[index] += quantity;
+            return quantities[index];
+        }
+        insert(-index - 1, partId, quantity);
+        return quantity;
+    }
+
+    /**
+     * Sets the quantity of a part, listing it if needed. A quantity of 0 removes the part.
+     * @param partId numeric ID of part.
+     * @param quantity new quantity, 0 or more.
+     * @return true if quantity was valid and set, false if it is negative (nothing is changed).
+     */
+    public boolean setQuantity(int partId, int quantity)
+    {
+        if (quantity < 0)
+        {
+            return false;
+        }
+
+        int index = indexOf(partId);
+
+        if (quantity == 0)
+        {
+            if (index >= 0)
+            {
+                removeAt(index);
+            }
+        }
+        else if (index >= 0)
+        {
+            quantities[index] = quantity;
+        }
+        else
+        {
+            insert(-index - 1, partId, quantity);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a part whatever its quantity.
+     * @param partId numeric ID of part.
+     * @return quantity the part had, 0 if it was not listed.
+     */
+    public int remove(int partId)
+    {
+        int index = indexOf(partId);
+
+        if (index < 0)
+        {
+            return 0;
+        }
+
+        int quantity = quantities[index];
+        removeAt(index);
+        return quantity;
+    }
+
+    /**
+     * Removes every part.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * Finds the parts listed in both bills in one merge of the two ID arrays.
+     * @param other bill to compare with.
+     * @return new bill of the shared parts, each with the smaller of its two quantities.
+     */
+    public BillOfMaterials shared(BillOfMaterials other)
+    {
+        BillOfMaterials result = new BillOfMaterials(Math.min(size, other.size));
+        int i = 0, j = 0;
+
+        while (i < size && j < other.size)
+        {
+            if (partIds[i] < other.partIds[j])
+            {
+                i++;
+            }
+            else if (partIds[i] > other.partIds[j])
+            {
+                j++;
+            }
+            else
+            {
+                result.append(partIds[i], Math.min(quantities[i], other.quantities[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds two bills together in one merge of the two ID arrays.
+     * @param other bill to add.
+     * @return new bill listing every part of either bill, quantities of shared parts are added (capped at Integer.MAX_VALUE).
+     */
+    public BillOfMaterials combined(BillOfMaterials other)
+    {
+        BillOfMaterials result = new BillOfMaterials(size + other.size);
+        int i = 0, j = 0;
+
+        while (i < size || j < other.size)
+        {
+            if (j == other.size || (i < size && partIds[i] < other.partIds[j]))
+            {
+                result.append(partIds[i], quantities[i]);
+                i++;
+            }
+            else if (i == size || partIds[i] > other.partIds[j])
+            {
+                result.append(other.partIds[j], other.quantities[j]);
+                j++;
+            }
+            else
+            {
+                result.append(partIds[i], (int) Math.min((long) quantities[i] + other.quantities[j], Integer.MAX_VALUE));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return independent copy of this bill, trimmed to its size.
+     */
+    public BillOfMaterials copy()
+    {
+        BillOfMaterials result = new BillOfMaterials(size);
+        System.arraycopy(partIds, 0, result.partIds, 0, size);
+        System.arraycopy(quantities, 0, result.quantities, 0, size);
+        result.size = size;
+        return result;
+    }
+
+    /**
+     * @return position of part ID, or -(insertion point) - 1 if it is not listed.
+     */
+    private int indexOf(int partId)
+    {
+        return Arrays.binarySearch(partIds, 0, size, partId);
+    }
+
+    /**
+     * Adds an entry after every other entry, caller makes sure the ID is larger than every listed ID.
+     */
+    private void append(int partId, int quantity)
+    {
+        insert(size, partId, quantity);
+    }
+
+    private void insert(int index, int partId, int quantity)
+    {
+        if (size == partIds.length)
+        {
+            partIds = Arrays.copyOf(partIds, size * 2);
+            quantities = Arrays.copyOf(quantities, size * 2);
+        }
+        System.arraycopy(partIds, index, partIds, index + 1, size - index);
+        System.arraycopy(quantities, index, quantities, index + 1, size - index);
+        partIds[index] = partId;
+        quantities[index] = quantity;
+        size++;
+    }
+
+    private void removeAt(int index)
+    {
+        System.arraycopy(partIds, index + 1, partIds, index, size - index - 1);
+        System.arraycopy(quantities, index + 1, quantities, index, size - index - 1);
+        size--;
+    }
+}
@@ -0,0 +1,451 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Works out every part needed to build a product made from other products (sub-assemblies), down through
+ * every level. The parts needed for one unit of each product are kept once worked out, so products sharing
+ * a sub-assembly reuse its result, and after a change only the changed product and the products built from
+ * it are worked out again. Products that list each other in a loop are reported instead of exploded.
+ * Thread safe.
+ */
+public class BomExplosion
+{
+    private final IntFunction<Product> products;  // Finds products by ID
+    private final WhereUsedIndex componentUsers = new WhereUsedIndex();  // Component product ID -> products built from it
+    private final ConcurrentHashMap<Integer, Requirements> perUnit = new ConcurrentHashMap<>();  // Product ID -> parts for one unit, removed once out of date
+    private final AtomicLong generation = new AtomicLong();  // Increases on every invalidation, results worked out across one are not kept
+
+    /**
+     * Constructs an engine with nothing worked out.
+     * @param products finds a product by ID, returns null if there is none.
+     */
+    public BomExplosion(IntFunction<Product> products)
+    {
+        this.products = products;
+    }
+
+    /**
+     * Works out every part needed for a number of units of a product, including the parts of its components
+     * and of their components.
+     * @param productId numeric ID of product.
+     * @param units number of products to build, 0 or more.
+     * @return part ID -> quantity needed, or null if product is not found, components form a loop or a quantity overflows.
+     */
+    public Requirements explode(int productId, long units)
+    {
+        if (units < 0)
+        {
+            System.out.println("Debug Info (BomExplosion): Units cannot be negative");
+            return null;
+        }
+
+        try
+        {
+            Requirements oneUnit = requirementsOf(productId);
+            return oneUnit == null || units == 1 ? oneUnit : oneUnit.times(units);  // Requirements never change, so one unit can be shared
+        }
+        catch (ArithmeticException overflow)
+        {
+            System.out.println("Debug Info (BomExplosion): Quantities for " + units + " of product " + productId + " are too large");
+            return null;
+        }
+    }
+
+    /**
+     * Marks the parts of a product, and of every product built from it, as out of date. Called whenever
+     * the associated parts or components of a product change.
+     * @param productId numeric ID of changed product.
+     */
+    public void invalidate(int productId)
+    {
+        generation.incrementAndGet();  // Before removing, so explosions running now do not keep what they work out
+
+        if (perUnit.isEmpty())  // Nothing worked out, so nothing to remove (common while loading)
+        {
+            return;
+        }
+
+        IdIndex<Object> visited = new IdIndex<>();
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+
+        perUnit.remove(productId);
+        visited.put(productId, 0);
+        for (int userId : componentUsers.productsUsing(productId))  // Always visited, the product may have been missing when they were exploded
+        {
+            pending.push(userId);
+        }
+
+        while (!pending.isEmpty())
+        {
+            int id = pending.pop();
+
+            if (visited.contains(id))
+            {
+                continue;
+            }
+            visited.put(id, 0);
+
+            if (perUnit.remove(id) != null)  // A product is only kept while its components are, so nothing further up is kept otherwise
+            {
+                for (int userId : componentUsers.productsUsing(id))
+                {
+                    pending.push(userId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the components of a product entering the inventory.
+     * @param product product being added.
+     */
+    public void addProduct(Product product)
+    {
+        BillOfMaterials components = product.componentBill();
+
+        for (int i = 0; i < components.size(); i++)
+        {
+            componentUsers.add(components.partIdAt(i), product.getId());
+        }
+        invalidate(product.getId());
+    }
+
+    /**
+     * Forgets the components of a product leaving the inventory.
+     * @param product product being removed.
+     */
+    public void removeProduct(Product product)
+    {
+        BillOfMaterials components = product.componentBill();
+
+        for (int i = 0; i < components.size(); i++)
+        {
+            componentUsers.remove(components.partIdAt(i), product.getId());
+        }
+        invalidate(product.getId());
+    }
+
+    /**
+     * @param productId numeric ID of product.
+     * @return true if any product lists it as a component.
+     */
+    public boolean isUsed(int productId)
+    {
+        return componentUsers.isUsed(productId);
+    }
+
+    /**
+     * @param productId numeric ID of product.
+     * @return IDs of every product listing it as a component, in no particular order.
+     */
+    public int[] productsUsing(int productId)
+    {
+        return componentUsers.productsUsing(productId);
+    }
+
+    /**
+     * Forgets every product and every result.
+     */
+    public void clear()
+    {
+        generation.incrementAndGet();
+        componentUsers.clear();
+        perUnit.clear();
+    }
+
+    /**
+     * Parts for one unit of a product. Explodes depth first with an explicit stack, so deep products cannot
+     * overflow the call stack, and keeps every result it works out.
+     */
+    private Requirements requirementsOf(int rootId)
+    {
+        Requirements known = perUnit.get(rootId);
+
+        if (known != null)
+        {
+            return known;
+        }
+
+        Product root = products.apply(rootId);
+
+        if (root == null)
+        {
+            System.out.println("Debug Info (BomExplosion): Product " + rootId + " not found");
+            return null;
+        }
+
+        long startGeneration = generation.get();
+        IdIndex<Requirements> worked = new IdIndex<>();  // Results used by this explosion, kept here in case they are invalidated part way
+        IdIndex<Object> onPath = new IdIndex<>();  // Products being exploded, each one a component of the one before
+        ArrayDeque<Frame> path = new ArrayDeque<>();
+        Accumulator accumulator = new Accumulator();  // Shared by every product in this explosion, so merging makes little garbage
+        Requirements result = null;
+
+        path.push(new Frame(root));
+        onPath.put(rootId, 0);
+
+        while (!path.isEmpty())
+        {
+            Frame frame = path.peek();
+            BillOfMaterials components = frame.product.componentBill();
+
+            if (frame.next < components.size())
+            {
+                int componentId = components.partIdAt(frame.next++);
+
+                if (worked.contains(componentId))
+                {
+                    continue;
+                }
+
+                if (onPath.contains(componentId))
+                {
+                    System.out.println("Debug Info (BomExplosion): Products form a loop " + describeLoop(path, componentId));
+                    return null;
+                }
+
+                Requirements cached = perUnit.get(componentId);
+                Product component = cached == null ? products.apply(componentId) : null;
+
+                if (cached != null)
+                {
+                    worked.put(componentId, cached);
+                }
+                else if (component == null)
+                {
+                    System.out.println("Debug Info (BomExplosion): Product " + frame.product.getId() + " lists missing component " + componentId);
+                    worked.put(componentId, Requirements.NONE);
+                }
+                else
+                {
+                    path.push(new Frame(component));
+                    onPath.put(componentId, 0);
+                }
+            }
+            else
+            {
+                int id = frame.product.getId();
+                result = combine(frame.product, worked, accumulator);
+
+                path.pop();
+                onPath.remove(id);
+                worked.put(id, result);
+
+                perUnit.put(id, result);
+                if (generation.get() != startGeneration)  // Invalidated while working, the result may be out of date
+                {
+                    perUnit.remove(id, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the product's own parts to the parts of its components, each multiplied by its quantity.
+     */
+    private static Requirements combine(Product product, IdIndex<Requirements> worked, Accumulator accumulator)
+    {
+        BillOfMaterials components = product.componentBill();
+        accumulator.start(product.billOfMaterials());
+
+        for (int i = 0; i < components.size(); i++)
+        {
+            accumulator.add(worked.get(components.partIdAt(i)), components.quantityAt(i));
+        }
+        return accumulator.finish();
+    }
+
+    private static String describeLoop(ArrayDeque<Frame> path, int repeatedId)
+    {
+        StringBuilder loop = new StringBuilder();
+        boolean inLoop = false;
+        Iterator<Frame> fromRoot = path.descendingIterator();
+
+        while (fromRoot.hasNext())
+        {
+            int id = fromRoot.next().product.getId();
+            inLoop |= id == repeatedId;
+
+            if (inLoop)
+            {
+                loop.append(id).append(" -> ");
+            }
+        }
+        return loop.append(repeatedId).toString();
+    }
+
+    /**
+     * Adds requirements together by merging sorted arrays. Merges go back and forth between two pairs of
+     * arrays that are reused, only the finished result is a new object.
+     */
+    private static class Accumulator
+    {
+        private int[] ids = new int[64];
+        private long[] amounts = new long[64];
+        private int[] spareIds = new int[64];
+        private long[] spareAmounts = new long[64];
+        private int size;
+
+        void start(BillOfMaterials bill)
+        {
+            size = bill.size();
+            ensureCapacity(size);
+
+            for (int i = 0; i < size; i++)
+            {
+                ids[i] = bill.partIdAt(i);
+                amounts[i] = bill.quantityAt(i);
+            }
+        }
+
+        /**
+         * Merges in requirements taken a number of times, in one pass over both.
+         * @throws ArithmeticException if a quantity overflows.
+         */
+        void add(Requirements other, long times)
+        {
+            if (other.size == 0)
+            {
+                return;
+            }
+            ensureCapacity(size + other.size);
+
+            int i = 0, j = 0, count = 0;
+
+            while (i < size || j < other.size)
+            {
+                if (j == other.size || (i < size && ids[i] < other.partIds[j]))
+                {
+                    spareIds[count] = ids[i];
+                    spareAmounts[count++] = amounts[i++];
+                }
+                else if (i == size || ids[i] > other.partIds[j])
+                {
+                    spareIds[count] = other.partIds[j];
+                    spareAmounts[count++] = Math.multiplyExact(other.quantities[j++], times);
+                }
+                else
+                {
+                    spareIds[count] = ids[i];
+                    spareAmounts[count++] = Math.addExact(amounts[i++], Math.multiplyExact(other.quantities[j++], times));
+                }
+            }
+
+            int[] mergedIds = spareIds;
+            long[] mergedAmounts = spareAmounts;
+            spareIds = ids;
+            spareAmounts = amounts;
+            ids = mergedIds;
+            amounts = mergedAmounts;
+            size = count;
+        }
+
+        Requirements finish()
+        {
+            return size == 0 ? Requirements.NONE : new Requirements(Arrays.copyOf(ids, size), Arrays.copyOf(amounts, size), size);
+        }
+
+        private void ensureCapacity(int capacity)
+        {
+            if (capacity > ids.length)
+            {
+                int grown = Math.max(capacity, ids.length * 2);
+                ids = Arrays.copyOf(ids, grown);
+                amounts = Arrays.copyOf(amounts, grown);
+                spareIds = new int[grown];
+                spareAmounts = new long[grown];  // Spare arrays are always the same length as the others
+            }
+        }
+    }
+
+    /**
+     * A product being exploded and the next component to look at.
+     */
+    private static class Frame
+    {
+        final Product product;
+        int next = 0;
+
+        Frame(Product product)
+        {
+            this.product = product;
+        }
+    }
+
+    /**
+     * Part ID -> quantity needed, sorted by part ID. Quantities are longs, since multiplying through many
+     * levels can pass the largest int. Never changes once made.
+     */
+    public static class Requirements
+    {
+        static final Requirements NONE = new Requirements(new int[0], new long[0], 0);
+
+        private final int[] partIds;
+        private final long[] quantities;
+        private final int size;
+
+        private Requirements(int[] partIds, long[] quantities, int size)
+        {
+            this.partIds = partIds;
+            this.quantities = quantities;
+            this.size = size;
+        }
+
+        /**
+         * @return number of different parts.
+         */
+        public int size()
+        {
+            return size;
+        }
+
+        /**
+         * @param index position in ID order, between 0 and size() - 1.
+         * @return part ID at this position.
+         */
+        public int partIdAt(int index)
+        {
+            return partIds[index];
+        }
+
+        /**
+         * @param index position in ID order, between 0 and size() - 1.
+         * @return quantity needed at this position.
+         */
+        public long quantityAt(int index)
+        {
+            return quantities[index];
+        }
+
+        /**
+         * @param partId numeric ID of part.
+         * @return quantity needed, 0 if the part is not needed.
+         */
+        public long quantityOf(int partId)
+        {
+            int index = Arrays.binarySearch(partIds, 0, size, partId);
+            return index >= 0 ? quantities[index] : 0;
+        }
+
+        /**
+         * @throws ArithmeticException if a quantity overflows.
+         */
+        Requirements times(long units)
+        {
+            long[] amounts = new long[size];
+
+            for (int i = 0; i < size; i++)
+            {
+                amounts[i] = Math.multiplyExact(quantities[i], units);
+            }
+            return new Requirements(partIds, amounts, size);  // IDs are never changed, so they can be shared
+        }
+    }
+}
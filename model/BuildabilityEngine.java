@@ -0,0 +1,189 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+/**
+ * Works out how many units of products can be built from the parts in stock. Every product is exploded
+ * down to parts (through every level of sub-assemblies, sub-assemblies in stock are not counted), then
+ * each product is limited by the part it runs out of first. Products are split between the threads of
+ * the common fork/join pool, so large inventories use every core.
+ * Stock is read while working, so parts changed at the same time may be counted before or after the change.
+ */
+public class BuildabilityEngine
+{
+    public static final long NOT_BUILDABLE = -1;  // Result for products not found, or whose components form a loop
+
+    private static final int PRODUCTS_PER_TASK = 512;  // Fewer products than this are worked out on one thread
+
+    private final IntFunction<Part> parts;
+    private final BomExplosion explosions;
+
+    /**
+     * Constructs an engine over the indexes of an inventory.
+     * @param parts finds a part by ID, returns null if there is none.
+     * @param explosions explodes products into the parts for one unit.
+     */
+    public BuildabilityEngine(IntFunction<Part> parts, BomExplosion explosions)
+    {
+        this.parts = parts;
+        this.explosions = explosions;
+    }
+
+    /**
+     * Works out how many of each product could be built if it were the only product built, so every
+     * product may use all the stock.
+     * @param productIds IDs of products.
+     * @return units buildable for each ID, in the same order, NOT_BUILDABLE if a product cannot be exploded.
+     * Products needing no parts cannot be built from stock, so they give 0.
+     */
+    public long[] maxBuildable(int[] productIds)
+    {
+        long[] units = new long[productIds.length];
+
+        ForkJoinPool.commonPool().invoke(new ProductTask(explosions, productIds, 0, productIds.length, (index, oneUnit) ->
+            units[index] = oneUnit == null ? NOT_BUILDABLE : unitsFromStock(oneUnit)));
+        return units;
+    }
+
+    /**
+     * Shares the stock between products that compete for the same parts. Products are served in the
+     * order given, each one building as many units as it wants (or as the remaining stock allows) before
+     * the next one. Exploding the products runs in parallel, sharing the stock runs on the calling thread.
+     * @param productIds IDs of products, most important first.
+     * @param wanted units wanted of each product in the same order, Long.MAX_VALUE for as many as possible.
+     * @return units each product gets, in the same order, NOT_BUILDABLE if a product cannot be exploded,
+     * or null if the arrays differ in length or a wanted quantity is negative.
+     */
+    public long[] allocate(int[] productIds, long[] wanted)
+    {
+        if (productIds.length != wanted.length)
+        {
+            System.out.println("Debug Info (BuildabilityEngine): Need one wanted quantity per product");
+            return null;
+        }
+        for (long units : wanted)
+        {
+            if (units < 0)
+            {
+                System.out.println("Debug Info (BuildabilityEngine): Wanted quantities cannot be negative");
+                return null;
+            }
+        }
+
+        BomExplosion.Requirements[] perUnit = new BomExplosion.Requirements[productIds.length];
+        ForkJoinPool.commonPool().invoke(new ProductTask(explosions, productIds, 0, productIds.length, (index, oneUnit) -> perUnit[index] = oneUnit));
+
+        IdIndex<Object> stockPositions = new IdIndex<>();  // Part ID -> position of its remaining stock
+        long[] remaining = new long[16];
+        long[] units = new long[productIds.length];
+
+        for (int i = 0; i < productIds.length; i++)
+        {
+            BomExplosion.Requirements oneUnit = perUnit[i];
+
+            if (oneUnit == null)
+            {
+                units[i] = NOT_BUILDABLE;
+                continue;
+            }
+
+            long built = oneUnit.size() == 0 ? 0 : wanted[i];
+
+            for (int j = 0; j < oneUnit.size() && built > 0; j++)  // Limited by the part running out first
+            {
+                int partId = oneUnit.partIdAt(j);
+
+                if (!stockPositions.contains(partId))  // Stock is read once, when a product first needs the part
+                {
+                    if (stockPositions.size() == remaining.length)
+                    {
+                        remaining = Arrays.copyOf(remaining, remaining.length * 2);
+                    }
+                    remaining[stockPositions.size()] = stockOf(partId);
+                    stockPositions.put(partId, stockPositions.size());
+                }
+                built = Math.min(built, remaining[stockPositions.position(partId)] / oneUnit.quantityAt(j));
+            }
+
+            for (int j = 0; j < oneUnit.size() && built > 0; j++)
+            {
+                remaining[stockPositions.position(oneUnit.partIdAt(j))] -= built * oneUnit.quantityAt(j);  // Cannot overflow, at most the stock
+            }
+            units[i] = built;
+        }
+        return units;
+    }
+
+    private long unitsFromStock(BomExplosion.Requirements oneUnit)
+    {
+        if (oneUnit.size() == 0)
+        {
+            return 0;
+        }
+
+        long units = Long.MAX_VALUE;
+
+        for (int i = 0; i < oneUnit.size() && units > 0; i++)
+        {
+            units = Math.min(units, stockOf(oneUnit.partIdAt(i)) / oneUnit.quantityAt(i));
+        }
+        return units;
+    }
+
+    private long stockOf(int partId)
+    {
+        Part part = parts.apply(partId);
+        return part != null ? Math.max(part.getStock(), 0) : 0;  // Missing parts cannot be used
+    }
+
+    /**
+     * Receives the parts for one unit of the product at an index, null if it cannot be exploded.
+     */
+    private interface PerProduct
+    {
+        void accept(int index, BomExplosion.Requirements oneUnit);
+    }
+
+    /**
+     * Explodes a range of products, splitting it in halves until each task is small enough for one thread.
+     */
+    private static class ProductTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient BomExplosion explosions;  // Tasks are never serialized, they only run in the pool
+        private final int[] productIds;
+        private final int from;
+        private final int to;
+        private final transient PerProduct action;
+
+        ProductTask(BomExplosion explosions, int[] productIds, int from, int to, PerProduct action)
+        {
+            this.explosions = explosions;
+            this.productIds = productIds;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= PRODUCTS_PER_TASK)
+            {
+                for (int i = from; i < to; i++)
+                {
+                    action.accept(i, explosions.explode(productIds[i], 1));
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new ProductTask(explosions, productIds, from, middle, action),
+                    new ProductTask(explosions, productIds, middle, to, action));
+        }
+    }
+}
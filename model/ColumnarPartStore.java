@@ -0,0 +1,308 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A list of all parts that keeps each field in its own array (struct of arrays) instead of one object
+ * per part. Scans over a field, such as matching names in a short search, read packed arrays from start to end
+ * instead of following a pointer to every part. Names are stored once each in a dictionary and
+ * company names in SupplierDictionary, rows hold their codes.
+ * Used in place of the object list when the application is started with -Dinventory.partStorage=columnar.
+ */
+public class ColumnarPartStore extends PartStore
+{
+    private static final byte IN_HOUSE = 0;
+    private static final byte OUTSOURCED = 1;
+
+    private int size = 0;
+    private int[] ids = new int[16];
+    private int[] nameCodes = new int[16];
+    private double[] prices = new double[16];
+    private int[] stocks = new int[16];
+    private int[] mins = new int[16];
+    private int[] maxes = new int[16];
+    private byte[] kinds = new byte[16];
+    private int[] sources = new int[16];  // Machine ID of in-house parts, company name code of outsourced parts
+
+    private final StringDictionary names = new StringDictionary();
+
+    @Override
+    public int getId(int row)
+    {
+        Objects.checkIndex(row, size);
+        return ids[row];
+    }
+
+    @Override
+    public String getName(int row)
+    {
+        Objects.checkIndex(row, size);
+        return names.get(nameCodes[row]);
+    }
+
+    @Override
+    public double getPrice(int row)
+    {
+        Objects.checkIndex(row, size);
+        return prices[row];
+    }
+
+    @Override
+    public int getStock(int row)
+    {
+        Objects.checkIndex(row, size);
+        return stocks[row];
+    }
+
+    @Override
+    public int getMin(int row)
+    {
+        Objects.checkIndex(row, size);
+        return mins[row];
+    }
+
+    @Override
+    public int getMax(int row)
+    {
+        Objects.checkIndex(row, size);
+        return maxes[row];
+    }
+
+    @Override
+    public boolean isOutsourced(int row)
+    {
+        Objects.checkIndex(row, size);
+        return kinds[row] == OUTSOURCED;
+    }
+
+    @Override
+    public int getMachineID(int row)
+    {
+        Objects.checkIndex(row, size);
+        return sources[row];
+    }
+
+    @Override
+    public int getSupplierCode(int row)
+    {
+        Objects.checkIndex(row, size);
+        return sources[row];
+    }
+
+    @Override
+    void setId(int row, int id)
+    {
+        ids[row] = id;
+    }
+
+    @Override
+    void setName(int row, String name)
+    {
+        int oldCode = nameCodes[row];
+        nameCodes[row] = names.acquire(name);
+        names.release(oldCode);
+    }
+
+    @Override
+    void setPrice(int row, double price)
+    {
+        prices[row] = price;
+    }
+
+    @Override
+    void setStock(int row, int stock)
+    {
+        stocks[row] = stock;
+    }
+
+    @Override
+    void setMin(int row, int min)
+    {
+        mins[row] = min;
+    }
+
+    @Override
+    void setMax(int row, int max)
+    {
+        maxes[row] = max;
+    }
+
+    @Override
+    void setMachineID(int row, int machineID)
+    {
+        sources[row] = machineID;
+    }
+
+    @Override
+    void setSupplierCode(int row, int supplierCode)
+    {
+        sources[row] = supplierCode;
+    }
+
+    @Override
+    public void removePositions(int[] positions, int count)
+    {
+        if (count == 0)
+        {
+            return;
+        }
+
+        beginChange();
+        try
+        {
+            int write = positions[0];
+            int next = 0;  // Next entry of positions to remove
+
+            for (int read = positions[0]; read < size; read++)
+            {
+                if (next < count && read == positions[next])
+                {
+                    nextRemove(read - next, get(read));  // Location once earlier removals have closed up the list
+                    detach(read);
+                    names.release(nameCodes[read]);
+                    next++;
+                }
+                else
+                {
+                    moveRow(read, write++);
+                }
+            }
+
+            size = write;
+            moveViews(row ->
+            {
+                int slot = Arrays.binarySearch(positions, 0, count, row);
+                return row - (-slot - 1);  // Removed rows were detached, so row is never in positions
+            });
+            modCount++;
+        }
+        finally
+        {
+            endChange();
+        }
+    }
+
+    @Override
+    public Part get(int index)
+    {
+        Objects.checkIndex(index, size);
+        return view(index);
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    protected void doAdd(int index, Part element)
+    {
+        Objects.checkIndex(index, size + 1);
+        ensureCapacity(size + 1);
+
+        shiftRows(index, index + 1, size - index);
+        size++;
+
+        if (index < size - 1)
+        {
+            moveViews(row -> row >= index ? row + 1 : row);
+        }
+        writeRow(index, element);
+    }
+
+    @Override
+    protected Part doSet(int index, Part element)
+    {
+        Part oldElement = get(index);  // Listeners receive the part that was replaced
+        int oldName = nameCodes[index];
+
+        detach(index);
+        writeRow(index, element);
+        names.release(oldName);  // Released after writing, so a name that did not change keeps its code
+        return oldElement;
+    }
+
+    @Override
+    protected Part doRemove(int index)
+    {
+        Part oldElement = get(index);
+
+        detach(index);
+        names.release(nameCodes[index]);
+        shiftRows(index + 1, index, size - index - 1);
+        size--;
+        moveViews(row -> row > index ? row - 1 : row);
+        return oldElement;
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity)
+    {
+        if (capacity > ids.length)
+        {
+            int length = Math.max(capacity, ids.length * 2);
+
+            ids = Arrays.copyOf(ids, length);
+            nameCodes = Arrays.copyOf(nameCodes, length);
+            prices = Arrays.copyOf(prices, length);
+            stocks = Arrays.copyOf(stocks, length);
+            mins = Arrays.copyOf(mins, length);
+            maxes = Arrays.copyOf(maxes, length);
+            kinds = Arrays.copyOf(kinds, length);
+            sources = Arrays.copyOf(sources, length);
+        }
+    }
+
+    /**
+     * Copies the values of a part into a row.
+     */
+    private void writeRow(int row, Part part)
+    {
+        ids[row] = part.getId();
+        nameCodes[row] = names.acquire(part.getName());
+        prices[row] = part.getPrice();
+        stocks[row] = part.getStock();
+        mins[row] = part.getMin();
+        maxes[row] = part.getMax();
+
+        if (part instanceof Outsourced)
+        {
+            kinds[row] = OUTSOURCED;
+            sources[row] = ((Outsourced) part).getSupplierCode();
+        }
+        else
+        {
+            kinds[row] = IN_HOUSE;
+            sources[row] = ((InHouse) part).getMachineID();
+        }
+    }
+
+    /**
+     * Moves a block of rows. Views are moved by the caller.
+     */
+    private void shiftRows(int from, int to, int count)
+    {
+        System.arraycopy(ids, from, ids, to, count);
+        System.arraycopy(nameCodes, from, nameCodes, to, count);
+        System.arraycopy(prices, from, prices, to, count);
+        System.arraycopy(stocks, from, stocks, to, count);
+        System.arraycopy(mins, from, mins, to, count);
+        System.arraycopy(maxes, from, maxes, to, count);
+        System.arraycopy(kinds, from, kinds, to, count);
+        System.arraycopy(sources, from, sources, to, count);
+    }
+
+    private void moveRow(int from, int to)
+    {
+        ids[to] = ids[from];
+        nameCodes[to] = nameCodes[from];
+        prices[to] = prices[from];
+        stocks[to] = stocks[from];
+        mins[to] = mins[from];
+        maxes[to] = maxes[from];
+        kinds[to] = kinds[from];
+        sources[to] = sources[from];
+    }
+}
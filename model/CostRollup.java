@@ -0,0 +1,205 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Keeps the material cost of every stored product: the price of each associated part times its quantity,
+ * plus the material cost of each component times its quantity. Costs are stored on the products, so reading
+ * one never adds anything up. When a part price or a product's parts change, only the products using it
+ * (and the products built from those) are worked out again, each once, components before the products
+ * built from them. Products whose components form a loop have no cost.
+ */
+public class CostRollup
+{
+    public static final double NO_COST = -1;  // Cost of products not stored, or whose components form a loop
+
+    private final IntFunction<Part> parts;
+    private final IntFunction<Product> products;
+    private final WhereUsedIndex partUsers;  // Part ID -> products listing it
+    private final BomExplosion explosions;  // Knows the products listing each component
+
+    /**
+     * Constructs a rollup over the indexes of an inventory.
+     * @param parts finds a part by ID, returns null if there is none.
+     * @param products finds a product by ID, returns null if there is none.
+     * @param partUsers part ID -> products listing it.
+     * @param explosions product ID -> products listing it as a component.
+     */
+    public CostRollup(IntFunction<Part> parts, IntFunction<Product> products, WhereUsedIndex partUsers, BomExplosion explosions)
+    {
+        this.parts = parts;
+        this.products = products;
+        this.partUsers = partUsers;
+        this.explosions = explosions;
+    }
+
+    /**
+     * Works out the cost of every product using a part again, after its price changed or it was added or removed.
+     * @param partId numeric ID of part.
+     */
+    public void partChanged(int partId)
+    {
+        int[] users = partUsers.productsUsing(partId);
+
+        if (users.length > 0)  // Most parts changed while loading or editing are not used yet
+        {
+            recompute(users);
+        }
+    }
+
+    /**
+     * Works out the cost of a product again, after it was added, replaced or removed, or its parts or
+     * components changed, then the cost of every product built from it.
+     * @param productId numeric ID of product.
+     */
+    public void productChanged(int productId)
+    {
+        recompute(new int[] {productId});
+    }
+
+    /**
+     * Works out the costs of some products and of every product built from them. Each product is worked
+     * out once, after every component of it that is being worked out.
+     * @param changedIds IDs of products whose own cost changed.
+     */
+    public synchronized void recompute(int[] changedIds)
+    {
+        IdIndex<Object> affected = new IdIndex<>();  // Product ID -> number of its components still to be worked out
+        ArrayDeque<Integer> pending = new ArrayDeque<>();
+        int[] order = new int[16];
+        int count = 0;
+
+        for (int id : changedIds)
+        {
+            pending.push(id);
+        }
+
+        while (!pending.isEmpty())  // Every product built from a changed product is affected too
+        {
+            int id = pending.pop();
+
+            if (affected.contains(id))
+            {
+                continue;
+            }
+            affected.put(id, 0);
+
+            if (count == order.length)
+            {
+                order = Arrays.copyOf(order, count * 2);
+            }
+            order[count++] = id;
+
+            for (int userId : explosions.productsUsing(id))
+            {
+                pending.push(userId);
+            }
+        }
+
+        for (int i = 0; i < count; i++)  // Count each product's affected components
+        {
+            Product product = products.apply(order[i]);
+            int waiting = 0;
+
+            if (product != null)
+            {
+                BillOfMaterials components = product.componentBill();
+
+                for (int j = 0; j < components.size(); j++)
+                {
+                    if (affected.contains(components.partIdAt(j)))
+                    {
+                        waiting++;
+                    }
+                }
+            }
+            affected.setPosition(order[i], waiting);
+
+            if (waiting == 0)
+            {
+                pending.push(order[i]);
+            }
+        }
+
+        int done = 0;
+
+        while (!pending.isEmpty())
+        {
+            int id = pending.pop();
+            Product product = products.apply(id);
+            done++;
+
+            if (product != null)
+            {
+                product.setMaterialCost(costOf(product));
+            }
+
+            for (int userId : explosions.productsUsing(id))
+            {
+                int waiting = affected.position(userId) - 1;
+                affected.setPosition(userId, waiting);
+
+                if (waiting == 0)
+                {
+                    pending.push(userId);
+                }
+            }
+        }
+
+        if (done < count)  // Products left waiting are in a loop, or built from one
+        {
+            for (int i = 0; i < count; i++)
+            {
+                if (affected.position(order[i]) > 0)
+                {
+                    Product product = products.apply(order[i]);
+
+                    if (product != null)
+                    {
+                        product.setMaterialCost(NO_COST);
+                    }
+                }
+            }
+            System.out.println("Debug Info (CostRollup): " + (count - done) + " product(s) have components that form a loop, they have no cost");
+        }
+    }
+
+    /**
+     * Adds up one product from the current part prices and component costs. Missing parts and components add nothing.
+     */
+    private double costOf(Product product)
+    {
+        BillOfMaterials bill = product.billOfMaterials();
+        BillOfMaterials components = product.componentBill();
+        double cost = 0;
+
+        for (int i = 0; i < bill.size(); i++)
+        {
+            Part part = parts.apply(bill.partIdAt(i));
+
+            if (part != null)
+            {
+                cost += part.getPrice() * bill.quantityAt(i);
+            }
+        }
+
+        for (int i = 0; i < components.size(); i++)
+        {
+            Product component = products.apply(components.partIdAt(i));
+
+            if (component != null)
+            {
+                double componentCost = component.getMaterialCost();
+
+                if (componentCost == NO_COST)
+                {
+                    return NO_COST;
+                }
+                cost += componentCost * components.quantityAt(i);
+            }
+        }
+        return cost;
+    }
+}
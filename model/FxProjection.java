@@ -0,0 +1,184 @@
+package model;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+
+/**
+ * Keeps the lists shown by tables (and their location and search indexes) in step with the inventory core.
+ * Writers on any thread publish each change as a task, tasks are run in the order they were published
+ * on the JavaFX thread. Changes published on the JavaFX thread are applied before publish() returns,
+ * so forms see their own changes straight away.
+ * Changes published on other threads are collected and applied at most once per pulse (about 60 times a
+ * second), and each list receives everything applied in one pulse as a single change event. Row updates
+ * published through RowUpdates are collapsed, a row changed many times between pulses is redrawn once.
+ * Until attachToFxThread() is called (for example when running without a GUI) tasks are run on the
+ * publishing thread, one thread at a time.
+ */
+public class FxProjection
+{
+    private static final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private static final List<RowUpdates> rowUpdates = new CopyOnWriteArrayList<>();
+    private static final List<InventoryList<?>> lists = new CopyOnWriteArrayList<>();  // Lists that receive one change event per flush
+    private static final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private static volatile boolean attached = false;  // True once tasks must run on the JavaFX thread
+    private static AnimationTimer pulseFlush;  // Flushes on the next pulse, then stops until more changes arrive
+
+    /**
+     * Makes every later change run on the JavaFX thread. Call on the JavaFX thread once the application starts.
+     */
+    public static void attachToFxThread()
+    {
+        flush();
+        pulseFlush = new AnimationTimer()
+        {
+            @Override
+            public void handle(long now)
+            {
+                stop();
+                flushScheduled.set(false);  // Changes published from now on schedule the next pulse
+                flush();
+            }
+        };
+        attached = true;
+    }
+
+    /**
+     * Adds a list changed by published tasks. Every change a flush makes to it reaches listeners as one event.
+     * @param list list shown by a table.
+     */
+    public static void addList(InventoryList<?> list)
+    {
+        lists.add(list);
+    }
+
+    /**
+     * @return true if the calling thread may read and change the projected lists.
+     */
+    public static boolean onProjectionThread()
+    {
+        return !attached || Platform.isFxApplicationThread();
+    }
+
+    /**
+     * Queues a change to the projected lists, and runs it now if called on the projection thread.
+     * @param change task changing the lists, runs once.
+     */
+    public static void publish(Runnable change)
+    {
+        pending.add(change);
+        flushOrSchedule();
+    }
+
+    /**
+     * Runs every queued change, then every collected row update. Must be called on the projection thread.
+     */
+    public static synchronized void flush()
+    {
+        for (InventoryList<?> list : lists)
+        {
+            list.beginBatch();
+        }
+
+        try
+        {
+            Runnable change;
+
+            while ((change = pending.poll()) != null)
+            {
+                try
+                {
+                    change.run();
+                }
+                catch (RuntimeException failedChange)  // Later changes still have to be applied
+                {
+                    System.out.println("Debug Info (FxProjection): Change not shown in tables: " + failedChange);
+                }
+            }
+
+            for (RowUpdates updates : rowUpdates)  // After the queued changes, so added rows exist and deleted rows are gone
+            {
+                updates.apply();
+            }
+        }
+        finally
+        {
+            for (InventoryList<?> list : lists)
+            {
+                list.endBatch();
+            }
+        }
+    }
+
+    private static void flushOrSchedule()
+    {
+        if (onProjectionThread())
+        {
+            flush();
+        }
+        else if (flushScheduled.compareAndSet(false, true))  // One flush on the next pulse covers every change until then
+        {
+            Platform.runLater(() -> pulseFlush.start());
+        }
+    }
+
+    /**
+     * Collects the IDs of rows whose values changed in place (such as stock), so each row is redrawn once per
+     * flush no matter how often it changed. The update reads the current values when it runs.
+     */
+    public static class RowUpdates
+    {
+        private final Set<Integer> changedIds = ConcurrentHashMap.newKeySet();
+        private final IntConsumer update;
+
+        /**
+         * Constructs row updates and adds them to every flush.
+         * @param update redraws the row of an ID, runs on the projection thread.
+         */
+        public RowUpdates(IntConsumer update)
+        {
+            this.update = update;
+            rowUpdates.add(this);
+        }
+
+        /**
+         * Marks the row of an ID as changed. Does nothing more if it is already marked.
+         * @param id numeric ID of changed part or product.
+         */
+        public void publish(int id)
+        {
+            if (changedIds.add(id))
+            {
+                flushOrSchedule();
+            }
+        }
+
+        private void apply()
+        {
+            Iterator<Integer> ids = changedIds.iterator();
+
+            while (ids.hasNext())
+            {
+                int id = ids.next();
+                ids.remove();  // Removed before the update, a change made during it marks the row again
+
+                try
+                {
+                    update.accept(id);
+                }
+                catch (RuntimeException failedUpdate)
+                {
+                    System.out.println("Debug Info (FxProjection): Row " + id + " not redrawn: " + failedUpdate);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Hands out unique IDs for one type of object (parts or products) in constant time.
+ * New IDs come from a high-water mark, the highest ID ever used. IDs released by deleted objects
+ * are kept in a bitmap and are handed out again before the mark is raised. Thread safe.
+ */
+public class IdAllocator
+{
+    private int highWaterMark = 0;  // Highest ID handed out or reserved, IDs start at 1
+    private final BitSet released = new BitSet();  // IDs at or below the mark that are free again
+    private int lowestReleased = Integer.MAX_VALUE;  // No released ID is lower than this, avoids rescanning the bitmap
+
+    /**
+     * Returns an unused ID and marks it as used.
+     * @return generated ID, or -1 if every positive integer is in use.
+     */
+    public synchronized int allocate()
+    {
+        if (lowestReleased != Integer.MAX_VALUE)  // Reuse a released ID before raising the mark
+        {
+            int id = lowestReleased;
+            released.clear(id);
+
+            int next = released.nextSetBit(id + 1);
+            lowestReleased = next < 0 ? Integer.MAX_VALUE : next;
+            return id;
+        }
+
+        if (highWaterMark == Integer.MAX_VALUE)
+        {
+            System.out.println("Debug Info (IdAllocator): No IDs left to allocate");
+            return -1;
+        }
+        return ++highWaterMark;
+    }
+
+    /**
+     * Marks an ID as used without generating it, for objects created with a known ID (test data, loaded data).
+     * @param id ID that is now in use.
+     */
+    public synchronized void reserve(int id)
+    {
+        if (id <= 0)  // Generated IDs are always positive, nothing to track
+        {
+            return;
+        }
+
+        if (id > highWaterMark)  // Skipped IDs are never handed out, keeps the bitmap small
+        {
+            highWaterMark = id;
+        }
+        else if (released.get(id))
+        {
+            released.clear(id);
+
+            if (id == lowestReleased)
+            {
+                int next = released.nextSetBit(id + 1);
+                lowestReleased = next < 0 ? Integer.MAX_VALUE : next;
+            }
+        }
+    }
+
+    /**
+     * Marks an ID as free so it can be handed out again.
+     * @param id ID of object that was deleted.
+     */
+    public synchronized void release(int id)
+    {
+        if (id <= 0 || id > highWaterMark)
+        {
+            return;
+        }
+
+        released.set(id);
+        lowestReleased = Math.min(lowestReleased, id);
+    }
+
+    /**
+     * Saves allocator state so IDs keep counting from the same point after a restart.
+     * @param out destination of data.
+     * @throws IOException if data cannot be written.
+     */
+    public synchronized void writeTo(DataOutput out) throws IOException
+    {
+        long[] words = released.toLongArray();
+
+        out.writeInt(highWaterMark);
+        out.writeInt(words.length);
+        for (long word : words)
+        {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Replaces allocator state with state saved by writeTo.
+     * @param in source of data.
+     * @throws IOException if data cannot be read.
+     */
+    public synchronized void readFrom(DataInput in) throws IOException
+    {
+        highWaterMark = in.readInt();
+        long[] words = new long[in.readInt()];
+
+        for (int i = 0; i < words.length; i++)
+        {
+            words[i] = in.readLong();
+        }
+
+        released.clear();
+        released.or(BitSet.valueOf(words));
+
+        int lowest = released.nextSetBit(0);
+        lowestReleased = lowest < 0 ? Integer.MAX_VALUE : lowest;
+    }
+
+    /**
+     * Forgets every used and released ID.
+     */
+    public synchronized void clear()
+    {
+        highWaterMark = 0;
+        released.clear();
+        lowestReleased = Integer.MAX_VALUE;
+    }
+}
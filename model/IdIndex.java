@@ -0,0 +1,250 @@
+package model;
+
+/**
+ * A hash table that maps integer IDs to an object and the object's location in a list.
+ * IDs are stored as primitives (no boxing), and open addressing keeps lookups,
+ * insertions and removals constant time on average.
+ * @param <T> type of object being indexed.
+ */
+public class IdIndex<T>
+{
+    private static final int MIN_CAPACITY = 16;
+    private static final Object NO_ITEM = new Object();  // Marks slots of IDs stored with only a location
+
+    private int[] keys;
+    private int[] positions;
+    private Object[] items;  // A null slot means the slot is empty
+    private int size;
+    private int mask;
+
+    /**
+     * Constructs an empty index.
+     */
+    public IdIndex()
+    {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Adds or replaces the entry for an ID.
+     * @param id numeric ID of object.
+     * @param item object to be stored, cannot be null.
+     * @param position index location of object in its list.
+     */
+    public void put(int id, T item, int position)
+    {
+        if (item == null)
+        {
+            throw new IllegalArgumentException("IdIndex cannot store null items");
+        }
+        putItem(id, item, position);
+    }
+
+    /**
+     * Adds or replaces the object for an ID, for maps that do not keep objects in a list. position()
+     * returns 0 for the ID.
+     * @param id numeric ID of object.
+     * @param item object to be stored, cannot be null.
+     */
+    public void put(int id, T item)
+    {
+        put(id, item, 0);
+    }
+
+    /**
+     * Adds or replaces the entry for an ID without storing an object, for lists that create their
+     * objects on demand. get() returns null for the ID.
+     * @param id numeric ID of object.
+     * @param position index location of object in its list.
+     */
+    public void put(int id, int position)
+    {
+        putItem(id, NO_ITEM, position);
+    }
+
+    /**
+     * Finds object by ID.
+     * @param id numeric ID of object.
+     * @return object with this ID, or null if ID is not indexed.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int id)
+    {
+        Object item = items[findSlot(id)];
+        return item == NO_ITEM ? null : (T) item;
+    }
+
+    /**
+     * Finds list location of object by ID.
+     * @param id numeric ID of object.
+     * @return index location of object in list, or -1 if ID is not indexed.
+     */
+    public int position(int id)
+    {
+        int slot = findSlot(id);
+        return items[slot] == null ? -1 : positions[slot];
+    }
+
+    /**
+     * Updates the list location of an already indexed ID. Does nothing if ID is not indexed.
+     * @param id numeric ID of object.
+     * @param position new index location of object in list.
+     */
+    public void setPosition(int id, int position)
+    {
+        int slot = findSlot(id);
+
+        if (items[slot] != null)
+        {
+            positions[slot] = position;
+        }
+    }
+
+    /**
+     * @param id numeric ID of object.
+     * @return true if ID is indexed.
+     */
+    public boolean contains(int id)
+    {
+        return items[findSlot(id)] != null;
+    }
+
+    /**
+     * Removes ID from index.
+     * @param id numeric ID of object.
+     * @return true if ID was found and removed, false otherwise.
+     */
+    public boolean remove(int id)
+    {
+        int slot = findSlot(id);
+
+        if (items[slot] == null)
+        {
+            return false;
+        }
+
+        // Backward shift deletion, entries further along the probe chain are moved up so no tombstones are needed
+        int hole = slot;
+        int next = (hole + 1) & mask;
+
+        while (items[next] != null)
+        {
+            int home = hash(keys[next]);
+
+            if (((next - home) & mask) >= ((next - hole) & mask))  // Entry can legally move into the hole
+            {
+                keys[hole] = keys[next];
+                positions[hole] = positions[next];
+                items[hole] = items[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        items[hole] = null;
+        size--;
+
+        return true;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear()
+    {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Grows the table once so this many IDs fit without resizing, used before adding many IDs at once.
+     * @param expectedSize number of IDs the index will hold.
+     */
+    public void ensureCapacity(int expectedSize)
+    {
+        int capacity = keys.length;
+
+        while (expectedSize * 4L > capacity * 3L)
+        {
+            capacity *= 2;
+        }
+        if (capacity > keys.length)
+        {
+            resize(capacity);
+        }
+    }
+
+    /**
+     * @return number of indexed IDs.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    private void putItem(int id, Object item, int position)
+    {
+        int slot = findSlot(id);
+
+        if (items[slot] == null)  // New ID, claim the empty slot
+        {
+            keys[slot] = id;
+            size++;
+        }
+        items[slot] = item;
+        positions[slot] = position;
+
+        if (size * 4 > keys.length * 3)  // Keep load factor at or below 0.75
+        {
+            resize(keys.length * 2);
+        }
+    }
+
+    /**
+     * Finds the slot holding the ID, or the empty slot where the ID would be placed.
+     */
+    private int findSlot(int id)
+    {
+        int slot = hash(id);
+
+        while (items[slot] != null && keys[slot] != id)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int hash(int id)
+    {
+        int h = id * 0x9E3779B9;  // Spreads sequential IDs across the table
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new int[capacity];
+        positions = new int[capacity];
+        items = new Object[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private void resize(int capacity)
+    {
+        int[] oldKeys = keys;
+        int[] oldPositions = positions;
+        Object[] oldItems = items;
+
+        allocate(capacity);
+
+        for (int i = 0; i < oldItems.length; i++)
+        {
+            if (oldItems[i] != null)
+            {
+                int slot = findSlot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                positions[slot] = oldPositions[i];
+                items[slot] = oldItems[i];
+                size++;
+            }
+        }
+    }
+}
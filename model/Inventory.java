@@ -2,18 +2,100 @@ package model;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
 
 /**
  *  A class used to manage inventory storage and searching of parts and products.
+ *  Parts and products are kept in a thread safe core that any thread can read and change. The lists
+ *  returned by getAllParts() and getAllProducts() are a projection of the core for tables, they are only
+ *  changed on the JavaFX thread (see FxProjection), as are the location and search indexes that follow them.
  *  Class also contains test data which can be loaded by setting loadTestData = true.
  */
 public class Inventory
 {
-    private static ObservableList<Part> allParts = FXCollections.observableArrayList();
+    private static final InventoryCore<Part> partCore = new InventoryCore<>(Inventory::readStoredPart);  // Part ID -> part, read and written by every thread. Parts in a PartStore are only kept there
 
-    private static ObservableList<Product> allProducts = FXCollections.observableArrayList();
+    private static final InventoryCore<Product> productCore = new InventoryCore<>();  // Product ID -> product, read and written by every thread
+
+    private static final InventoryList<Part> allParts = createPartList(System.getProperty("inventory.partStorage", "objects"));  // Projection of partCore in table order, supports batches sent to tables as one change
+
+    private static final PartStore partStore = allParts instanceof PartStore ? (PartStore) allParts : null;  // Null when parts are stored as objects
+
+    private static final ReentrantReadWriteLock partStoreLock = new ReentrantReadWriteLock();  // Held to write while allParts or partIndex change, and while other threads change stock in partStore
+
+    private static final InventoryList<Product> allProducts = new InventoryList<>();  // Projection of productCore in table order
+
+    private static final FxProjection.RowUpdates partStockRows = new FxProjection.RowUpdates(Inventory::projectPartStock);  // Parts whose stock changed since the last flush
+
+    private static final FxProjection.RowUpdates productStockRows = new FxProjection.RowUpdates(Inventory::projectProductStock);
+
+    static
+    {
+        FxProjection.addList(allParts);  // Everything applied in one flush reaches tables as one change event
+        FxProjection.addList(allProducts);
+    }
+
+    private static final IdIndex<Part> partIndex = new IdIndex<>();  // Part ID -> location in allParts, the part is read from allParts
+
+    private static final IdIndex<Product> productIndex = new IdIndex<>();  // Product ID -> product object and location in allProducts
+
+    private static final TrigramIndex partTrigrams = new TrigramIndex();  // Used to narrow down part searches
+
+    private static final TrigramIndex productTrigrams = new TrigramIndex();  // Used to narrow down product searches
+
+    private static final WhereUsedIndex whereUsed = new WhereUsedIndex();  // Part ID -> products listing it, changed by productCore writers and by stored products
+
+    private static final BomExplosion explosions = new BomExplosion(productCore::get);  // Parts needed for products built from sub-assemblies, and product ID -> products using it
+
+    private static final CostRollup costs = new CostRollup(partCore::get, productCore::get, whereUsed, explosions);  // Keeps the material cost stored on every product
+
+    private static final BuildabilityEngine buildability = new BuildabilityEngine(partCore::get, explosions);  // Units buildable from part stock
+
+    private static final StockWatchlist<Part> partWatchlist = new StockWatchlist<>(Part::getStock, Part::getMin, Part::getMax);  // Parts by distance from min or max
+
+    private static final StockWatchlist<Product> productWatchlist = new StockWatchlist<>(Product::getStock, Product::getMin, Product::getMax);
+
+    private static final InventoryValuation valuation = new InventoryValuation();  // Running totals of value, units and part types
+
+    private static final RangeIndex<Part> partPrices = new RangeIndex<>(part -> RangeIndex.priceKey(part.getPrice()));  // Parts sorted by price
+
+    private static final RangeIndex<Part> partStocks = new RangeIndex<>(Part::getStock);  // Parts sorted by stock
+
+    private static final RangeIndex<Product> productPrices = new RangeIndex<>(product -> RangeIndex.priceKey(product.getPrice()));
+
+    private static final RangeIndex<Product> productStocks = new RangeIndex<>(Product::getStock);
+
+    private static final PagedList.RowOrder partTableOrder = new TableOrder(allParts,
+            row -> partStore != null ? partStore.getId(row) : allParts.get(row).getId(), partIndex);  // Stores give IDs without creating part objects
+
+    private static final PagedList.RowOrder productTableOrder = new TableOrder(allProducts, row -> allProducts.get(row).getId(), productIndex);
+
+    private static final IdAllocator partIds = new IdAllocator();  // Generates part IDs
+
+    private static final IdAllocator productIds = new IdAllocator();  // Generates product IDs
+
+    private static volatile int partVersion = 0;  // Increases every time a part is added, updated or deleted (read by search thread)
+
+    private static volatile int productVersion = 0;  // Increases every time a product is added, updated or deleted (read by search thread)
+
+    private static volatile InventoryJournal journal = null;  // Records every change when open, null if changes are only kept in memory
+
+    private static boolean restoredFromDisk = false;  // True if saved data was loaded, test data is then skipped
+
+    private static long snapshotEpoch = 0;  // Journal epoch recorded in the last snapshot loaded or saved
 
     public static boolean loadTestData = true;  // If true, pre-written test data will display in GUI
 
@@ -29,116 +111,149 @@ public class Inventory
     private static final Part winch = new Outsourced(24,"8000lbs Winch", 589.79,3, 1,20, "PowerPlus");
 
     /**
-     * Adds new part to list containing all parts.
-     * @param newPart part to be added.
+     * Adds new part to list containing all parts. Can be called from any thread.
+     * @param newPart part to be added, skipped if its ID is already used.
      */
     static public void addPart(Part newPart)
     {
-        allParts.add(newPart);
+        if (storeParts(List.of(newPart)) == 0)
+        {
+            System.out.println("Debug Info (addPart): Part ID " + newPart.getId() + " is already used");
+        }
     }
 
     /**
-     * Adds new product to list containing all products.
-     * @param newProduct product to be added.
+     * Adds new product to list containing all products. Can be called from any thread.
+     * @param newProduct product to be added, skipped if its ID is already used or it lists a missing part or component.
      */
     static public void addProduct(Product newProduct)
     {
-        allProducts.add(newProduct);
+        if (storeProducts(List.of(newProduct)) == 0)
+        {
+            System.out.println("Debug Info (addProduct): Product ID " + newProduct.getId() + " is already used, or a listed part or component is missing");
+        }
     }
 
     /**
-     * Finds and returns part based on given integer ID.
+     * Finds and returns part based on given integer ID. Never locks, can be called from any thread.
      * @param partId numeric ID of part in question.
      */
     static public Part lookupPart(int partId)
     {
-        for (Part currentPart : allParts) {
-            if (currentPart.getId() == partId)
-            {
-                return currentPart;  // Part is found, object returned
-            }
-        }
-        return null;  // Nothing is found
+        return partCore.get(partId);  // Null if nothing is found
     }
 
     /**
-     * Finds and returns product based on given integer ID.
+     * Finds and returns product based on given integer ID. Never locks, can be called from any thread.
      * @param productId numeric ID of product in question.
      * @return null if no product found, product object if found.
      */
     static public Product lookupProduct(int productId)
     {
-        for (Product currentProduct : allProducts) {
-            if (currentProduct.getId() == productId)
-            {
-                return currentProduct;  // Product is found, object returned
-            }
-        }
-        return null;
+        return productCore.get(productId);
     }
 
 
     /**
      * Finds and returns part(s) based on string input. Blank spaces and capitalization will not
-     * influence search results.
+     * influence search results. Inputs of three or more characters only check the parts found by
+     * the trigram index. Only reads the last published snapshot of the trigram index and the thread
+     * safe core, so it can be called from any thread, such as the search thread.
      * @param partName can be part ID, or name, or both.
-     * @return list containing all parts matching input.
+     * @return list containing all parts matching input, in ID order.
      */
     static public ObservableList<Part> lookupPart(String partName)
     {
-
-        partName = partName.toLowerCase().replaceAll("\\s", ""); // Take user input, remove all spaces and convert everything to lowercase
+        String query = SearchMatcher.normalize(partName); // Take user input, remove all spaces and convert everything to lowercase
 
         ObservableList<Part> foundPartList = FXCollections.observableArrayList();  // Stores all parts that match search
-        boolean nameFound;
-        boolean idFound;
-        boolean bothFound;
+        int[] candidateIds = partTrigrams.candidates(query);
 
-        for (Part currentPart : allParts)
+        if (candidateIds == null)  // Input is too short for the index, every part has to be checked
         {
-            String currentPartName = currentPart.getName().toLowerCase().replaceAll("\\s", "");  // Remove uppercase and spaces
-            String currentPartId = Integer.toString(currentPart.getId()).toLowerCase().replaceAll("\\s", "");  // Remove uppercase and spaces
-            String currentPartBoth = currentPartId + currentPartName;
+            List<Part> found = new ArrayList<>();
+
+            if (partStore != null)  // Rows are checked in place, only parts found are copied out (like the index, parts not yet in the table are not seen)
+            {
+                partStoreLock.readLock().lock();
+                try
+                {
+                    for (int row = 0; row < partStore.size(); row++)
+                    {
+                        if (SearchMatcher.matches(query, partStore.getId(row), partStore.getName(row)))
+                        {
+                            found.add(partStore.copyRow(row));
+                        }
+                    }
+                }
+                finally
+                {
+                    partStoreLock.readLock().unlock();
+                }
+            }
+            else
+            {
+                partCore.forEach(currentPart ->
+                {
+                    if (SearchMatcher.matches(query, currentPart.getId(), currentPart.getName()))
+                    {
+                        found.add(currentPart);
+                    }
+                });
+            }
+            found.sort(Comparator.comparingInt(Part::getId));
+            foundPartList.setAll(found);
+            return foundPartList;
+        }
 
-            nameFound = currentPartId.contains(partName);
-            idFound = currentPartName.contains(partName);
-            bothFound = currentPartBoth.contains(partName);
+        for (int candidateId : candidateIds)
+        {
+            Part currentPart = partCore.get(candidateId);
 
-            if (nameFound || idFound || bothFound)
+            if (currentPart != null && SearchMatcher.matches(query, candidateId, currentPart.getName()))  // Candidate contains every trigram, verify full input
             {
                 foundPartList.add(currentPart);
             }
         }
-            return foundPartList;
+        return foundPartList;
     }
 
     /**
      * Finds and returns product(s) based on string input. Blank spaces and capitalization will not
-     * influence search results.
+     * influence search results. Inputs of three or more characters only check the products found by
+     * the trigram index. Only reads the last published snapshot of the trigram index and the thread
+     * safe core, so it can be called from any thread.
      * @param productName can be product ID, or name, or both.
-     * @return list containing all product matching input.
+     * @return list containing all product matching input, in ID order.
      */
     static public ObservableList<Product> lookupProduct(String productName)
     {
-        productName = productName.toLowerCase().replaceAll("\\s", "");  // Take user input, remove all spaces and convert everything to lowercase
+        String query = SearchMatcher.normalize(productName);  // Take user input, remove all spaces and convert everything to lowercase
 
-        ObservableList<Product> foundProductList = FXCollections.observableArrayList();  // Stores all parts that match search
-        boolean nameFound;
-        boolean idFound;
-        boolean bothFound;
+        ObservableList<Product> foundProductList = FXCollections.observableArrayList();  // Stores all products that match search
+        int[] candidateIds = productTrigrams.candidates(query);
 
-        for (Product currentProduct : allProducts)
+        if (candidateIds == null)  // Input is too short for the index, every product has to be checked
         {
+            List<Product> found = new ArrayList<>();
 
-            String currentProductName = currentProduct.getName().toLowerCase().replaceAll("\\s", "");  // Remove uppercase and spaces
-            String currentProductId = Integer.toString(currentProduct.getId()).toLowerCase().replaceAll("\\s", "");  // Remove uppercase and spaces
-            String currentProductBoth = currentProductId + currentProductName;
+            productCore.forEach(currentProduct ->
+            {
+                if (SearchMatcher.matches(query, currentProduct.getId(), currentProduct.getName()))
+                {
+                    found.add(currentProduct);
+                }
+            });
+            found.sort(Comparator.comparingInt(Product::getId));
+            foundProductList.setAll(found);
+            return foundProductList;
+        }
 
-            nameFound = currentProductId.contains(productName);
-            idFound = currentProductName.contains(productName);
-            bothFound = currentProductBoth.contains(productName);
+        for (int candidateId : candidateIds)
+        {
+            Product currentProduct = productCore.get(candidateId);
 
-            if (nameFound || idFound || bothFound)
+            if (currentProduct != null && SearchMatcher.matches(query, candidateId, currentProduct.getName()))  // Null if deleted since the index was published
             {
                 foundProductList.add(currentProduct);
             }
@@ -147,217 +262,2143 @@ public class Inventory
     }
 
     /**
-     * Replaces part with new part object.
-     * @param index location of part in list.
-     * @param selectedPart new part to be used.
+     * Finds outsourced parts made by a company. Parts are matched by supplier code, company names are
+     * not compared.
+     * @param companyName exact company name, as entered on the part.
+     * @return list containing all parts from this company, in table order.
      */
-    static public void updatePart(int index, Part selectedPart)
+    static public ObservableList<Part> lookupPartsBySupplier(String companyName)
     {
-        if (0 <= index && index < allParts.size())  // Verify index is valid
+        ObservableList<Part> foundPartList = FXCollections.observableArrayList();
+        int supplierCode = SupplierDictionary.find(companyName);
+
+        if (supplierCode == SupplierDictionary.NO_SUPPLIER)  // No part has ever used this name
         {
-            allParts.set(index, selectedPart);
+            return foundPartList;
         }
-        else
+
+        for (int i = 0; i < allParts.size(); i++)
         {
-            System.out.println("Debug Info: Invalid index was given when updating part");
+            if (supplierCodeAt(i) == supplierCode)
+            {
+                foundPartList.add(allParts.get(i));
+            }
         }
+        return foundPartList;
     }
 
     /**
-     * Replaces product with new product object.
-     * @param index location of part in list.
-     * @param newProduct product to be used.
+     * Counts outsourced parts from each company.
+     * @return company name -> number of parts, companies with no parts are left out.
      */
-    static public void updateProduct(int index, Product newProduct)
+    static public Map<String, Integer> countPartsBySupplier()
     {
-        if (0 <= index && index < allProducts.size())  // Verify index is valid
+        int[] counts = new int[SupplierDictionary.size()];  // Indexed by supplier code
+
+        for (int i = 0; i < allParts.size(); i++)
         {
-            allProducts.set(index, newProduct);
+            int supplierCode = supplierCodeAt(i);
+
+            if (supplierCode != SupplierDictionary.NO_SUPPLIER)
+            {
+                if (supplierCode >= counts.length)  // Supplier added while counting
+                {
+                    counts = Arrays.copyOf(counts, SupplierDictionary.size());
+                }
+                counts[supplierCode]++;
+            }
         }
-        else
+
+        Map<String, Integer> countsByName = new LinkedHashMap<>();
+        for (int code = 0; code < counts.length; code++)
         {
-            System.out.println("Debug Info (updateProduct): Invalid index was given when updating part");
+            if (counts[code] > 0)
+            {
+                countsByName.put(SupplierDictionary.nameOf(code), counts[code]);
+            }
         }
+        return countsByName;
     }
 
     /**
-     * Deletes part from list containing all parts.
-     * @param selectedPart part to be removed.
-     * @return true if part was found and deleted, false if part was not located.
+     * Finds every product that lists a part as an associated part, without scanning the products.
+     * Can be called from any thread.
+     * @param partId numeric ID of part.
+     * @return list containing all products using the part, in no particular order.
      */
-    static public boolean deletePart(Part selectedPart)
+    static public ObservableList<Product> lookupProductsUsingPart(int partId)
     {
-        System.out.println(selectedPart.getId());
-        for (int i = 0; i < allParts.size(); i++)
+        ObservableList<Product> foundProductList = FXCollections.observableArrayList();
+
+        for (int productId : whereUsed.productsUsing(partId))
         {
-            Part currentPart = allParts.get(i);
+            Product product = productCore.get(productId);
 
-            if (currentPart.getId() == selectedPart.getId())  // Part ID is a match, remove it
+            if (product != null)  // Removed since the IDs were read
             {
-                allParts.remove(i);
-                return true;
+                foundProductList.add(product);
             }
         }
-        System.out.println("Debug Info (deletePart): Failed to delete part");
-        return false; // Loop is complete with part never found
+        return foundProductList;
     }
 
     /**
-     * Deletes product from list containing all products.
-     * @param selectedProduct product to be removed.
-     * @return true if product was found and deleted, false if product was not located.
+     * Can be called from any thread.
+     * @param partId numeric ID of part.
+     * @return true if any product lists the part, such parts cannot be deleted.
      */
-    static public boolean deleteProduct(Product selectedProduct)
+    static public boolean isPartUsed(int partId)
     {
-        for (int i = 0; i < allProducts.size(); i++)
+        return whereUsed.isUsed(partId);
+    }
+
+    /**
+     * Finds every product that lists a product as a component. Can be called from any thread.
+     * @param productId numeric ID of component product.
+     * @return list containing all products built from it, in no particular order.
+     */
+    static public ObservableList<Product> lookupProductsUsingComponent(int productId)
+    {
+        ObservableList<Product> foundProductList = FXCollections.observableArrayList();
+
+        for (int userId : explosions.productsUsing(productId))
         {
-            Product currentProduct = allProducts.get(i);
+            Product product = productCore.get(userId);
 
-            if (currentProduct.getId() == selectedProduct.getId())  // Product ID is a match, remove it
+            if (product != null)
             {
-                allProducts.remove(i);
-                return true;
+                foundProductList.add(product);
             }
         }
-        System.out.println("Debug Info (deleteProduct): Failed to delete product");
-        return false; // Loop is complete with part never found
+        return foundProductList;
     }
 
     /**
-     * Returns list of all parts.
-     * @return ObservableList containing all parts.
+     * Can be called from any thread.
+     * @param productId numeric ID of product.
+     * @return true if any product lists it as a component, such products cannot be deleted.
      */
-    static public ObservableList<Part> getAllParts()
+    static public boolean isProductUsed(int productId)
+    {
+        return explosions.isUsed(productId);
+    }
+
+    /**
+     * Works out every part needed to build a number of a product, through every level of sub-assemblies.
+     * Results for each sub-assembly are kept until it (or anything it is built from) changes, so repeated
+     * explosions are fast. Can be called from any thread.
+     * @param productId numeric ID of product.
+     * @param units number of products to build.
+     * @return part ID -> quantity needed, or null if product is not found or its components form a loop.
+     */
+    static public BomExplosion.Requirements explodeProduct(int productId, long units)
+    {
+        return explosions.explode(productId, units);
+    }
+
+    /**
+     * Looks up the material cost of a product: its associated parts and components for one unit, at current
+     * prices. Costs are kept up to date as part prices change through updatePart, so this never adds anything up.
+     * @param productId numeric ID of product.
+     * @return cost of one unit, or CostRollup.NO_COST if product is not found or its components form a loop.
+     */
+    static public double getMaterialCost(int productId)
+    {
+        Product product = productCore.get(productId);
+        return product != null ? product.getMaterialCost() : CostRollup.NO_COST;
+    }
+
+    /**
+     * Works out how many units of each product can be built from the parts in stock, if each product were
+     * the only one built. Products are worked out in parallel. Can be called from any thread.
+     * @param productIds IDs of products.
+     * @return units buildable for each ID in the same order, BuildabilityEngine.NOT_BUILDABLE if a product is
+     * not found or its components form a loop.
+     */
+    static public long[] getBuildableQuantities(int[] productIds)
+    {
+        return buildability.maxBuildable(productIds);
+    }
+
+    /**
+     * Works out how many units of products can be built when they share the parts in stock. Products are
+     * served in order, each taking the stock it needs before the next one. Can be called from any thread.
+     * @param productIds IDs of products, most important first.
+     * @param wanted units wanted of each product in the same order, Long.MAX_VALUE for as many as possible.
+     * @return units each product gets in the same order, or null if the arrays differ in length or a quantity is negative.
+     */
+    static public long[] allocateBuilds(int[] productIds, long[] wanted)
+    {
+        return buildability.allocate(productIds, wanted);
+    }
+
+    /**
+     * Finds the parts whose stock is closest to (or furthest outside) their min or max, from a watchlist
+     * kept up to date on every stock change, so no parts are scanned. Can be called from any thread.
+     * @param count largest number of parts found.
+     * @return list of up to count parts, most critical first.
+     */
+    static public ObservableList<Part> lookupCriticalParts(int count)
     {
-        if (loadTestData && Tools.initialLaunch)  // Run checks to make sure test data won't be duplicated when changing scenes
+        ObservableList<Part> foundPartList = FXCollections.observableArrayList();
+
+        for (int id : partWatchlist.mostCritical(count))
         {
-            allParts.add(largeEngine);
-            allParts.add(smallEngine);
-            allParts.add(tire);
-            allParts.add(frame);
-            allParts.add(radio);
-            allParts.add(winch);
+            Part part = partCore.get(id);
+
+            if (part != null)  // Deleted since the watchlist was read
+            {
+                foundPartList.add(part);
+            }
         }
-        return allParts;
+        return foundPartList;
     }
 
     /**
-     * Returns list of all products.
-     * @return ObservableList containing all products.
+     * Finds the products whose stock is closest to (or furthest outside) their min or max. Can be called from any thread.
+     * @param count largest number of products found.
+     * @return list of up to count products, most critical first.
      */
-    static public ObservableList<Product> getAllProducts()
+    static public ObservableList<Product> lookupCriticalProducts(int count)
     {
-        if (loadTestData && Tools.initialLaunch) // Stops test parts and products from duplicating
-        {
-            // Add parts to product1
-            largeCar.addAssociatedPart(largeEngine);
-            largeCar.addAssociatedPart(frame);
-            largeCar.addAssociatedPart(tire);
-            largeCar.addAssociatedPart(winch);
-            allProducts.add(largeCar);
+        ObservableList<Product> foundProductList = FXCollections.observableArrayList();
 
-            // Add parts to product2
-            smallCar.addAssociatedPart(smallEngine);
-            smallCar.addAssociatedPart(frame);
-            smallCar.addAssociatedPart(tire);
-            allProducts.add(smallCar);
+        for (int id : productWatchlist.mostCritical(count))
+        {
+            Product product = productCore.get(id);
 
-            // Add product3 (Used to show only products with no parts can be deleted)
-            allProducts.add(emptyCar);
+            if (product != null)
+            {
+                foundProductList.add(product);
+            }
         }
+        return foundProductList;
+    }
 
-        return allProducts;
+    /**
+     * Finds every part priced within a range, from a sorted price index, so only matching parts are visited.
+     * Can be called from any thread.
+     * @param minPrice lowest price included.
+     * @param maxPrice highest price included.
+     * @return list containing the parts found, cheapest first (same price by ID).
+     */
+    static public ObservableList<Part> lookupPartsByPrice(double minPrice, double maxPrice)
+    {
+        return partsOf(partPrices.range(RangeIndex.priceKey(minPrice), RangeIndex.priceKey(maxPrice)));
     }
 
     /**
-     * Prints all parts to the console. Used during development prior to GUI existing.
+     * Finds every part with stock within a range, from a sorted stock index. Can be called from any thread.
+     * @param minStock lowest stock included.
+     * @param maxStock highest stock included.
+     * @return list containing the parts found, lowest stock first (same stock by ID).
      */
-    static public void printAllParts()
+    static public ObservableList<Part> lookupPartsByStock(int minStock, int maxStock)
     {
-        for (Part currentPart : allParts) {
-            System.out.println("   ID: (" + currentPart.getId() + ")");
-            System.out.println("   Name: (" + currentPart.getName() + ")");
-            System.out.println("   Price: (" + currentPart.getPrice() + ")");
-            System.out.println("   Stock: (" + currentPart.getStock() + ")");
-            System.out.println("   Min: (" + currentPart.getMin() + ")");
-            System.out.println("   Max: (" + currentPart.getMax() + ")");
-        }
+        return partsOf(partStocks.range(minStock, maxStock));
     }
 
     /**
-     * Finds location of part.
-     * @param partId numeric ID of part.
-     * @return index location of part in list, or -1 if not found.
+     * Finds every product priced within a range, from a sorted price index. Can be called from any thread.
+     * @param minPrice lowest price included.
+     * @param maxPrice highest price included.
+     * @return list containing the products found, cheapest first (same price by ID).
      */
-    static public int getPartIndex(int partId)
+    static public ObservableList<Product> lookupProductsByPrice(double minPrice, double maxPrice)
     {
-        for (int i = 0; i < allParts.size(); i++)
+        return productsOf(productPrices.range(RangeIndex.priceKey(minPrice), RangeIndex.priceKey(maxPrice)));
+    }
+
+    /**
+     * Finds every product with stock within a range, from a sorted stock index. Can be called from any thread.
+     * @param minStock lowest stock included.
+     * @param maxStock highest stock included.
+     * @return list containing the products found, lowest stock first (same stock by ID).
+     */
+    static public ObservableList<Product> lookupProductsByStock(int minStock, int maxStock)
+    {
+        return productsOf(productStocks.range(minStock, maxStock));
+    }
+
+    /**
+     * Lists every part in order of price or stock without sorting, for tables sorted by those columns.
+     * Can be called from any thread.
+     * @param byPrice true to order by price, false to order by stock.
+     * @return list containing all parts, lowest first.
+     */
+    static public ObservableList<Part> getPartsInOrder(boolean byPrice)
+    {
+        return partsOf(byPrice ? partPrices.inOrder() : partStocks.inOrder());
+    }
+
+    /**
+     * Lists every product in order of price or stock without sorting. Can be called from any thread.
+     * @param byPrice true to order by price, false to order by stock.
+     * @return list containing all products, lowest first.
+     */
+    static public ObservableList<Product> getProductsInOrder(boolean byPrice)
+    {
+        return productsOf(byPrice ? productPrices.inOrder() : productStocks.inOrder());
+    }
+
+    /**
+     * @return parts with these IDs in the same order, skipping IDs deleted since they were read.
+     */
+    static private ObservableList<Part> partsOf(int[] ids)
+    {
+        List<Part> found = new ArrayList<>(ids.length);
+
+        for (int id : ids)
         {
-            if(partId == allParts.get(i).getId())
+            Part part = partCore.get(id);
+
+            if (part != null)
             {
-                return i;
+                found.add(part);
             }
         }
-
-        return -1;
+        return FXCollections.observableList(found);
     }
 
     /**
-     * Finds location of product.
-     * @param productId numeric ID of product.
-     * @return index location of product in list, or -1 if not found.
+     * @return products with these IDs in the same order, skipping IDs deleted since they were read.
      */
-    static public int getProductIndex(int productId)
+    static private ObservableList<Product> productsOf(int[] ids)
     {
-        for (int i = 0; i < allProducts.size(); i++)
+        List<Product> found = new ArrayList<>(ids.length);
+
+        for (int id : ids)
         {
-            if(productId == allProducts.get(i).getId())
+            Product product = productCore.get(id);
+
+            if (product != null)
             {
-                return i;
+                found.add(product);
             }
         }
+        return FXCollections.observableList(found);
+    }
 
-        return -1;
+    /**
+     * Returns the value on hand (price times stock) of every part and product. Kept as a running total,
+     * so reading it takes the same time however large the inventory is. Can be called from any thread.
+     * @return total value of parts and products.
+     */
+    static public double getInventoryValue()
+    {
+        return valuation.getTotalValue();
     }
 
     /**
-     * Generates unique ID for part or product, based on list length. Different lists are used
-     * based on input. Checks to verify ID is not already in use.
-     * @param objectType requires the string "Part" or "Product" other inputs won't generate ID.
-     * @return Generated ID, or -1 if ID creation failed.
+     * Returns the units on hand of every part and product, kept as a running total. Can be called from any thread.
+     * @return total stock of parts and products.
      */
-    static public int generateId(String objectType)
+    static public long getInventoryUnits()
     {
-        int id;  // ID will never = 0
-        boolean idFound = false;
+        return valuation.getTotalUnits();
+    }
 
-        // Different seed value is used based on object type
-        if (Objects.equals(objectType, "Part"))
+    /**
+     * Can be called from any thread.
+     * @return number of in-house parts.
+     */
+    static public int getInHousePartCount()
+    {
+        return valuation.getInHouseCount();
+    }
+
+    /**
+     * Can be called from any thread.
+     * @return number of outsourced parts.
+     */
+    static public int getOutsourcedPartCount()
+    {
+        return valuation.getOutsourcedCount();
+    }
+
+    /**
+     * Replaces part with new part object. Must be called on the JavaFX thread, since locations are table locations.
+     * @param index location of part in list.
+     * @param selectedPart new part to be used.
+     */
+    static public void updatePart(int index, Part selectedPart)
+    {
+        if (0 <= index && index < allParts.size())  // Verify index is valid
         {
-            id = allParts.size() + 1;
+            replaceParts(Map.of(partIdAt(index), selectedPart));
         }
-        else if (Objects.equals(objectType, "Product"))
+        else
         {
-            id = allProducts.size() + 1;
+            System.out.println("Debug Info: Invalid index was given when updating part");
         }
-        else  // Programmer gave incorrect input
-        {
-            System.out.println("Debug Info (generateId): Failed to generate ID, verify function input was \"Part\" OR \"Product\"");
-            id = -1;  // Give ID that will notify programmer of error
+    }
 
+    /**
+     * Replaces product with new product object. Must be called on the JavaFX thread, since locations are table locations.
+     * @param index location of part in list.
+     * @param newProduct product to be used.
+     */
+    static public void updateProduct(int index, Product newProduct)
+    {
+        if (0 <= index && index < allProducts.size())  // Verify index is valid
+        {
+            replaceProducts(Map.of(allProducts.get(index).getId(), newProduct));
+        }
+        else
+        {
+            System.out.println("Debug Info (updateProduct): Invalid index was given when updating part");
         }
+    }
+
+    /**
+     * Deletes part from list containing all parts. Can be called from any thread.
+     * @param selectedPart part to be removed.
+     * @return true if part was found and deleted, false if part was not located or is used by a product.
+     */
+    static public boolean deletePart(Part selectedPart)
+    {
+        System.out.println(selectedPart.getId());
 
-        while (!idFound && id < Integer.MAX_VALUE)  // Continue searching for an ID until the integer size becomes too large
+        if (deleteParts(List.of(selectedPart)) > 0)  // Part ID is a match, it was removed
         {
-            if (lookupPart(id) != null) // A part with this ID already exists
-            {
-                id = id + 1;
-            }
+            return true;
+        }
+        System.out.println("Debug Info (deletePart): Failed to delete part");
+        return false; // Part was never found
+    }
+
+    /**
+     * Deletes product from list containing all products. Can be called from any thread.
+     * @param selectedProduct product to be removed.
+     * @return true if product was found and deleted, false if product was not located.
+     */
+    static public boolean deleteProduct(Product selectedProduct)
+    {
+        if (deleteProducts(List.of(selectedProduct)) > 0)  // Product ID is a match, it was removed
+        {
+            return true;
+        }
+        System.out.println("Debug Info (deleteProduct): Failed to delete product");
+        return false; // Product was never found
+    }
+
+    /**
+     * Adds many parts at once. Tables receive a single change event for the whole batch. Can be called from any thread.
+     * @param newParts parts to be added.
+     */
+    static public void addParts(Collection<? extends Part> newParts)
+    {
+        int added = storeParts(newParts);
+
+        if (added < newParts.size())
+        {
+            System.out.println("Debug Info (addParts): " + (newParts.size() - added) + " part(s) skipped, ID already used");
+        }
+    }
+
+    /**
+     * Adds many products at once. Tables receive a single change event for the whole batch. Can be called from any thread.
+     * @param newProducts products to be added.
+     */
+    static public void addProducts(Collection<? extends Product> newProducts)
+    {
+        int added = storeProducts(newProducts);
+
+        if (added < newProducts.size())
+        {
+            System.out.println("Debug Info (addProducts): " + (newProducts.size() - added) + " product(s) skipped, ID already used or a listed part or component is missing");
+        }
+    }
+
+    /**
+     * Replaces many parts at once. Tables receive a single change event for the whole batch. Can be called from any thread.
+     * @param replacements map from ID of part being replaced to the new part object.
+     * @return number of parts replaced, IDs that are not found, and new IDs for parts used by a product, are skipped.
+     */
+    static public int updateParts(Map<Integer, ? extends Part> replacements)
+    {
+        int updated = replaceParts(replacements);
+
+        if (updated < replacements.size())
+        {
+            System.out.println("Debug Info (updateParts): " + (replacements.size() - updated) + " part(s) not updated");
+        }
+        return updated;
+    }
+
+    /**
+     * Replaces many products at once. Tables receive a single change event for the whole batch. Can be called from any thread.
+     * @param replacements map from ID of product being replaced to the new product object.
+     * @return number of products replaced, IDs that are not found, products listing a missing part or component,
+     * and new IDs for products used as components are skipped.
+     */
+    static public int updateProducts(Map<Integer, ? extends Product> replacements)
+    {
+        int updated = replaceProducts(replacements);
+
+        if (updated < replacements.size())
+        {
+            System.out.println("Debug Info (updateProducts): " + (replacements.size() - updated) + " product(s) not updated");
+        }
+        return updated;
+    }
+
+    /**
+     * Deletes many parts at once with a single pass over the list, instead of shifting the list once per part.
+     * Tables receive a single change event for the whole batch. Can be called from any thread.
+     * @param selectedParts parts to be removed.
+     * @return number of parts deleted, parts that are not found or are used by a product are skipped.
+     */
+    static public int deleteParts(Collection<? extends Part> selectedParts)
+    {
+        return removeParts(selectedParts, true);
+    }
+
+    /**
+     * Deletes parts from the core and the journal, then has the tables remove them.
+     * @param keepUsedParts true to skip parts listed by a product, false when replaying deletes already made.
+     * @return number of parts deleted.
+     */
+    static private int removeParts(Collection<? extends Part> selectedParts, boolean keepUsedParts)
+    {
+        int[] removedIds = new int[selectedParts.size()];
+        int count = 0;
+        int usedCount = 0;
+        long stripes = 0;
+
+        for (Part selectedPart : selectedParts)
+        {
+            stripes |= InventoryCore.stripeOf(selectedPart.getId());
+        }
+
+        InventoryJournal currentJournal = null;
+        long lastRecord = 0;  // Journal records are waited for once, after the stripes are unlocked
+
+        partCore.lock(stripes);
+        try
+        {
+            currentJournal = journal;
+
+            for (Part selectedPart : selectedParts)
+            {
+                int id = selectedPart.getId();
+
+                if (keepUsedParts && whereUsed.isUsed(id))  // Deleting it would leave products listing a missing part
+                {
+                    usedCount++;
+                    continue;
+                }
+
+                if (partCore.remove(id) != null)  // Null if not found, or listed twice
+                {
+                    costs.partChanged(id);  // Only replayed deletes can remove a part in use
+                    partWatchlist.remove(id);
+                    partPrices.remove(id);
+                    partStocks.remove(id);
+                    valuation.removePart(id);
+                    removedIds[count++] = id;
+                    partIds.release(id);  // ID can be handed out again
+
+                    if (currentJournal != null)
+                    {
+                        lastRecord = currentJournal.logDeletePart(id);
+                    }
+                }
+            }
+
+            if (count > 0)
+            {
+                int removedCount = count;
+                FxProjection.publish(() -> projectDeletedParts(removedIds, removedCount));
+            }
+        }
+        finally
+        {
+            partCore.unlock(stripes);
+        }
+        awaitJournal(currentJournal, lastRecord);
+
+        if (usedCount > 0)
+        {
+            System.out.println("Debug Info (deleteParts): " + usedCount + " part(s) used by products were not deleted");
+        }
+        return count;
+    }
+
+    /**
+     * Deletes many products at once with a single pass over the list, instead of shifting the list once per product.
+     * Tables receive a single change event for the whole batch. Can be called from any thread.
+     * @param selectedProducts products to be removed.
+     * @return number of products deleted, products that are not found or are components of another product are skipped.
+     */
+    static public int deleteProducts(Collection<? extends Product> selectedProducts)
+    {
+        return removeProducts(selectedProducts, true);
+    }
+
+    /**
+     * Deletes products from the core and the journal, then has the tables remove them.
+     * @param keepUsedProducts true to skip components of other products, false when replaying deletes already made.
+     * @return number of products deleted.
+     */
+    static private int removeProducts(Collection<? extends Product> selectedProducts, boolean keepUsedProducts)
+    {
+        int[] removedIds = new int[selectedProducts.size()];
+        int count = 0;
+        int usedCount = 0;
+        long stripes = 0;
+
+        for (Product selectedProduct : selectedProducts)
+        {
+            stripes |= InventoryCore.stripeOf(selectedProduct.getId());
+        }
+
+        InventoryJournal currentJournal = null;
+        long lastRecord = 0;  // Journal records are waited for once, after the stripes are unlocked
+
+        productCore.lock(stripes);
+        try
+        {
+            currentJournal = journal;
+
+            for (Product selectedProduct : selectedProducts)
+            {
+                int id = selectedProduct.getId();
+
+                if (keepUsedProducts && explosions.isUsed(id))  // Deleting it would leave products listing a missing component
+                {
+                    usedCount++;
+                    continue;
+                }
+
+                Product removed = productCore.remove(id);
+
+                if (removed != null)
+                {
+                    untrackUsage(removed);
+                    costs.productChanged(id);  // Products built from it lose its cost
+                    productWatchlist.remove(id);
+                    productPrices.remove(id);
+                    productStocks.remove(id);
+                    valuation.removeProduct(id);
+                    removedIds[count++] = id;
+                    productIds.release(id);
+
+                    if (currentJournal != null)
+                    {
+                        lastRecord = currentJournal.logDeleteProduct(id);
+                    }
+                }
+            }
+
+            if (count > 0)
+            {
+                int removedCount = count;
+                FxProjection.publish(() -> projectDeletedProducts(removedIds, removedCount));
+            }
+        }
+        finally
+        {
+            productCore.unlock(stripes);
+        }
+        awaitJournal(currentJournal, lastRecord);
+
+        if (usedCount > 0)
+        {
+            System.out.println("Debug Info (deleteProducts): " + usedCount + " product(s) used as components were not deleted");
+        }
+        return count;
+    }
+
+    /**
+     * Adds to or takes from the stock of a part in one atomic step, without creating a new part. Stock must
+     * stay between the part's min and max, the same rule the forms use. Stock changes made at the same time by
+     * other threads are never lost, and they do not wait for each other. Can be called from any thread.
+     * @param partId numeric ID of part.
+     * @param delta amount added, negative to take stock away.
+     * @return new stock, or -1 if part was not found or stock would leave min and max (stock is not changed).
+     */
+    static public int adjustStock(int partId, int delta)
+    {
+        int newStock;
+        InventoryJournal currentJournal = null;
+        long lastRecord = 0;
+
+        partCore.lockShared(InventoryCore.stripeOf(partId));  // Part cannot be replaced or deleted part way through, other stock changes still run
+        try
+        {
+            newStock = changePartStock(partId, delta, true);
+
+            if (newStock >= 0)
+            {
+                currentJournal = journal;
+
+                if (currentJournal != null)
+                {
+                    lastRecord = currentJournal.logAdjustPartStock(partId, delta);
+                }
+            }
+        }
+        finally
+        {
+            partCore.unlockShared(InventoryCore.stripeOf(partId));
+        }
+        awaitJournal(currentJournal, lastRecord);
+        return newStock;
+    }
+
+    /**
+     * Takes stock of a part for an order or build. Fails instead of taking stock below the part's min.
+     * Can be called from any thread.
+     * @param partId numeric ID of part.
+     * @param quantity amount taken, must be positive.
+     * @return new stock, or -1 if part was not found, quantity is not positive, or too little stock is left.
+     */
+    static public int reserve(int partId, int quantity)
+    {
+        if (quantity <= 0)
+        {
+            System.out.println("Debug Info (reserve): Quantity must be positive, was " + quantity);
+            return -1;
+        }
+        return adjustStock(partId, -quantity);
+    }
+
+    /**
+     * Returns stock of a part taken by reserve(), for example when an order is cancelled. Fails instead of
+     * raising stock above the part's max. Can be called from any thread.
+     * @param partId numeric ID of part.
+     * @param quantity amount returned, must be positive.
+     * @return new stock, or -1 if part was not found, quantity is not positive, or stock would exceed max.
+     */
+    static public int release(int partId, int quantity)
+    {
+        if (quantity <= 0)
+        {
+            System.out.println("Debug Info (release): Quantity must be positive, was " + quantity);
+            return -1;
+        }
+        return adjustStock(partId, quantity);
+    }
+
+    /**
+     * Adds to or takes from the stock of a product in one atomic step, without creating a new product.
+     * Stock must stay between the product's min and max. Can be called from any thread.
+     * @param productId numeric ID of product.
+     * @param delta amount added, negative to take stock away.
+     * @return new stock, or -1 if product was not found or stock would leave min and max (stock is not changed).
+     */
+    static public int adjustProductStock(int productId, int delta)
+    {
+        int newStock;
+        InventoryJournal currentJournal = null;
+        long lastRecord = 0;
+
+        productCore.lockShared(InventoryCore.stripeOf(productId));
+        try
+        {
+            Product product = productCore.get(productId);
+            newStock = product != null ? product.adjustStock(delta) : -1;
+
+            if (newStock >= 0)
+            {
+                currentJournal = journal;
+
+                if (currentJournal != null)
+                {
+                    lastRecord = currentJournal.logAdjustProductStock(productId, delta);
+                }
+                productWatchlist.update(productId, product);
+                productStocks.update(productId, product);
+                valuation.productStockChanged(productId, delta);
+                productStockRows.publish(productId);
+            }
+        }
+        finally
+        {
+            productCore.unlockShared(InventoryCore.stripeOf(productId));
+        }
+        awaitJournal(currentJournal, lastRecord);
+        return newStock;
+    }
+
+    /**
+     * Returns list of all parts, in table order. The list is only changed on the JavaFX thread, changes made
+     * on other threads show up once the JavaFX thread has applied them.
+     * @return ObservableList containing all parts.
+     */
+    static public ObservableList<Part> getAllParts()
+    {
+        if (loadTestData && Tools.initialLaunch && !restoredFromDisk)  // Run checks to make sure test data won't be duplicated when changing scenes, or loaded over saved data
+        {
+            addPart(largeEngine);  // Goes through addPart so the ID index stays current
+            addPart(smallEngine);
+            addPart(tire);
+            addPart(frame);
+            addPart(radio);
+            addPart(winch);
+        }
+        return allParts;
+    }
+
+    /**
+     * Returns list of all products, in table order. The list is only changed on the JavaFX thread.
+     * @return ObservableList containing all products.
+     */
+    static public ObservableList<Product> getAllProducts()
+    {
+        if (loadTestData && Tools.initialLaunch && !restoredFromDisk) // Stops test parts and products from duplicating
+        {
+            // Add parts to product1
+            largeCar.addAssociatedPart(largeEngine);
+            largeCar.addAssociatedPart(frame);
+            largeCar.addAssociatedPart(tire, 4);
+            largeCar.addAssociatedPart(winch);
+            addProduct(largeCar);
+
+            // Add parts to product2
+            smallCar.addAssociatedPart(smallEngine);
+            smallCar.addAssociatedPart(frame);
+            smallCar.addAssociatedPart(tire, 4);
+            addProduct(smallCar);
+
+            // Add product3 (Used to show only products with no parts can be deleted)
+            addProduct(emptyCar);
+        }
+
+        return allProducts;
+    }
+
+    /**
+     * Replaces the inventory with the contents of a snapshot file. Call on the JavaFX thread before
+     * openJournal(), which then replays only the changes made after the snapshot. Other writers wait
+     * until loading is done. The search index is rebuilt in the background, searches check every object
+     * until it is ready.
+     * @param file location of snapshot, nothing happens if it does not exist.
+     * @throws IOException if snapshot cannot be read.
+     */
+    static public void loadSnapshot(Path file) throws IOException
+    {
+        if (journal != null)
+        {
+            System.out.println("Debug Info (loadSnapshot): Snapshot must be loaded before the journal is opened");
+            return;
+        }
+        if (!FxProjection.onProjectionThread())
+        {
+            System.out.println("Debug Info (loadSnapshot): Snapshot must be loaded on the JavaFX thread");
+            return;
+        }
+
+        long epoch;
+        lockAllWriters();
+        try
+        {
+            FxProjection.flush();  // Tables must match the core before both are replaced
+            epoch = InventorySnapshot.read(file, partIds, productIds, new InventorySnapshot.Target()
+            {
+                private int[] ids;  // IDs and names of loaded parts, used to rebuild the search index
+                private String[] names;
+
+                @Override
+                public void loadParts(Part[] batch, int count, int total)
+                {
+                    if (ids == null)  // First batch
+                    {
+                        ids = new int[total];
+                        names = new String[total];
+                        clearParts(total);
+                    }
+
+                    int position = allParts.size();
+
+                    partStoreLock.writeLock().lock();
+                    try
+                    {
+                        allParts.addAll(Arrays.asList(batch).subList(0, count));
+
+                        for (int i = 0; i < count; i++, position++)
+                        {
+                            if (partStore != null)  // The store holds the values, the core keeps no object
+                            {
+                                partCore.putMoved(batch[i].getId());
+                            }
+                            else
+                            {
+                                partCore.put(batch[i].getId(), batch[i]);
+                            }
+                            partIndex.put(batch[i].getId(), position);
+                            partWatchlist.update(batch[i].getId(), batch[i]);
+                            partPrices.update(batch[i].getId(), batch[i]);
+                            partStocks.update(batch[i].getId(), batch[i]);
+                            valuation.addPart(batch[i]);
+                            ids[position] = batch[i].getId();
+                            names[position] = batch[i].getName();
+                        }
+                    }
+                    finally
+                    {
+                        partStoreLock.writeLock().unlock();
+                    }
+
+                    if (position == total)  // Last batch
+                    {
+                        partTrigrams.rebuildInBackground(ids, names);
+                        partVersion++;
+                    }
+                }
+
+                @Override
+                public Part findPart(int id)
+                {
+                    return lookupPart(id);
+                }
+
+                @Override
+                public void loadProducts(Product[] products)
+                {
+                    Inventory.loadProducts(products);
+                }
+            });
+        }
+        catch (IOException failedToLoad)  // Do not leave a partly loaded inventory behind
+        {
+            clearParts(0);
+            loadProducts(new Product[0]);
+            throw failedToLoad;
+        }
+        finally
+        {
+            unlockAllWriters();
+        }
+
+        if (epoch >= 0)
+        {
+            snapshotEpoch = epoch;
+            restoredFromDisk = true;
+        }
+    }
+
+    /**
+     * Saves the whole inventory to a snapshot file, then empties the journal since the snapshot
+     * now holds every change it recorded. Call on the JavaFX thread, other writers wait until saving is done.
+     * @param file location of snapshot, replaced if it exists.
+     * @throws IOException if snapshot cannot be written or journal cannot be emptied.
+     */
+    static public void saveSnapshot(Path file) throws IOException
+    {
+        if (!FxProjection.onProjectionThread())
+        {
+            System.out.println("Debug Info (saveSnapshot): Snapshot must be saved on the JavaFX thread");
+            return;
+        }
+
+        lockAllWriters();
+        try
+        {
+            FxProjection.flush();  // Tables are written in table order, they must hold every journaled change first
+
+            long epoch = (journal != null ? journal.getEpoch() : snapshotEpoch) + 1;  // Journals from before this snapshot are skipped at startup
+
+            InventorySnapshot.write(file, epoch, allParts, allProducts, partIds, productIds);
+            snapshotEpoch = epoch;
+
+            if (journal != null)
+            {
+                journal.truncate(epoch);
+            }
+        }
+        finally
+        {
+            unlockAllWriters();
+        }
+    }
+
+    /**
+     * Restores the inventory from a journal file, then records every later change to it.
+     * Test data is not loaded if the journal contained anything. Other writers wait until the journal is open.
+     * @param file location of journal, created if it does not exist.
+     * @param durability how soon changes are flushed to disk.
+     * @throws IOException if journal cannot be read or opened.
+     */
+    static public void openJournal(Path file, InventoryJournal.Durability durability) throws IOException
+    {
+        lockAllWriters();  // Changes made by other threads are either replayed or recorded, never lost in between
+        try
+        {
+            openJournalLocked(file, durability);
+        }
+        finally
+        {
+            unlockAllWriters();
+        }
+    }
+
+    /**
+     * Body of openJournal(), runs with every writer stopped.
+     */
+    static private void openJournalLocked(Path file, InventoryJournal.Durability durability) throws IOException
+    {
+        closeJournal();
+
+        int replayed = InventoryJournal.replay(file, snapshotEpoch, new InventoryJournal.Replay()  // Journal is closed, so replayed changes are not recorded again
+        {
+            @Override
+            public Part findPart(int id)
+            {
+                return lookupPart(id);
+            }
+
+            @Override
+            public void addPart(Part part)
+            {
+                Inventory.addPart(part);
+            }
+
+            @Override
+            public void updatePart(int oldId, Part part)
+            {
+                replaceParts(Map.of(oldId, part));
+            }
+
+            @Override
+            public void deletePart(int id)
+            {
+                Part part = lookupPart(id);
+                if (part != null)
+                {
+                    removeParts(List.of(part), false);  // Delete was allowed when it was logged, and does not print debug info
+                }
+            }
+
+            @Override
+            public void addProduct(Product product)
+            {
+                Inventory.addProduct(product);
+            }
+
+            @Override
+            public void updateProduct(int oldId, Product product)
+            {
+                replaceProducts(Map.of(oldId, product));
+            }
+
+            @Override
+            public void deleteProduct(int id)
+            {
+                Product product = lookupProduct(id);
+                if (product != null)
+                {
+                    removeProducts(List.of(product), false);
+                }
+            }
+
+            @Override
+            public void adjustPartStock(int id, int delta)
+            {
+                changePartStock(id, delta, false);  // Was within min and max when it was logged
+            }
+
+            @Override
+            public void adjustProductStock(int id, int delta)
+            {
+                Product product = lookupProduct(id);
+                if (product != null)
+                {
+                    product.setStock(product.getStock() + delta);
+                    productWatchlist.update(id, product);
+                    productStocks.update(id, product);
+                    valuation.productStockChanged(id, delta);
+                    productStockRows.publish(id);
+                }
+            }
+        });
+
+        System.out.println("Debug Info (openJournal): Replayed " + replayed + " changes");
+        restoredFromDisk |= replayed > 0;
+        journal = new InventoryJournal(file, durability, snapshotEpoch);
+    }
+
+    /**
+     * Writes any changes still waiting to the journal and closes it. Does nothing if no journal is open.
+     */
+    static public void closeJournal()
+    {
+        lockAllWriters();  // No writer is part way through recording a change
+        try
+        {
+            if (journal != null)
+            {
+                try
+                {
+                    journal.close();
+                }
+                catch (IOException failedToClose)
+                {
+                    System.out.println("Debug Info (closeJournal): " + failedToClose.getMessage());
+                }
+                journal = null;
+            }
+        }
+        finally
+        {
+            unlockAllWriters();
+        }
+    }
+
+    /**
+     * Creates a live view of all parts for a table. The view follows every add, update and delete
+     * made to the inventory, and which parts it shows can be changed by swapping its predicate.
+     * @return FilteredList showing all parts until a predicate is set.
+     */
+    static public FilteredList<Part> createPartView()
+    {
+        return new FilteredList<>(getAllParts());  // getAllParts also loads test data on first launch
+    }
+
+    /**
+     * Creates a live view of all products for a table. The view follows every add, update and delete
+     * made to the inventory, and which products it shows can be changed by swapping its predicate.
+     * @return FilteredList showing all products until a predicate is set.
+     */
+    static public FilteredList<Product> createProductView()
+    {
+        return new FilteredList<>(getAllProducts());
+    }
+
+    /**
+     * Creates a list of all parts for a table that only loads the rows near what the table shows, for
+     * inventories too large to sort or filter as a whole. Shows parts in table order until setOrder() is called.
+     * Must be called on the JavaFX thread.
+     * @return paged list following every add, update and delete made to the inventory.
+     */
+    static public PagedList<Part> createPagedPartList()
+    {
+        return new PagedList<>(partCore::get, getAllParts(), partTableOrder);  // getAllParts also loads test data on first launch
+    }
+
+    /**
+     * Creates a list of all products for a table that only loads the rows near what the table shows.
+     * Must be called on the JavaFX thread.
+     * @return paged list following every add, update and delete made to the inventory.
+     */
+    static public PagedList<Product> createPagedProductList()
+    {
+        return new PagedList<>(productCore::get, getAllProducts(), productTableOrder);
+    }
+
+    /**
+     * @return order of parts in the part table, for a paged list.
+     */
+    static public PagedList.RowOrder getPartTableOrder()
+    {
+        return partTableOrder;
+    }
+
+    /**
+     * @param byPrice true to order by price, false to order by stock.
+     * @return order of parts from the sorted index, for a paged list.
+     */
+    static public PagedList.RowOrder getPartOrder(boolean byPrice)
+    {
+        return byPrice ? partPrices : partStocks;
+    }
+
+    /**
+     * @return order of products in the product table, for a paged list.
+     */
+    static public PagedList.RowOrder getProductTableOrder()
+    {
+        return productTableOrder;
+    }
+
+    /**
+     * @param byPrice true to order by price, false to order by stock.
+     * @return order of products from the sorted index, for a paged list.
+     */
+    static public PagedList.RowOrder getProductOrder(boolean byPrice)
+    {
+        return byPrice ? productPrices : productStocks;
+    }
+
+    /**
+     * Used to tell if cached part search results are still valid.
+     * @return number that changes every time a part is added, updated or deleted.
+     */
+    static public int getPartVersion()
+    {
+        return partVersion;
+    }
+
+    /**
+     * Used to tell if cached product search results are still valid.
+     * @return number that changes every time a product is added, updated or deleted.
+     */
+    static public int getProductVersion()
+    {
+        return productVersion;
+    }
+
+    /**
+     * Prints all parts to the console. Used during development prior to GUI existing.
+     */
+    static public void printAllParts()
+    {
+        for (Part currentPart : allParts) {
+            System.out.println("   ID: (" + currentPart.getId() + ")");
+            System.out.println("   Name: (" + currentPart.getName() + ")");
+            System.out.println("   Price: (" + currentPart.getPrice() + ")");
+            System.out.println("   Stock: (" + currentPart.getStock() + ")");
+            System.out.println("   Min: (" + currentPart.getMin() + ")");
+            System.out.println("   Max: (" + currentPart.getMax() + ")");
+        }
+    }
+
+    /**
+     * Finds location of part.
+     * @param partId numeric ID of part.
+     * @return index location of part in list, or -1 if not found.
+     */
+    static public int getPartIndex(int partId)
+    {
+        return partIndex.position(partId);
+    }
+
+    /**
+     * Finds location of product.
+     * @param productId numeric ID of product.
+     * @return index location of product in list, or -1 if not found.
+     */
+    static public int getProductIndex(int productId)
+    {
+        return productIndex.position(productId);
+    }
+
+    /**
+     * Generates unique ID for part or product in constant time. Parts and products each have their own
+     * allocator, IDs of deleted objects are handed out again before new IDs are used.
+     * The ID is marked as used as soon as it is generated.
+     * @param objectType requires the string "Part" or "Product" other inputs won't generate ID.
+     * @return Generated ID, or -1 if ID creation failed.
+     */
+    static public int generateId(String objectType)
+    {
+        if (Objects.equals(objectType, "Part"))
+        {
+            return partIds.allocate();
+        }
+        else if (Objects.equals(objectType, "Product"))
+        {
+            return productIds.allocate();
+        }
+
+        // Programmer gave incorrect input
+        System.out.println("Debug Info (generateId): Failed to generate ID, verify function input was \"Part\" OR \"Product\"");
+        return -1;  // Give ID that will notify programmer of error
+    }
+
+    /**
+     * Creates the list all parts are kept in.
+     * @param storage "objects" for one object per part, "columnar" for ColumnarPartStore, "offheap" for OffHeapPartStore.
+     */
+    static private InventoryList<Part> createPartList(String storage)
+    {
+        switch (storage)
+        {
+            case "columnar":
+                return new ColumnarPartStore();  // Parts kept in arrays, part objects are created as tables read them
+            case "offheap":
+                return new OffHeapPartStore();  // Parts kept outside the heap
+            case "objects":
+                return new InventoryList<>();
+            default:
+                System.out.println("Debug Info (Inventory): Unknown part storage \"" + storage + "\", storing parts as objects");
+                return new InventoryList<>();
+        }
+    }
+
+    /**
+     * Adds parts to the core and the journal, then has the tables add them.
+     * @return number of parts added, parts whose ID is already used are skipped.
+     */
+    static private int storeParts(Collection<? extends Part> newParts)
+    {
+        List<Part> added = new ArrayList<>(newParts.size());
+        long stripes = 0;
+
+        for (Part newPart : newParts)
+        {
+            stripes |= InventoryCore.stripeOf(newPart.getId());
+        }
+
+        InventoryJournal currentJournal = null;
+        long lastRecord = 0;  // Journal records are waited for once, after the stripes are unlocked
+
+        partCore.lock(stripes);
+        try
+        {
+            currentJournal = journal;
+
+            for (Part newPart : newParts)
+            {
+                if (partCore.add(newPart.getId(), newPart))
+                {
+                    partIds.reserve(newPart.getId());  // Part may have been created with a known ID
+                    added.add(newPart);
+                    costs.partChanged(newPart.getId());  // Products may list the ID already, such as when replaying
+                    partWatchlist.update(newPart.getId(), newPart);
+                    partPrices.update(newPart.getId(), newPart);
+                    partStocks.update(newPart.getId(), newPart);
+                    valuation.addPart(newPart);
+
+                    if (currentJournal != null)  // Only queued, the batch waits for one fsync once unlocked
+                    {
+                        lastRecord = currentJournal.logAddPart(newPart);
+                    }
+                }
+            }
+
+            if (!added.isEmpty())
+            {
+                FxProjection.publish(() -> projectAddedParts(added));  // Published while locked, so tables see changes to one ID in order
+            }
+        }
+        finally
+        {
+            partCore.unlock(stripes);
+        }
+        awaitJournal(currentJournal, lastRecord);
+        return added.size();
+    }
+
+    /**
+     * Adds products to the core and the journal, then has the tables add them. The parts they list are locked
+     * shared first, and the components they list along with the products, so none of them can be deleted or
+     * given a new ID until the products are in the where-used indexes.
+     * @return number of products added, products whose ID is already used or that list a missing part or component are skipped.
+     */
+    static private int storeProducts(Collection<? extends Product> newProducts)
+    {
+        List<Product> added = new ArrayList<>(newProducts.size());
+        long stripes = 0;
+        long partStripes = 0;
+
+        for (Product newProduct : newProducts)
+        {
+            stripes |= InventoryCore.stripeOf(newProduct.getId()) | stripesOf(newProduct.componentBill());  // Components cannot be deleted meanwhile
+            partStripes |= stripesOf(newProduct.billOfMaterials());
+        }
+
+        InventoryJournal currentJournal = null;
+        long lastRecord = 0;  // Journal records are waited for once, after the stripes are unlocked
+
+        partCore.lockShared(partStripes);  // Parts are locked before products, as in lockAllWriters()
+        productCore.lock(stripes);
+        try
+        {
+            currentJournal = journal;
+
+            for (Product newProduct : newProducts)
+            {
+                if (listedExist(newProduct) && productCore.add(newProduct.getId(), newProduct))
+                {
+                    trackUsage(newProduct);
+                    costs.productChanged(newProduct.getId());
+                    productWatchlist.update(newProduct.getId(), newProduct);
+                    productPrices.update(newProduct.getId(), newProduct);
+                    productStocks.update(newProduct.getId(), newProduct);
+                    valuation.addProduct(newProduct);
+                    productIds.reserve(newProduct.getId());
+                    added.add(newProduct);
+
+                    if (currentJournal != null)
+                    {
+                        lastRecord = currentJournal.logAddProduct(newProduct);
+                    }
+                }
+            }
+
+            if (!added.isEmpty())
+            {
+                FxProjection.publish(() -> projectAddedProducts(added));
+            }
+        }
+        finally
+        {
+            productCore.unlock(stripes);
+            partCore.unlockShared(partStripes);
+        }
+        awaitJournal(currentJournal, lastRecord);
+        return added.size();
+    }
+
+    /**
+     * Replaces parts in the core and the journal, then has the tables replace them.
+     * @return number of parts replaced, IDs that are not found (or whose new ID belongs to another part) are skipped,
+     * as are new IDs for parts listed by a product.
+     */
+    static private int replaceParts(Map<Integer, ? extends Part> replacements)
+    {
+        int[] oldIds = new int[replacements.size()];
+        List<Part> newParts = new ArrayList<>(replacements.size());
+        int usedCount = 0;
+        long stripes = 0;
+
+        for (Map.Entry<Integer, ? extends Part> replacement : replacements.entrySet())
+        {
+            stripes |= InventoryCore.stripeOf(replacement.getKey()) | InventoryCore.stripeOf(replacement.getValue().getId());
+        }
+
+        InventoryJournal currentJournal = null;
+        long lastRecord = 0;  // Journal records are waited for once, after the stripes are unlocked
+
+        partCore.lock(stripes);
+        try
+        {
+            currentJournal = journal;
+
+            for (Map.Entry<Integer, ? extends Part> replacement : replacements.entrySet())
+            {
+                int oldId = replacement.getKey();
+                Part newPart = replacement.getValue();
+
+                Part oldPart = partCore.get(oldId);
+
+                if (oldPart == null || (newPart.getId() != oldId && partCore.contains(newPart.getId())))
+                {
+                    continue;
+                }
+                if (newPart.getId() != oldId && whereUsed.isUsed(oldId))  // Products would list a missing ID, which a new part may be given later
+                {
+                    usedCount++;
+                    continue;
+                }
+
+                if (newPart.getId() != oldId)
+                {
+                    partCore.remove(oldId);
+                    partIds.release(oldId);
+                    partIds.reserve(newPart.getId());
+                }
+                partCore.put(newPart.getId(), newPart);
+
+                if (newPart.getId() != oldId)  // Products listing either ID have a different cost now
+                {
+                    costs.partChanged(oldId);
+                    costs.partChanged(newPart.getId());
+                }
+                else if (newPart.getPrice() != oldPart.getPrice())  // Other changes leave every cost as it is
+                {
+                    costs.partChanged(oldId);
+                }
+                if (newPart.getId() != oldId)
+                {
+                    partWatchlist.remove(oldId);
+                    partPrices.remove(oldId);
+                    partStocks.remove(oldId);
+                }
+                partWatchlist.update(newPart.getId(), newPart);  // Min and max may have changed along with stock
+                partPrices.update(newPart.getId(), newPart);
+                partStocks.update(newPart.getId(), newPart);
+                valuation.removePart(oldId);
+                valuation.addPart(newPart);
+                oldIds[newParts.size()] = oldId;
+                newParts.add(newPart);
+
+                if (currentJournal != null)
+                {
+                    lastRecord = currentJournal.logUpdatePart(oldId, newPart);
+                }
+            }
+
+            if (!newParts.isEmpty())
+            {
+                FxProjection.publish(() -> projectUpdatedParts(oldIds, newParts));
+            }
+        }
+        finally
+        {
+            partCore.unlock(stripes);
+        }
+        awaitJournal(currentJournal, lastRecord);
+
+        if (usedCount > 0)
+        {
+            System.out.println("Debug Info (updateParts): " + usedCount + " part(s) used by products keep their ID");
+        }
+        return newParts.size();
+    }
+
+    /**
+     * Replaces products in the core and the journal, then has the tables replace them. The parts and components
+     * the new products list are locked as in storeProducts().
+     * @return number of products replaced, IDs that are not found (or whose new ID belongs to another product),
+     * products listing a missing part or component, and new IDs for products used as components are skipped.
+     */
+    static private int replaceProducts(Map<Integer, ? extends Product> replacements)
+    {
+        int[] oldIds = new int[replacements.size()];
+        List<Product> newProducts = new ArrayList<>(replacements.size());
+        int usedCount = 0;
+        long stripes = 0;
+        long partStripes = 0;
+
+        for (Map.Entry<Integer, ? extends Product> replacement : replacements.entrySet())
+        {
+            stripes |= InventoryCore.stripeOf(replacement.getKey()) | InventoryCore.stripeOf(replacement.getValue().getId())
+                    | stripesOf(replacement.getValue().componentBill());
+            partStripes |= stripesOf(replacement.getValue().billOfMaterials());
+        }
+
+        InventoryJournal currentJournal = null;
+        long lastRecord = 0;  // Journal records are waited for once, after the stripes are unlocked
+
+        partCore.lockShared(partStripes);
+        productCore.lock(stripes);
+        try
+        {
+            currentJournal = journal;
+
+            for (Map.Entry<Integer, ? extends Product> replacement : replacements.entrySet())
+            {
+                int oldId = replacement.getKey();
+                Product newProduct = replacement.getValue();
+
+                Product oldProduct = productCore.get(oldId);
+
+                if (oldProduct == null || (newProduct.getId() != oldId && productCore.get(newProduct.getId()) != null)
+                        || !listedExist(newProduct))
+                {
+                    continue;
+                }
+                if (newProduct.getId() != oldId && explosions.isUsed(oldId))  // Products would list a missing component
+                {
+                    usedCount++;
+                    continue;
+                }
+                untrackUsage(oldProduct);  // Before tracking the new product, which may be the same object
+
+                if (newProduct.getId() != oldId)
+                {
+                    productCore.remove(oldId);
+                    productIds.release(oldId);
+                    productIds.reserve(newProduct.getId());
+                }
+                productCore.put(newProduct.getId(), newProduct);
+                trackUsage(newProduct);
+
+                if (newProduct.getId() != oldId)
+                {
+                    costs.productChanged(oldId);
+                    productWatchlist.remove(oldId);
+                    productPrices.remove(oldId);
+                    productStocks.remove(oldId);
+                }
+                costs.productChanged(newProduct.getId());
+                productWatchlist.update(newProduct.getId(), newProduct);
+                productPrices.update(newProduct.getId(), newProduct);
+                productStocks.update(newProduct.getId(), newProduct);
+                valuation.removeProduct(oldId);
+                valuation.addProduct(newProduct);
+                oldIds[newProducts.size()] = oldId;
+                newProducts.add(newProduct);
+
+                if (currentJournal != null)
+                {
+                    lastRecord = currentJournal.logUpdateProduct(oldId, newProduct);
+                }
+            }
+
+            if (!newProducts.isEmpty())
+            {
+                FxProjection.publish(() -> projectUpdatedProducts(oldIds, newProducts));
+            }
+        }
+        finally
+        {
+            productCore.unlock(stripes);
+            partCore.unlockShared(partStripes);
+        }
+        awaitJournal(currentJournal, lastRecord);
+
+        if (usedCount > 0)
+        {
+            System.out.println("Debug Info (updateProducts): " + usedCount + " product(s) used as components keep their ID");
+        }
+        return newProducts.size();
+    }
+
+    /**
+     * Waits until the journal records of a change are on disk, when the journal fsyncs every change.
+     * Called once per batch after its locks are released, so the batch shares one fsync and other writers
+     * are not held up while it waits.
+     * @param recordedTo journal the records were logged to, null if none.
+     * @param lastRecord sequence number of the last record logged, 0 if none.
+     */
+    static private void awaitJournal(InventoryJournal recordedTo, long lastRecord)
+    {
+        if (recordedTo != null)
+        {
+            recordedTo.awaitDurable(lastRecord);
+        }
+    }
+
+    /**
+     * Changes the stock of a part, and the indexes that follow stock, then has the table show it. When parts
+     * are kept in partStore the row itself is changed, unless the part is still waiting to be written there.
+     * Caller must hold the stripe of the part, shared or not.
+     * @param checked true to refuse stock outside min and max, false for changes checked when they were logged.
+     * @return new stock, or -1 if part was not found or stock would leave min and max (stock is not changed).
+     */
+    static private int changePartStock(int partId, int delta, boolean checked)
+    {
+        int newStock;
+
+        if (partStore != null)
+        {
+            partStoreLock.writeLock().lock();  // Rows are not atomic, and parts are released into the store under this lock
+        }
+        try
+        {
+            Part part = partCore.getHeld(partId);  // Every part while parts are kept as objects
+            int row = part == null && partCore.contains(partId) ? partIndex.position(partId) : -1;
+
+            if (part != null)
+            {
+                newStock = checked ? part.adjustStock(delta) : part.getStock() + delta;
+                if (!checked)
+                {
+                    part.setStock(newStock);
+                }
+            }
+            else if (row >= 0)
+            {
+                newStock = checked ? partStore.adjustStock(row, delta) : partStore.getStock(row) + delta;
+                if (!checked)
+                {
+                    partStore.setStock(row, newStock);
+                }
+                part = partStore.copyRow(row);  // Levels for the indexes below
+            }
             else
             {
-                idFound = true;
+                return -1;
+            }
+
+            if (newStock >= 0)
+            {
+                partWatchlist.update(partId, part);  // Still locked, so the last update reads the latest stock
+                partStocks.update(partId, part);
+            }
+        }
+        finally
+        {
+            if (partStore != null)
+            {
+                partStoreLock.writeLock().unlock();
+            }
+        }
+
+        if (newStock >= 0)
+        {
+            valuation.partStockChanged(partId, delta);
+            partStockRows.publish(partId);  // Many changes to one part between pulses redraw its row once
+        }
+        return newStock;
+    }
+
+    /**
+     * Lets the core drop a part once partStore holds its values. Runs on the projection thread, holding
+     * partStoreLock for writing, so no stock change falls between writing the row and the release.
+     */
+    static private void releasePart(Part part)
+    {
+        if (partStore != null)
+        {
+            partCore.release(part.getId(), part);
+        }
+    }
+
+    /**
+     * Copies a part out of partStore for the core. Can be called from any thread.
+     * @return copy of the part, or null if the store does not hold it.
+     */
+    static private Part readStoredPart(int partId)
+    {
+        partStoreLock.readLock().lock();
+        try
+        {
+            int row = partIndex.position(partId);
+            return row >= 0 ? partStore.copyRow(row) : null;
+        }
+        finally
+        {
+            partStoreLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return stripe set of the IDs a bill lists, parts or components.
+     */
+    static private long stripesOf(BillOfMaterials bill)
+    {
+        long stripes = 0;
+
+        for (int i = 0; i < bill.size(); i++)
+        {
+            stripes |= InventoryCore.stripeOf(bill.partIdAt(i));
+        }
+        return stripes;
+    }
+
+    /**
+     * Checks that every part and component a product lists is in the core. Caller must hold the stripes
+     * of both bills from stripesOf().
+     * @return true if nothing listed is missing.
+     */
+    static private boolean listedExist(Product product)
+    {
+        BillOfMaterials associatedParts = product.billOfMaterials();
+        BillOfMaterials components = product.componentBill();
+
+        for (int i = 0; i < associatedParts.size(); i++)
+        {
+            if (!partCore.contains(associatedParts.partIdAt(i)))
+            {
+                System.out.println("Debug Info (Inventory): Product " + product.getId() + " lists missing part " + associatedParts.partIdAt(i));
+                return false;
+            }
+        }
+        for (int i = 0; i < components.size(); i++)
+        {
+            if (!productCore.contains(components.partIdAt(i)))  // Components earlier in the same batch are already stored
+            {
+                System.out.println("Debug Info (Inventory): Product " + product.getId() + " lists missing component " + components.partIdAt(i));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the associated parts and components of a product entering the core to the where-used indexes, and
+     * marks its bills read only while it is stored. Caller must hold the stripe of the product.
+     */
+    static private void trackUsage(Product product)
+    {
+        whereUsed.addProduct(product);
+        explosions.addProduct(product);
+        product.attach(true);
+    }
+
+    /**
+     * Removes the associated parts and components of a product leaving the core from the where-used indexes.
+     * Caller must hold the stripe of the product.
+     */
+    static private void untrackUsage(Product product)
+    {
+        product.attach(false);
+        product.setMaterialCost(CostRollup.NO_COST);
+        whereUsed.removeProduct(product);
+        explosions.removeProduct(product);
+    }
+
+    /**
+     * Appends parts to the part table. Runs on the projection thread.
+     */
+    static private void projectAddedParts(List<Part> added)
+    {
+        partStoreLock.writeLock().lock();
+        try
+        {
+            int position = allParts.size();
+            allParts.addAll(added);
+
+            for (Part newPart : added)
+            {
+                indexPart(newPart, position++);
+                releasePart(newPart);
+            }
+        }
+        finally
+        {
+            partStoreLock.writeLock().unlock();
+        }
+        partTrigrams.publish();  // Searches see the new parts
+        partVersion++;
+    }
+
+    /**
+     * Appends products to the product table. Runs on the projection thread.
+     */
+    static private void projectAddedProducts(List<Product> added)
+    {
+        int position = allProducts.size();
+        allProducts.addAll(added);
+
+        for (Product newProduct : added)
+        {
+            indexProduct(newProduct, position++);
+        }
+        productTrigrams.publish();
+        productVersion++;
+    }
+
+    /**
+     * Replaces parts in the part table, each keeps its location. Runs on the projection thread.
+     */
+    static private void projectUpdatedParts(int[] oldIds, List<Part> newParts)
+    {
+        allParts.beginBatch();
+        partStoreLock.writeLock().lock();
+        try
+        {
+            for (int i = 0; i < newParts.size(); i++)
+            {
+                int index = partIndex.position(oldIds[i]);
+
+                unindexPart(allParts.set(index, newParts.get(i)));
+                indexPart(newParts.get(i), index);
+                releasePart(newParts.get(i));
+            }
+        }
+        finally
+        {
+            partStoreLock.writeLock().unlock();
+            partTrigrams.publish();
+            partVersion++;
+            allParts.endBatch();
+        }
+    }
+
+    /**
+     * Replaces products in the product table, each keeps its location. Runs on the projection thread.
+     */
+    static private void projectUpdatedProducts(int[] oldIds, List<Product> newProducts)
+    {
+        allProducts.beginBatch();
+        try
+        {
+            for (int i = 0; i < newProducts.size(); i++)
+            {
+                int index = productIndex.position(oldIds[i]);
+
+                unindexProduct(allProducts.set(index, newProducts.get(i)));
+                indexProduct(newProducts.get(i), index);
+            }
+        }
+        finally
+        {
+            productTrigrams.publish();
+            productVersion++;
+            allProducts.endBatch();
+        }
+    }
+
+    /**
+     * Removes parts from the part table in a single pass. Runs on the projection thread.
+     */
+    static private void projectDeletedParts(int[] ids, int count)
+    {
+        int[] positions = new int[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            positions[i] = partIndex.position(ids[i]);
+        }
+        Arrays.sort(positions);
+
+        partStoreLock.writeLock().lock();
+        try
+        {
+            for (int position : positions)
+            {
+                unindexPart(allParts.get(position));
+            }
+
+            allParts.removePositions(positions, count);
+            repositionParts(positions[0]);
+        }
+        finally
+        {
+            partStoreLock.writeLock().unlock();
+        }
+        partTrigrams.publish();
+        partVersion++;
+    }
+
+    /**
+     * Removes products from the product table in a single pass. Runs on the projection thread.
+     */
+    static private void projectDeletedProducts(int[] ids, int count)
+    {
+        int[] positions = new int[count];
+
+        for (int i = 0; i < count; i++)
+        {
+            positions[i] = productIndex.position(ids[i]);
+        }
+        Arrays.sort(positions);
+
+        for (int position : positions)
+        {
+            unindexProduct(allProducts.get(position));
+        }
+
+        allProducts.removePositions(positions, count);
+        repositionProducts(positions[0]);
+        productTrigrams.publish();
+        productVersion++;
+    }
+
+    /**
+     * Shows the current stock of a part in the part table. Runs on the projection thread. Reads the stock
+     * when it runs, so changes applied out of order still leave the latest stock in the table.
+     */
+    static private void projectPartStock(int partId)
+    {
+        int index = partIndex.position(partId);
+
+        if (index >= 0)  // Negative if deleted before the change reached the table
+        {
+            allParts.refresh(index);  // Stock is already in the row, changePartStock writes it there
+        }
+    }
+
+    /**
+     * Shows the current stock of a product in the product table. Runs on the projection thread.
+     */
+    static private void projectProductStock(int productId)
+    {
+        int index = productIndex.position(productId);
+
+        if (index >= 0)
+        {
+            allProducts.refresh(index);
+        }
+    }
+
+    /**
+     * Adds part to the ID index and search index. Part must already be at this location in allParts.
+     */
+    static private void indexPart(Part part, int position)
+    {
+        partIndex.put(part.getId(), position);
+        partTrigrams.add(part.getId(), part.getName());
+    }
+
+    /**
+     * Adds product to the ID index and search index. Product must already be at this location in allProducts.
+     */
+    static private void indexProduct(Product product, int position)
+    {
+        productIndex.put(product.getId(), product, position);
+        productTrigrams.add(product.getId(), product.getName());
+    }
+
+    /**
+     * Removes part from the ID index and search index.
+     */
+    static private void unindexPart(Part part)
+    {
+        partIndex.remove(part.getId());
+        partTrigrams.remove(part.getId(), part.getName());
+    }
+
+    /**
+     * Removes product from the ID index and search index.
+     */
+    static private void unindexProduct(Product product)
+    {
+        productIndex.remove(product.getId());
+        productTrigrams.remove(product.getId(), product.getName());
+    }
+
+    /**
+     * Updates the indexed location of every part from this location to the end of allParts.
+     */
+    static private void repositionParts(int from)
+    {
+        for (int i = from; i < allParts.size(); i++)
+        {
+            partIndex.setPosition(partIdAt(i), i);
+        }
+    }
+
+    /**
+     * Reads the ID of the part at this location, without creating a part object when parts are kept in a PartStore.
+     */
+    static private int partIdAt(int position)
+    {
+        return partStore != null ? partStore.getId(position) : allParts.get(position).getId();
+    }
+
+    /**
+     * Reads the supplier code of the part at this location, NO_SUPPLIER for in-house parts.
+     */
+    static private int supplierCodeAt(int position)
+    {
+        if (partStore != null)
+        {
+            return partStore.isOutsourced(position) ? partStore.getSupplierCode(position) : SupplierDictionary.NO_SUPPLIER;
+        }
+
+        Part part = allParts.get(position);
+        return part instanceof Outsourced ? ((Outsourced) part).getSupplierCode() : SupplierDictionary.NO_SUPPLIER;
+    }
+
+    /**
+     * Updates the indexed location of every product from this location to the end of allProducts.
+     */
+    static private void repositionProducts(int from)
+    {
+        for (int i = from; i < allProducts.size(); i++)
+        {
+            productIndex.setPosition(allProducts.get(i).getId(), i);
+        }
+    }
+
+    /**
+     * Stops every other writer, used while the whole inventory is loaded, saved or recorded. Parts are locked before products.
+     */
+    static private void lockAllWriters()
+    {
+        partCore.lock(InventoryCore.ALL_STRIPES);
+        productCore.lock(InventoryCore.ALL_STRIPES);
+    }
+
+    /**
+     * Lets other writers continue after lockAllWriters().
+     */
+    static private void unlockAllWriters()
+    {
+        productCore.unlock(InventoryCore.ALL_STRIPES);
+        partCore.unlock(InventoryCore.ALL_STRIPES);
+    }
+
+    /**
+     * Removes every part before parts are loaded from a snapshot. The allocator state comes from the snapshot.
+     * Caller must hold every writer lock.
+     * @param expectedCount number of parts about to be loaded.
+     */
+    static private void clearParts(int expectedCount)
+    {
+        partStoreLock.writeLock().lock();
+        try
+        {
+            partCore.clear();
+            allParts.clear();
+            partIndex.clear();
+            partIndex.ensureCapacity(expectedCount);
+        }
+        finally
+        {
+            partStoreLock.writeLock().unlock();
+        }
+        partTrigrams.clear();
+        partWatchlist.clear();
+        partPrices.clear();
+        partStocks.clear();
+        valuation.clearParts();
+        partVersion++;
+    }
+
+    /**
+     * Replaces every product with products read from a snapshot. Caller must hold every writer lock.
+     */
+    static private void loadProducts(Product[] products)
+    {
+        int[] ids = new int[products.length];
+        String[] names = new String[products.length];
+
+        productCore.forEach(oldProduct ->
+        {
+            oldProduct.attach(false);
+            oldProduct.setMaterialCost(CostRollup.NO_COST);
+        });
+        productCore.clear();
+        whereUsed.clear();
+        explosions.clear();
+        productWatchlist.clear();
+        productPrices.clear();
+        productStocks.clear();
+        valuation.clearProducts();
+        allProducts.setAll(products);
+        productIndex.clear();
+        productIndex.ensureCapacity(products.length);
+
+        for (int i = 0; i < products.length; i++)
+        {
+            productCore.put(products[i].getId(), products[i]);
+            trackUsage(products[i]);  // Costs are worked out once every product is stored
+            productWatchlist.update(products[i].getId(), products[i]);
+            productPrices.update(products[i].getId(), products[i]);
+            productStocks.update(products[i].getId(), products[i]);
+            valuation.addProduct(products[i]);
+            productIndex.put(products[i].getId(), products[i], i);
+            ids[i] = products[i].getId();
+            names[i] = products[i].getName();
+        }
+        costs.recompute(ids);
+        productTrigrams.rebuildInBackground(ids, names);
+        productVersion++;
+    }
+
+    /**
+     * Order of a projected list, for paged lists. Positions come from the location index and IDs are read
+     * from the list by position, column stores give the ID of a row without creating its part object.
+     * Used on the JavaFX thread, like the list.
+     */
+    private static class TableOrder implements PagedList.RowOrder
+    {
+        private final List<?> list;
+        private final IntUnaryOperator idAt;  // Row position -> ID
+        private final IdIndex<?> positions;
+
+        TableOrder(List<?> list, IntUnaryOperator idAt, IdIndex<?> positions)
+        {
+            this.list = list;
+            this.idAt = idAt;
+            this.positions = positions;
+        }
+
+        @Override
+        public int size()
+        {
+            return list.size();
+        }
+
+        @Override
+        public int[] idsAt(int position, int count)
+        {
+            int end = (int) Math.min((long) position + count, list.size());
+            int[] ids = new int[Math.max(end - position, 0)];
+
+            for (int i = 0; i < ids.length; i++)
+            {
+                ids[i] = idAt.applyAsInt(position + i);
             }
+            return ids;
+        }
+
+        @Override
+        public int[] idsAfter(int id, int count)
+        {
+            int position = positions.position(id);
+            return position >= 0 ? idsAt(position + 1, count) : null;
+        }
+
+        @Override
+        public int[] idsBefore(int id, int count)
+        {
+            int position = positions.position(id);
+            return position >= 0 ? idsAt(Math.max(position - count, 0), Math.min(position, count)) : null;
+        }
+
+        @Override
+        public int positionOf(int id)
+        {
+            return positions.position(id);
         }
-        return id;
     }
 }
@@ -0,0 +1,438 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The thread safe copy of all parts or all products, keyed by ID. Each stripe keeps its IDs in its own open
+ * addressing table of primitive IDs, so lookups do not box the ID and no map entry object is kept per item.
+ * Reads go straight to the table and never take a stripe (items moved into a store are read by the store).
+ * Writers lock the stripes of the IDs they change, so writers working on
+ * different IDs run at the same time, while changes to one ID (and the journal records written for
+ * them) always happen in the same order. Stock changes only take a stripe shared, they change the
+ * stock of the item atomically and can run alongside each other, but never alongside a replacement
+ * or removal of the item.
+ * A stripe set is a long with one bit per stripe, so a batch locks every stripe it touches in one call.
+ * A core can hand its items over to a store (such as a PartStore) once the store holds them: the core then
+ * keeps only a marker for the ID, and reads return a copy made by the store, so no object is kept per item.
+ * @param <T> Part or Product.
+ */
+public class InventoryCore<T>
+{
+    private static final int STRIPE_BITS = 6;
+    public static final long ALL_STRIPES = -1L;  // Every bit set, used to stop all writers
+
+    private static final Object MOVED = new Object();  // Value of items only kept in the store
+
+    private final IntFunction<T> store;  // Copies an item out of the store, null if items are never moved
+    private final ReentrantReadWriteLock[] stripes = new ReentrantReadWriteLock[1 << STRIPE_BITS];  // Reentrant, so a thread holding every stripe can still call the single ID methods
+    private final Segment[] segments = new Segment[1 << STRIPE_BITS];  // Items of each stripe, item or MOVED
+
+    /**
+     * Constructs an empty core that keeps every item.
+     */
+    public InventoryCore()
+    {
+        this(null);
+    }
+
+    /**
+     * Constructs an empty core whose items can be moved into a store.
+     * @param store copies the item with an ID out of the store, or returns null if the store does not hold it.
+     */
+    public InventoryCore(IntFunction<T> store)
+    {
+        this.store = store;
+
+        for (int i = 0; i < stripes.length; i++)
+        {
+            stripes[i] = new ReentrantReadWriteLock();
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Finds an item without locking, safe to call from any thread.
+     * @param id numeric ID of item.
+     * @return item, a copy of it if it was moved into the store, or null if no item has this ID.
+     */
+    public T get(int id)
+    {
+        return resolve(id, segmentOf(id).get(id));
+    }
+
+    /**
+     * Finds an item that has not been moved into the store yet.
+     * @param id numeric ID of item.
+     * @return item, or null if no item has this ID or only the store holds it.
+     */
+    @SuppressWarnings("unchecked")
+    public T getHeld(int id)
+    {
+        Object item = segmentOf(id).get(id);
+        return item == MOVED ? null : (T) item;
+    }
+
+    /**
+     * @return number of items.
+     */
+    public int size()
+    {
+        int size = 0;
+
+        for (Segment segment : segments)
+        {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    /**
+     * @param id numeric ID of item.
+     * @return true if an item has this ID.
+     */
+    public boolean contains(int id)
+    {
+        return segmentOf(id).get(id) != null;
+    }
+
+    /**
+     * Runs an action on every item, in no particular order. Safe while other threads write, items
+     * added or removed meanwhile may or may not be visited.
+     * @param action receives each item.
+     */
+    public void forEach(Consumer<? super T> action)
+    {
+        for (Segment segment : segments)
+        {
+            Table table = segment.table;
+
+            for (int slot = 0; slot < table.keys.length; slot++)
+            {
+                Object item = table.items.get(slot);
+                T found = item != null && item != Table.REMOVED ? resolve(table.keys[slot], item) : null;
+
+                if (found != null)  // Null if removed from the store meanwhile
+                {
+                    action.accept(found);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds an item if its ID is not used. Caller must hold the stripe of the ID.
+     * @return true if added, false if the ID is already used.
+     */
+    public boolean add(int id, T item)
+    {
+        return segmentOf(id).put(id, item, true) == null;
+    }
+
+    /**
+     * Adds or replaces an item. Caller must hold the stripe of the ID.
+     */
+    public void put(int id, T item)
+    {
+        segmentOf(id).put(id, item, false);
+    }
+
+    /**
+     * Records an item the store already holds, without keeping an object for it. Caller must hold the stripe of the ID.
+     * @param id numeric ID of item.
+     */
+    public void putMoved(int id)
+    {
+        segmentOf(id).put(id, MOVED, false);
+    }
+
+    /**
+     * Lets go of an item once the store holds its values. Does nothing if the ID was given another item
+     * or removed since, the store then receives that change later.
+     * @param id numeric ID of item.
+     * @param item item the store was given.
+     */
+    public void release(int id, T item)
+    {
+        segmentOf(id).replace(id, item, MOVED);
+    }
+
+    /**
+     * Removes an item. Caller must hold the stripe of the ID.
+     * @return item that was removed (a copy if it was moved, read before the store removes it), or null if no item has this ID.
+     */
+    public T remove(int id)
+    {
+        return resolve(id, segmentOf(id).remove(id));
+    }
+
+    /**
+     * Removes every item. Caller must hold every stripe.
+     */
+    public void clear()
+    {
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @param id numeric ID of item.
+     * @return stripe set holding only the stripe of this ID.
+     */
+    public static long stripeOf(int id)
+    {
+        return 1L << stripeIndex(id);
+    }
+
+    /**
+     * Locks every stripe in the set for adding, replacing or removing items. Stripes are always locked
+     * in the same order so two writers can never wait on each other.
+     * @param stripeSet stripes to lock, from stripeOf() or ALL_STRIPES.
+     */
+    public void lock(long stripeSet)
+    {
+        for (int i = 0; i < stripes.length; i++)
+        {
+            if ((stripeSet & (1L << i)) != 0)
+            {
+                stripes[i].writeLock().lock();
+            }
+        }
+    }
+
+    /**
+     * Unlocks every stripe in the set.
+     * @param stripeSet stripes given to lock().
+     */
+    public void unlock(long stripeSet)
+    {
+        for (int i = stripes.length - 1; i >= 0; i--)
+        {
+            if ((stripeSet & (1L << i)) != 0)
+            {
+                stripes[i].writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Locks every stripe in the set shared, for changing the stock of an item in place, or for keeping items
+     * in place while other items refer to them. Other shared holders run at the same time, adds, replacements
+     * and removals wait. Stripes are locked in the same order as lock().
+     * @param stripeSet stripes to lock, from stripeOf().
+     */
+    public void lockShared(long stripeSet)
+    {
+        for (int i = 0; i < stripes.length; i++)
+        {
+            if ((stripeSet & (1L << i)) != 0)
+            {
+                stripes[i].readLock().lock();
+            }
+        }
+    }
+
+    /**
+     * Unlocks every stripe locked by lockShared().
+     * @param stripeSet stripes given to lockShared().
+     */
+    public void unlockShared(long stripeSet)
+    {
+        for (int i = stripes.length - 1; i >= 0; i--)
+        {
+            if ((stripeSet & (1L << i)) != 0)
+            {
+                stripes[i].readLock().unlock();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T resolve(int id, Object item)
+    {
+        return item == MOVED ? store.apply(id) : (T) item;
+    }
+
+    private Segment segmentOf(int id)
+    {
+        return segments[stripeIndex(id)];
+    }
+
+    private static int stripeIndex(int id)
+    {
+        return (id * 0x9E3779B9) >>> (32 - STRIPE_BITS);  // Spread IDs handed out in sequence over every stripe
+    }
+
+    /**
+     * The items of one stripe. Read without locking from any thread, changed while holding the segment's
+     * monitor, which is only held for the change itself and never while taking another lock. Writers
+     * normally hold the stripe too, so the monitor is only contended by release().
+     */
+    private static class Segment
+    {
+        private volatile Table table = new Table(Table.MIN_CAPACITY);  // Replaced as a whole when it grows
+        private volatile int count = 0;  // IDs with an item
+        private int usedSlots = 0;  // Slots holding an ID, including removed ones
+
+        Object get(int id)
+        {
+            Table current = table;
+
+            for (int slot = current.home(id); ; slot = (slot + 1) & current.mask)
+            {
+                Object item = current.items.get(slot);
+
+                if (item == null)  // End of the probe chain
+                {
+                    return null;
+                }
+                if (current.keys[slot] == id)  // Key was written before the item, so it is seen here
+                {
+                    return item == Table.REMOVED ? null : item;
+                }
+            }
+        }
+
+        /**
+         * @return item the ID had before, or null if it had none.
+         */
+        synchronized Object put(int id, Object item, boolean onlyIfAbsent)
+        {
+            Table current = table;
+            int slot = current.find(id);
+            Object previous = current.items.get(slot);
+
+            if (previous == null)  // New ID, claim the empty slot
+            {
+                current.keys[slot] = id;
+                usedSlots++;
+            }
+            else if (previous != Table.REMOVED)
+            {
+                if (onlyIfAbsent)
+                {
+                    return previous;
+                }
+                current.items.set(slot, item);
+                return previous;
+            }
+            current.items.set(slot, item);
+            count++;
+
+            if (usedSlots * 4 > current.keys.length * 3)  // Keep load factor, removed IDs included, at or below 0.75
+            {
+                rehash();
+            }
+            return null;
+        }
+
+        synchronized void replace(int id, Object expected, Object item)
+        {
+            Table current = table;
+            int slot = current.find(id);
+
+            if (current.items.get(slot) == expected)  // Only this object, items do not override equals()
+            {
+                current.items.set(slot, item);
+            }
+        }
+
+        synchronized Object remove(int id)
+        {
+            Table current = table;
+            int slot = current.find(id);
+            Object item = current.items.get(slot);
+
+            if (item == null || item == Table.REMOVED)
+            {
+                return null;
+            }
+            current.items.set(slot, Table.REMOVED);  // Slot keeps the ID, so probe chains through it stay intact for readers
+            count--;
+            return item;
+        }
+
+        synchronized void clear()
+        {
+            table = new Table(Table.MIN_CAPACITY);
+            count = 0;
+            usedSlots = 0;
+        }
+
+        /**
+         * Copies the items into a new table with no removed IDs, at most half full, and publishes it.
+         * Readers still probing the old table see it as it was.
+         */
+        private void rehash()
+        {
+            Table old = table;
+            int capacity = Table.MIN_CAPACITY;
+
+            while (count * 2 > capacity)
+            {
+                capacity *= 2;
+            }
+
+            Table copy = new Table(capacity);
+
+            for (int slot = 0; slot < old.keys.length; slot++)
+            {
+                Object item = old.items.get(slot);
+
+                if (item != null && item != Table.REMOVED)
+                {
+                    int newSlot = copy.find(old.keys[slot]);
+                    copy.keys[newSlot] = old.keys[slot];
+                    copy.items.set(newSlot, item);
+                }
+            }
+            table = copy;
+            usedSlots = count;
+        }
+    }
+
+    /**
+     * Open addressing table with linear probing. A slot with no item is empty and ends a probe chain,
+     * a removed ID keeps its slot with the REMOVED marker until the table is copied.
+     */
+    private static class Table
+    {
+        private static final int MIN_CAPACITY = 16;
+        private static final Object REMOVED = new Object();
+
+        private final int[] keys;
+        private final AtomicReferenceArray<Object> items;  // Volatile reads and writes, an item is written after its key
+        private final int mask;
+
+        private Table(int capacity)
+        {
+            keys = new int[capacity];
+            items = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+
+        private int home(int id)
+        {
+            int h = id * 0x9E3779B9;  // Same spread as IdIndex
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        /**
+         * Finds the slot holding the ID, or the empty slot where it would be placed.
+         */
+        private int find(int id)
+        {
+            int slot = home(id);
+
+            while (items.get(slot) != null && keys[slot] != id)
+            {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
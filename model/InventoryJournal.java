@@ -0,0 +1,703 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file recording every add, update, delete and stock change made to the inventory, so it can be
+ * rebuilt after a restart by replaying the file. Records are written by a background thread that
+ * writes everything waiting at once and shares one fsync between them (group commit).
+ * Logging a change only queues its record. Callers then pass the sequence number of their last record
+ * to awaitDurable(), once per batch and after releasing their locks, so a batch waits for one fsync.
+ * Each record carries a checksum, a record cut short by a crash is dropped during replay.
+ * The header holds an epoch, which increases each time the journal is emptied after a snapshot.
+ */
+public class InventoryJournal implements AutoCloseable
+{
+    /**
+     * How long a change may sit in memory before it is safely on disk.
+     */
+    public enum Durability
+    {
+        PER_OP,   // Each change (or batch of changes) waits until it has been fsynced, changes made at the same time share the fsync
+        BATCHED,  // Changes are fsynced together every batchMillis, callers do not wait
+        ASYNC     // Changes are handed to the operating system without fsync, fastest but can be lost on power failure
+    }
+
+    public static long batchMillis = 10;  // Longest time a BATCHED change waits before being fsynced
+
+    private static final int MAGIC = 0x494D534A;  // "IMSJ"
+    private static final int FORMAT_VERSION = 4;  // 3: associated parts are written as part ID and quantity, 4: products list components
+    private static final int HEADER_SIZE = 16;
+
+    static final byte ADD_PART = 1;
+    static final byte UPDATE_PART = 2;
+    static final byte DELETE_PART = 3;
+    static final byte ADD_PRODUCT = 4;
+    static final byte UPDATE_PRODUCT = 5;
+    static final byte DELETE_PRODUCT = 6;
+    static final byte ADJUST_PART_STOCK = 7;  // Stock changes store the amount added, so changes made at the same time replay to the same total in any order
+    static final byte ADJUST_PRODUCT_STOCK = 8;
+
+    private static final byte IN_HOUSE = 0;
+    private static final byte OUTSOURCED = 1;
+
+    private final FileChannel channel;
+    private final Durability durability;
+    private final Thread writerThread;
+
+    private final Object lock = new Object();
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);  // Encodes one record at a time
+    private final CRC32 checksum = new CRC32();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(1 << 16);  // Records waiting to be written
+    private ByteArrayOutputStream writing = new ByteArrayOutputStream(1 << 16);  // Records the writer thread is writing
+    private long appendedCount = 0;  // Number of records appended
+    private long durableCount = 0;  // Number of records written (and fsynced unless ASYNC)
+    private IOException writeFailure;
+    private boolean closed = false;
+    private long epoch;
+
+    /**
+     * Opens journal file for appending, creating it if needed. Call replay() first to restore its contents.
+     * @param file location of journal.
+     * @param durability how changes are flushed to disk.
+     * @param minEpoch epoch recorded in the loaded snapshot (0 if none), a journal from an earlier epoch is emptied.
+     * @throws IOException if file cannot be opened.
+     */
+    public InventoryJournal(Path file, Durability durability, long minEpoch) throws IOException
+    {
+        this.durability = durability;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        this.epoch = channel.size() < HEADER_SIZE ? -1 : readHeader(channel);
+
+        if (epoch < minEpoch)  // New or empty journal, or one already contained in the snapshot
+        {
+            epoch = minEpoch;
+            channel.truncate(0);
+            writeHeader(channel, epoch);
+        }
+        channel.position(channel.size());
+
+        writerThread = new Thread(this::writeLoop, "inventory-journal");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Reads every record in a journal file and hands it to the inventory. A damaged record at the end
+     * (left by a crash while writing) is cut off the file.
+     * @param file location of journal, nothing happens if it does not exist.
+     * @param minEpoch epoch recorded in the loaded snapshot (0 if none), a journal from an earlier epoch is skipped.
+     * @param target receives each change in the order it was made.
+     * @return number of records replayed.
+     * @throws IOException if file cannot be read, or is not a journal.
+     */
+    public static int replay(Path file, long minEpoch, Replay target) throws IOException
+    {
+        if (!Files.exists(file) || Files.size(file) < HEADER_SIZE)
+        {
+            return 0;
+        }
+
+        int replayed = 0;
+        long fileLength = Files.size(file);
+        long goodLength = HEADER_SIZE;  // File length up to the last complete record
+
+        try (InputStream fileStream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(fileStream, 1 << 16)))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+            {
+                throw new IOException("Not an inventory journal, or written by a different version: " + file);
+            }
+            if (in.readLong() < minEpoch)  // Snapshot was written after this journal, it already has these changes
+            {
+                return 0;
+            }
+
+            CRC32 crc = new CRC32();
+
+            while (true)
+            {
+                byte[] body;
+                try
+                {
+                    int length = in.readInt();
+                    int expectedChecksum = in.readInt();
+
+                    if (length <= 0 || length > fileLength)
+                    {
+                        break;  // Length itself is damaged
+                    }
+
+                    body = new byte[length];
+                    in.readFully(body);
+
+                    crc.reset();
+                    crc.update(body);
+                    if ((int) crc.getValue() != expectedChecksum)
+                    {
+                        break;
+                    }
+                }
+                catch (EOFException endOfFile)  // Normal end, or a record cut short
+                {
+                    break;
+                }
+
+                apply(new DataInputStream(new ByteArrayInputStream(body)), target);
+                goodLength += 8 + body.length;
+                replayed++;
+            }
+        }
+
+        if (goodLength < fileLength)
+        {
+            System.out.println("Debug Info (InventoryJournal): Dropping damaged end of journal after " + replayed + " records");
+            try (FileChannel repair = FileChannel.open(file, StandardOpenOption.WRITE))
+            {
+                repair.truncate(goodLength);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Records a new part.
+     * @param part part that was added.
+     * @return sequence number of the record, for awaitDurable().
+     */
+    public long logAddPart(Part part)
+    {
+        return append(ADD_PART, -1, part, null, 0);
+    }
+
+    /**
+     * Records a part being replaced.
+     * @param oldId ID of the part that was replaced.
+     * @param part new part object.
+     * @return sequence number of the record, for awaitDurable().
+     */
+    public long logUpdatePart(int oldId, Part part)
+    {
+        return append(UPDATE_PART, oldId, part, null, 0);
+    }
+
+    /**
+     * Records a deleted part.
+     * @param id ID of the part that was deleted.
+     * @return sequence number of the record, for awaitDurable().
+     */
+    public long logDeletePart(int id)
+    {
+        return append(DELETE_PART, id, null, null, 0);
+    }
+
+    /**
+     * Records a new product along with its associated parts.
+     * @param product product that was added.
+     * @return sequence number of the record, for awaitDurable().
+     */
+    public long logAddProduct(Product product)
+    {
+        return append(ADD_PRODUCT, -1, null, product, 0);
+    }
+
+    /**
+     * Records a product being replaced along with its associated parts.
+     * @param oldId ID of the product that was replaced.
+     * @param product new product object.
+     * @return sequence number of the record, for awaitDurable().
+     */
+    public long logUpdateProduct(int oldId, Product product)
+    {
+        return append(UPDATE_PRODUCT, oldId, null, product, 0);
+    }
+
+    /**
+     * Records a deleted product.
+     * @param id ID of the product that was deleted.
+     * @return sequence number of the record, for awaitDurable().
+     */
+    public long logDeleteProduct(int id)
+    {
+        return append(DELETE_PRODUCT, id, null, null, 0);
+    }
+
+    /**
+     * Records stock added to or taken from a part.
+     * @param id ID of the part.
+     * @param delta amount added, negative if stock was taken away.
+     * @return sequence number of the record, for awaitDurable().
+     */
+    public long logAdjustPartStock(int id, int delta)
+    {
+        return append(ADJUST_PART_STOCK, id, null, null, delta);
+    }
+
+    /**
+     * Records stock added to or taken from a product.
+     * @param id ID of the product.
+     * @param delta amount added, negative if stock was taken away.
+     * @return sequence number of the record, for awaitDurable().
+     */
+    public long logAdjustProductStock(int id, int delta)
+    {
+        return append(ADJUST_PRODUCT_STOCK, id, null, null, delta);
+    }
+
+    /**
+     * Waits until a record, and every record before it, has been fsynced if durability is PER_OP.
+     * Returns at once for other durabilities. Call once after logging a batch, without holding locks
+     * other writers need.
+     * @param sequence sequence number returned when the last record of the batch was logged, 0 if none was.
+     */
+    public void awaitDurable(long sequence)
+    {
+        if (durability != Durability.PER_OP || sequence <= 0)
+        {
+            return;
+        }
+
+        synchronized (lock)
+        {
+            try
+            {
+                waitFor(sequence);
+            }
+            catch (IOException failed)
+            {
+                System.out.println("Debug Info (InventoryJournal): Failed to write change to disk: " + failed.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits until every record appended so far has been written (and fsynced unless ASYNC).
+     * @throws IOException if writing failed.
+     */
+    public void flush() throws IOException
+    {
+        synchronized (lock)
+        {
+            waitFor(appendedCount);
+        }
+    }
+
+    /**
+     * Discards every record and starts a new epoch. Used once the inventory has been saved in a snapshot.
+     * @param newEpoch epoch recorded in the snapshot.
+     * @throws IOException if file cannot be truncated.
+     */
+    public void truncate(long newEpoch) throws IOException
+    {
+        synchronized (lock)
+        {
+            waitFor(appendedCount);
+            channel.truncate(0);
+            writeHeader(channel, newEpoch);
+            epoch = newEpoch;
+        }
+    }
+
+    /**
+     * @return epoch of the records currently in the journal.
+     */
+    public long getEpoch()
+    {
+        synchronized (lock)
+        {
+            return epoch;
+        }
+    }
+
+    /**
+     * Writes all waiting records with a final fsync, then closes the file.
+     * @throws IOException if writing failed.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (lock)
+        {
+            if (closed)
+            {
+                return;
+            }
+            waitFor(appendedCount);
+            closed = true;
+            lock.notifyAll();
+        }
+
+        try
+        {
+            writerThread.join();
+        }
+        catch (InterruptedException interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        channel.force(true);  // ASYNC records are made durable on a clean shutdown
+        channel.close();
+    }
+
+    /**
+     * Encodes one record and queues it for the writer thread.
+     * @return sequence number of the record, 0 if it was not recorded.
+     */
+    private long append(byte operation, int oldId, Part part, Product product, int delta)
+    {
+        synchronized (lock)
+        {
+            if (closed)
+            {
+                System.out.println("Debug Info (InventoryJournal): Change made after journal was closed, not recorded");
+                return 0;
+            }
+
+            try
+            {
+                recordBytes.reset();
+                record.writeByte(operation);
+                if (operation != ADD_PART && operation != ADD_PRODUCT)  // Updates and deletes refer to an existing ID
+                {
+                    record.writeInt(oldId);
+                }
+                if (part != null)
+                {
+                    writePart(record, part);
+                }
+                if (product != null)
+                {
+                    writeProduct(record, product);
+                }
+                if (operation == ADJUST_PART_STOCK || operation == ADJUST_PRODUCT_STOCK)
+                {
+                    record.writeInt(delta);
+                }
+
+                checksum.reset();
+                checksum.update(recordBytes.toByteArray(), 0, recordBytes.size());
+
+                DataOutputStream out = new DataOutputStream(pending);
+                out.writeInt(recordBytes.size());
+                out.writeInt((int) checksum.getValue());
+                recordBytes.writeTo(pending);
+            }
+            catch (IOException cannotHappen)  // Writing to memory does not fail
+            {
+                throw new IllegalStateException(cannotHappen);
+            }
+
+            lock.notifyAll();  // Wake writer thread
+            return ++appendedCount;
+        }
+    }
+
+    /**
+     * Waits (holding lock) until the record with this sequence number is durable.
+     */
+    private void waitFor(long sequence) throws IOException
+    {
+        while (durableCount < sequence && writeFailure == null && !closed)
+        {
+            try
+            {
+                lock.wait();
+            }
+            catch (InterruptedException interrupted)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (writeFailure != null)
+        {
+            throw writeFailure;
+        }
+    }
+
+    /**
+     * Body of writer thread. Takes every record appended so far, writes them with one call, and fsyncs once.
+     */
+    private void writeLoop()
+    {
+        while (true)
+        {
+            long batchEnd;
+
+            synchronized (lock)
+            {
+                while (pending.size() == 0 && !closed)
+                {
+                    try
+                    {
+                        lock.wait();
+                    }
+                    catch (InterruptedException interrupted)
+                    {
+                        return;
+                    }
+                }
+                if (pending.size() == 0)  // Closed and nothing left to write
+                {
+                    return;
+                }
+            }
+
+            if (durability == Durability.BATCHED)  // Let more changes arrive so they share the fsync
+            {
+                try
+                {
+                    Thread.sleep(batchMillis);
+                }
+                catch (InterruptedException interrupted)
+                {
+                    return;
+                }
+            }
+
+            synchronized (lock)  // Swap buffers so appends can continue while this batch is written
+            {
+                ByteArrayOutputStream batch = pending;
+                pending = writing;
+                writing = batch;
+                batchEnd = appendedCount;
+            }
+
+            try
+            {
+                ByteBuffer buffer = ByteBuffer.wrap(writing.toByteArray());
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+                if (durability != Durability.ASYNC)
+                {
+                    channel.force(false);
+                }
+                writing.reset();
+
+                synchronized (lock)
+                {
+                    durableCount = batchEnd;
+                    lock.notifyAll();  // Release PER_OP callers waiting on this batch
+                }
+            }
+            catch (IOException failed)
+            {
+                synchronized (lock)
+                {
+                    writeFailure = failed;
+                    lock.notifyAll();
+                }
+                System.out.println("Debug Info (InventoryJournal): Journal write failed: " + failed.getMessage());
+                return;
+            }
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, long epoch) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(epoch).flip();
+        channel.position(0);
+        while (header.hasRemaining())
+        {
+            channel.write(header);
+        }
+        channel.force(true);
+    }
+
+    /**
+     * @return epoch stored in the header.
+     */
+    private static long readHeader(FileChannel channel) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining())
+        {
+            if (channel.read(header, header.position()) < 0)
+            {
+                break;
+            }
+        }
+        header.flip();
+
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION)
+        {
+            throw new IOException("Not an inventory journal, or written by a different version");
+        }
+        return header.getLong();
+    }
+
+    private static void writePart(DataOutputStream out, Part part) throws IOException
+    {
+        out.writeByte(part instanceof Outsourced ? OUTSOURCED : IN_HOUSE);
+        out.writeInt(part.getId());
+        writeString(out, part.getName());
+        out.writeDouble(part.getPrice());
+        out.writeInt(part.getStock());
+        out.writeInt(part.getMin());
+        out.writeInt(part.getMax());
+
+        if (part instanceof Outsourced)
+        {
+            writeString(out, ((Outsourced) part).getCompanyName());
+        }
+        else
+        {
+            out.writeInt(((InHouse) part).getMachineID());
+        }
+    }
+
+    private static void writeProduct(DataOutputStream out, Product product) throws IOException
+    {
+        out.writeInt(product.getId());
+        writeString(out, product.getName());
+        out.writeDouble(product.getPrice());
+        out.writeInt(product.getStock());
+        out.writeInt(product.getMin());
+        out.writeInt(product.getMax());
+
+        BillOfMaterials associatedParts = product.billOfMaterials();
+        out.writeInt(associatedParts.size());
+        for (int i = 0; i < associatedParts.size(); i++)  // Parts are stored by ID and looked up again on replay
+        {
+            out.writeInt(associatedParts.partIdAt(i));
+            out.writeInt(associatedParts.quantityAt(i));
+        }
+
+        BillOfMaterials components = product.componentBill();
+        out.writeInt(components.size());
+        for (int i = 0; i < components.size(); i++)  // Components are stored by ID only, they need not exist yet on replay
+        {
+            out.writeInt(components.partIdAt(i));
+            out.writeInt(components.quantityAt(i));
+        }
+    }
+
+    private static Part readPart(DataInputStream in) throws IOException
+    {
+        byte kind = in.readByte();
+        int id = in.readInt();
+        String name = readString(in);
+        double price = in.readDouble();
+        int stock = in.readInt();
+        int min = in.readInt();
+        int max = in.readInt();
+
+        if (kind == OUTSOURCED)
+        {
+            return new Outsourced(id, name, price, stock, min, max, readString(in));
+        }
+        return new InHouse(id, name, price, stock, min, max, in.readInt());
+    }
+
+    private static Product readProduct(DataInputStream in, Replay target) throws IOException
+    {
+        Product product = new Product(in.readInt(), readString(in), in.readDouble(), in.readInt(), in.readInt(), in.readInt());
+        int partCount = in.readInt();
+        List<Integer> missingParts = new ArrayList<>();
+
+        for (int i = 0; i < partCount; i++)
+        {
+            int partId = in.readInt();
+            int quantity = in.readInt();
+            Part associatedPart = target.findPart(partId);
+
+            if (associatedPart != null)
+            {
+                product.addAssociatedPart(associatedPart, quantity);
+            }
+            else
+            {
+                missingParts.add(partId);
+            }
+        }
+
+        if (!missingParts.isEmpty())
+        {
+            System.out.println("Debug Info (InventoryJournal): Product " + product.getId() + " refers to missing parts " + missingParts);
+        }
+
+        int componentCount = in.readInt();
+        for (int i = 0; i < componentCount; i++)
+        {
+            product.setComponentQuantity(in.readInt(), in.readInt());
+        }
+        return product;
+    }
+
+    private static void apply(DataInputStream in, Replay target) throws IOException
+    {
+        byte operation = in.readByte();
+
+        switch (operation)
+        {
+            case ADD_PART -> target.addPart(readPart(in));
+            case UPDATE_PART -> target.updatePart(in.readInt(), readPart(in));
+            case DELETE_PART -> target.deletePart(in.readInt());
+            case ADD_PRODUCT -> target.addProduct(readProduct(in, target));
+            case UPDATE_PRODUCT -> target.updateProduct(in.readInt(), readProduct(in, target));
+            case DELETE_PRODUCT -> target.deleteProduct(in.readInt());
+            case ADJUST_PART_STOCK -> target.adjustPartStock(in.readInt(), in.readInt());
+            case ADJUST_PRODUCT_STOCK -> target.adjustProductStock(in.readInt(), in.readInt());
+            default -> throw new IOException("Unknown journal record type " + operation);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException
+    {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Receives the changes read back from a journal.
+     */
+    public interface Replay
+    {
+        Part findPart(int id);
+
+        void addPart(Part part);
+
+        void updatePart(int oldId, Part part);
+
+        void deletePart(int id);
+
+        void addProduct(Product product);
+
+        void updateProduct(int oldId, Product product);
+
+        void deleteProduct(int id);
+
+        void adjustPartStock(int id, int delta);  // Applied without checking min and max, the change was checked when it was made
+
+        void adjustProductStock(int id, int delta);
+    }
+}
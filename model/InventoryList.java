@@ -0,0 +1,158 @@
+package model;
+
+import javafx.collections.ModifiableObservableListBase;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * An observable list used to store all parts or all products. Changes made between beginBatch()
+ * and endBatch() reach listeners (such as a TableView) as a single change event, and many rows can
+ * be removed in one pass instead of shifting the list once per row.
+ * @param <T> Part or Product.
+ */
+public class InventoryList<T> extends ModifiableObservableListBase<T>
+{
+    private Object[] elements = new Object[16];
+    private int size = 0;
+
+    /**
+     * Starts a batch. Changes are collected until the matching endBatch() call and then sent as one event.
+     * Batches can be nested.
+     */
+    public void beginBatch()
+    {
+        beginChange();
+    }
+
+    /**
+     * Ends a batch started by beginBatch().
+     */
+    public void endBatch()
+    {
+        endChange();
+    }
+
+    /**
+     * Removes the objects at several locations with a single pass over the list, sending one change event.
+     * @param positions locations to remove, sorted from lowest to highest with no repeats.
+     * @param count number of locations in the array to use.
+     */
+    public void removePositions(int[] positions, int count)
+    {
+        if (count == 0)
+        {
+            return;
+        }
+
+        beginChange();
+        try
+        {
+            int write = positions[0];
+            int next = 0;  // Next entry of positions to remove
+
+            for (int read = positions[0]; read < size; read++)
+            {
+                if (next < count && read == positions[next])
+                {
+                    nextRemove(read - next, get(read));  // Location once earlier removals have closed up the list
+                    next++;
+                }
+                else
+                {
+                    elements[write++] = elements[read];
+                }
+            }
+
+            Arrays.fill(elements, write, size, null);  // Let removed objects be garbage collected
+            size = write;
+            modCount++;
+        }
+        finally
+        {
+            endChange();
+        }
+    }
+
+    /**
+     * Tells listeners that the object at this location changed without being replaced, so tables redraw the row.
+     * @param index location of changed object.
+     */
+    public void refresh(int index)
+    {
+        Objects.checkIndex(index, size());
+
+        beginChange();
+        try
+        {
+            nextUpdate(index);
+        }
+        finally
+        {
+            endChange();
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c)
+    {
+        ensureCapacity(size() + c.size());  // Grow once instead of while adding
+        return super.addAll(c);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index)
+    {
+        Objects.checkIndex(index, size);
+        return (T) elements[index];
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    protected void doAdd(int index, T element)
+    {
+        Objects.checkIndex(index, size + 1);
+        ensureCapacity(size + 1);
+
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = element;
+        size++;
+    }
+
+    @Override
+    protected T doSet(int index, T element)
+    {
+        T oldElement = get(index);
+        elements[index] = element;
+        return oldElement;
+    }
+
+    @Override
+    protected T doRemove(int index)
+    {
+        T oldElement = get(index);
+
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        elements[--size] = null;
+        return oldElement;
+    }
+
+    /**
+     * Grows storage so this many objects fit.
+     * @param capacity number of objects.
+     */
+    protected void ensureCapacity(int capacity)
+    {
+        if (capacity > elements.length)
+        {
+            elements = Arrays.copyOf(elements, Math.max(capacity, elements.length * 2));
+        }
+    }
+}
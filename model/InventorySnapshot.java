@@ -0,0 +1,465 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact binary copy of the whole inventory, used to start quickly without replaying a long journal.
+ * The file is written front to back in one pass, then renamed over the old snapshot so a crash never
+ * leaves a half written snapshot behind. It is read back through a memory-mapped file.
+ * Each snapshot records the journal epoch that follows it, journals from earlier epochs are already
+ * contained in the snapshot and are not replayed.
+ */
+public class InventorySnapshot
+{
+    private static final int MAGIC = 0x494D5353;  // "IMSS"
+    private static final int FORMAT_VERSION = 4;  // 2: company names are written once in a supplier table, 3: associated parts have quantities, 4: products list components
+
+    private static final byte IN_HOUSE = 0;
+    private static final byte OUTSOURCED = 1;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final int READ_BATCH_SIZE = 1 << 16;  // Parts handed to the inventory at a time, limits how many part objects exist at once
+    private static final long MAP_WINDOW_SIZE = 1L << 28;  // A mapping is limited to 2GB, larger files are read in windows
+
+    /**
+     * Writes every part and product, along with ID allocator state, to a snapshot file.
+     * @param file location of snapshot, replaced if it exists.
+     * @param journalEpoch epoch of the journal that will record changes made after this snapshot.
+     * @param parts all parts, in table order.
+     * @param products all products, in table order.
+     * @param partIds allocator generating part IDs.
+     * @param productIds allocator generating product IDs.
+     * @throws IOException if file cannot be written.
+     */
+    public static void write(Path file, long journalEpoch, List<? extends Part> parts, List<? extends Product> products,
+                             IdAllocator partIds, IdAllocator productIds) throws IOException
+    {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            SequentialWriter out = new SequentialWriter(channel);
+
+            out.putInt(MAGIC);
+            out.putInt(FORMAT_VERSION);
+            out.putLong(journalEpoch);
+            out.putInt(parts.size());
+            out.putInt(products.size());
+            out.putBytes(allocatorState(partIds));
+            out.putBytes(allocatorState(productIds));
+
+            int supplierCount = SupplierDictionary.size();  // Parts refer to suppliers by their code in this table
+            out.putInt(supplierCount);
+            for (int code = 0; code < supplierCount; code++)
+            {
+                out.putString(SupplierDictionary.nameOf(code));
+            }
+
+            if (parts instanceof PartStore)  // Read values straight from the store, without creating part objects
+            {
+                PartStore store = (PartStore) parts;
+
+                for (int row = 0; row < store.size(); row++)
+                {
+                    boolean outsourced = store.isOutsourced(row);
+
+                    out.putByte(outsourced ? OUTSOURCED : IN_HOUSE);
+                    out.putInt(store.getId(row));
+                    out.putString(store.getName(row));
+                    out.putDouble(store.getPrice(row));
+                    out.putInt(store.getStock(row));
+                    out.putInt(store.getMin(row));
+                    out.putInt(store.getMax(row));
+
+                    if (outsourced)
+                    {
+                        out.putInt(store.getSupplierCode(row));
+                    }
+                    else
+                    {
+                        out.putInt(store.getMachineID(row));
+                    }
+                }
+            }
+            else
+            {
+                for (Part part : parts)
+                {
+                    out.putByte(part instanceof Outsourced ? OUTSOURCED : IN_HOUSE);
+                    out.putInt(part.getId());
+                    out.putString(part.getName());
+                    out.putDouble(part.getPrice());
+                    out.putInt(part.getStock());
+                    out.putInt(part.getMin());
+                    out.putInt(part.getMax());
+
+                    if (part instanceof Outsourced)
+                    {
+                        out.putInt(((Outsourced) part).getSupplierCode());
+                    }
+                    else
+                    {
+                        out.putInt(((InHouse) part).getMachineID());
+                    }
+                }
+            }
+
+            for (Product product : products)
+            {
+                BillOfMaterials associatedParts = product.billOfMaterials();
+
+                out.putInt(product.getId());
+                out.putString(product.getName());
+                out.putDouble(product.getPrice());
+                out.putInt(product.getStock());
+                out.putInt(product.getMin());
+                out.putInt(product.getMax());
+                out.putInt(associatedParts.size());
+
+                for (int j = 0; j < associatedParts.size(); j++)
+                {
+                    out.putInt(associatedParts.partIdAt(j));
+                    out.putInt(associatedParts.quantityAt(j));
+                }
+
+                BillOfMaterials components = product.componentBill();
+                out.putInt(components.size());
+
+                for (int j = 0; j < components.size(); j++)
+                {
+                    out.putInt(components.partIdAt(j));
+                    out.putInt(components.quantityAt(j));
+                }
+            }
+
+            out.putInt(MAGIC);  // End marker, shows the file was not cut short
+            out.flush();
+            channel.force(true);
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot file and hands its contents to the inventory.
+     * @param file location of snapshot.
+     * @param partIds allocator whose state is replaced with the saved part allocator state.
+     * @param productIds allocator whose state is replaced with the saved product allocator state.
+     * @param target receives the parts in batches, then the products.
+     * @return journal epoch recorded in the snapshot, or -1 if there is no snapshot file.
+     * @throws IOException if file cannot be read, is damaged, or is not a snapshot.
+     */
+    public static long read(Path file, IdAllocator partIds, IdAllocator productIds, Target target) throws IOException
+    {
+        if (!Files.exists(file))
+        {
+            return -1;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            MappedReader in = new MappedReader(channel);
+
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION)
+            {
+                throw new IOException("Not an inventory snapshot, or written by a different version: " + file);
+            }
+
+            long journalEpoch = in.getLong();
+            int partCount = in.getInt();
+            Product[] products = new Product[in.getInt()];
+            Part[] batch = new Part[Math.min(partCount, READ_BATCH_SIZE)];
+            int batchSize = 0;
+
+            partIds.readFrom(new DataInputStream(new ByteArrayInputStream(in.getBytes())));
+            productIds.readFrom(new DataInputStream(new ByteArrayInputStream(in.getBytes())));
+
+            int[] supplierCodes = new int[in.getInt()];  // Code in file to code in this run
+            for (int code = 0; code < supplierCodes.length; code++)
+            {
+                supplierCodes[code] = SupplierDictionary.codeOf(in.getString());
+            }
+
+            for (int i = 0; i < partCount; i++)
+            {
+                byte kind = in.getByte();
+                int id = in.getInt();
+                String name = in.getString();
+                double price = in.getDouble();
+                int stock = in.getInt();
+                int min = in.getInt();
+                int max = in.getInt();
+
+                if (kind == OUTSOURCED)
+                {
+                    int supplierCode = in.getInt();
+                    String companyName = supplierCode == SupplierDictionary.NO_SUPPLIER ? null
+                            : SupplierDictionary.nameOf(supplierCodes[supplierCode]);
+                    batch[batchSize++] = new Outsourced(id, name, price, stock, min, max, companyName);
+                }
+                else
+                {
+                    batch[batchSize++] = new InHouse(id, name, price, stock, min, max, in.getInt());
+                }
+
+                if (batchSize == batch.length || i == partCount - 1)  // Parts are indexed before products look up their associated parts
+                {
+                    target.loadParts(batch, batchSize, partCount);
+                    batchSize = 0;
+                }
+            }
+
+            List<Integer> missingParts = new ArrayList<>();
+
+            for (int i = 0; i < products.length; i++)
+            {
+                Product product = new Product(in.getInt(), in.getString(), in.getDouble(), in.getInt(), in.getInt(), in.getInt());
+                int associatedCount = in.getInt();
+
+                for (int j = 0; j < associatedCount; j++)
+                {
+                    int partId = in.getInt();
+                    int quantity = in.getInt();
+                    Part associatedPart = target.findPart(partId);
+
+                    if (associatedPart != null)
+                    {
+                        product.addAssociatedPart(associatedPart, quantity);
+                    }
+                    else
+                    {
+                        missingParts.add(partId);
+                    }
+                }
+
+                int componentCount = in.getInt();
+
+                for (int j = 0; j < componentCount; j++)  // Components are all in this snapshot, possibly further on
+                {
+                    product.setComponentQuantity(in.getInt(), in.getInt());
+                }
+                products[i] = product;
+            }
+
+            if (in.getInt() != MAGIC)
+            {
+                throw new IOException("Inventory snapshot is damaged: " + file);
+            }
+            if (!missingParts.isEmpty())
+            {
+                System.out.println("Debug Info (InventorySnapshot): Products refer to missing parts " + missingParts);
+            }
+
+            target.loadProducts(products);
+            return journalEpoch;
+        }
+        catch (IndexOutOfBoundsException | NegativeArraySizeException damaged)  // A count or length ran past the end of the file
+        {
+            throw new IOException("Inventory snapshot is damaged: " + file, damaged);
+        }
+    }
+
+    private static byte[] allocatorState(IdAllocator allocator) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        allocator.writeTo(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Receives the contents of a snapshot as it is read.
+     */
+    public interface Target
+    {
+        void loadParts(Part[] batch, int count, int total);  // Called once per batch, batches arrive in table order
+
+        Part findPart(int id);
+
+        void loadProducts(Product[] products);
+    }
+
+    /**
+     * Collects values in a large buffer and writes them to the file whenever it fills up.
+     */
+    private static class SequentialWriter
+    {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+        private SequentialWriter(FileChannel channel)
+        {
+            this.channel = channel;
+        }
+
+        private void putByte(byte value) throws IOException
+        {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        private void putInt(int value) throws IOException
+        {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        private void putLong(long value) throws IOException
+        {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        private void putDouble(double value) throws IOException
+        {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        private void putString(String text) throws IOException
+        {
+            putBytes(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void putBytes(byte[] bytes) throws IOException
+        {
+            putInt(bytes.length);
+
+            int written = 0;
+            while (written < bytes.length)  // Text longer than the buffer is written in pieces
+            {
+                ensure(1);
+                int piece = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, piece);
+                written += piece;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException
+        {
+            if (buffer.remaining() < bytes)
+            {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads values from a memory-mapped window of the file, moving the window forward when a value
+     * would run past its end.
+     */
+    private static class MappedReader
+    {
+        private final FileChannel channel;
+        private final long fileSize;
+        private MappedByteBuffer window;
+        private long windowStart = 0;  // File position of the first byte of window
+        private byte[] text = new byte[64];  // Reused for decoding strings
+
+        private MappedReader(FileChannel channel) throws IOException
+        {
+            this.channel = channel;
+            this.fileSize = channel.size();
+            map(0);
+        }
+
+        private byte getByte() throws IOException
+        {
+            ensure(1);
+            return window.get();
+        }
+
+        private int getInt() throws IOException
+        {
+            ensure(4);
+            return window.getInt();
+        }
+
+        private long getLong() throws IOException
+        {
+            ensure(8);
+            return window.getLong();
+        }
+
+        private double getDouble() throws IOException
+        {
+            ensure(8);
+            return window.getDouble();
+        }
+
+        private String getString() throws IOException
+        {
+            int length = getInt();
+
+            if (length > text.length)
+            {
+                text = new byte[Math.max(length, text.length * 2)];
+            }
+            read(text, length);
+            return new String(text, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private byte[] getBytes() throws IOException
+        {
+            byte[] bytes = new byte[getInt()];
+            read(bytes, bytes.length);
+            return bytes;
+        }
+
+        private void read(byte[] destination, int length) throws IOException
+        {
+            int done = 0;
+            while (done < length)
+            {
+                ensure(1);
+                int piece = Math.min(window.remaining(), length - done);
+                window.get(destination, done, piece);
+                done += piece;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException
+        {
+            if (window.remaining() < bytes)
+            {
+                long position = windowStart + window.position();
+
+                if (fileSize - position < bytes)
+                {
+                    throw new IndexOutOfBoundsException("Read past end of snapshot");
+                }
+                map(position);
+            }
+        }
+
+        private void map(long position) throws IOException
+        {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW_SIZE, fileSize - position));
+        }
+    }
+}
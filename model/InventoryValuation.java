@@ -0,0 +1,344 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Running totals of the inventory: value on hand (price times stock), units on hand, and the number of
+ * in-house and outsourced parts. Inventory updates them on every add, update, delete and stock change,
+ * so reading them never visits a part or product. Values are added with compensated (Neumaier)
+ * summation, so millions of adds and removes do not drift away from a fresh sum. Thread safe.
+ */
+public class InventoryValuation
+{
+    private final Holdings parts = new Holdings();  // Price and stock of each part as last counted
+    private final Holdings products = new Holdings();
+    private final CompensatedSum partValue = new CompensatedSum();
+    private final CompensatedSum productValue = new CompensatedSum();
+    private long partUnits = 0;
+    private long productUnits = 0;
+    private int inHouseCount = 0;
+    private int outsourcedCount = 0;
+
+    /**
+     * Adds a part entering the inventory. The price and stock it has now are kept, so removing it later
+     * takes away exactly what was added even if the object was changed in place.
+     * @param part part being added.
+     */
+    public synchronized void addPart(Part part)
+    {
+        double price = part.getPrice();  // Read once, the same values are added and later taken away
+        long stock = part.getStock();
+        boolean inHouse = part instanceof InHouse;
+
+        removePart(part.getId());  // Added twice means replaced
+        parts.add(part.getId(), price, stock, inHouse);
+        partValue.add(price * stock);
+        partUnits += stock;
+
+        if (inHouse)
+        {
+            inHouseCount++;
+        }
+        else
+        {
+            outsourcedCount++;
+        }
+    }
+
+    /**
+     * Takes away a part leaving the inventory. Does nothing if it was not added.
+     * @param partId numeric ID of part.
+     */
+    public synchronized void removePart(int partId)
+    {
+        int slot = parts.slotOf(partId);
+
+        if (slot < 0)
+        {
+            return;
+        }
+        partValue.add(-parts.prices[slot] * parts.stocks[slot]);
+        partUnits -= parts.stocks[slot];
+
+        if (parts.inHouse[slot])
+        {
+            inHouseCount--;
+        }
+        else
+        {
+            outsourcedCount--;
+        }
+        parts.remove(partId, slot);
+
+        if (parts.size() == 0)  // Nothing left, so the total is exactly 0 whatever rounding was left over
+        {
+            partValue.clear();
+        }
+    }
+
+    /**
+     * Records a change to the stock of a part in the inventory. Does nothing if it was not added.
+     * @param partId numeric ID of part.
+     * @param delta amount added, negative if stock was taken away.
+     */
+    public synchronized void partStockChanged(int partId, int delta)
+    {
+        int slot = parts.slotOf(partId);
+
+        if (slot >= 0)
+        {
+            parts.stocks[slot] += delta;
+            partValue.add(parts.prices[slot] * delta);
+            partUnits += delta;
+        }
+    }
+
+    /**
+     * Adds a product entering the inventory, keeping the price and stock it has now.
+     * @param product product being added.
+     */
+    public synchronized void addProduct(Product product)
+    {
+        double price = product.getPrice();
+        long stock = product.getStock();
+
+        removeProduct(product.getId());
+        products.add(product.getId(), price, stock, false);
+        productValue.add(price * stock);
+        productUnits += stock;
+    }
+
+    /**
+     * Takes away a product leaving the inventory. Does nothing if it was not added.
+     * @param productId numeric ID of product.
+     */
+    public synchronized void removeProduct(int productId)
+    {
+        int slot = products.slotOf(productId);
+
+        if (slot < 0)
+        {
+            return;
+        }
+        productValue.add(-products.prices[slot] * products.stocks[slot]);
+        productUnits -= products.stocks[slot];
+        products.remove(productId, slot);
+
+        if (products.size() == 0)
+        {
+            productValue.clear();
+        }
+    }
+
+    /**
+     * Records a change to the stock of a product in the inventory. Does nothing if it was not added.
+     * @param productId numeric ID of product.
+     * @param delta amount added, negative if stock was taken away.
+     */
+    public synchronized void productStockChanged(int productId, int delta)
+    {
+        int slot = products.slotOf(productId);
+
+        if (slot >= 0)
+        {
+            products.stocks[slot] += delta;
+            productValue.add(products.prices[slot] * delta);
+            productUnits += delta;
+        }
+    }
+
+    /**
+     * Forgets every part, before parts are loaded again.
+     */
+    public synchronized void clearParts()
+    {
+        parts.clear();
+        partValue.clear();
+        partUnits = 0;
+        inHouseCount = 0;
+        outsourcedCount = 0;
+    }
+
+    /**
+     * Forgets every product, before products are loaded again.
+     */
+    public synchronized void clearProducts()
+    {
+        products.clear();
+        productValue.clear();
+        productUnits = 0;
+    }
+
+    /**
+     * @return value of every part and product on hand.
+     */
+    public synchronized double getTotalValue()
+    {
+        return partValue.sum() + productValue.sum();
+    }
+
+    /**
+     * @return value of the parts on hand.
+     */
+    public synchronized double getPartValue()
+    {
+        return partValue.sum();
+    }
+
+    /**
+     * @return value of the products on hand.
+     */
+    public synchronized double getProductValue()
+    {
+        return productValue.sum();
+    }
+
+    /**
+     * @return units of every part and product on hand.
+     */
+    public synchronized long getTotalUnits()
+    {
+        return partUnits + productUnits;
+    }
+
+    /**
+     * @return units of parts on hand.
+     */
+    public synchronized long getPartUnits()
+    {
+        return partUnits;
+    }
+
+    /**
+     * @return units of products on hand.
+     */
+    public synchronized long getProductUnits()
+    {
+        return productUnits;
+    }
+
+    /**
+     * @return number of in-house parts.
+     */
+    public synchronized int getInHouseCount()
+    {
+        return inHouseCount;
+    }
+
+    /**
+     * @return number of outsourced parts.
+     */
+    public synchronized int getOutsourcedCount()
+    {
+        return outsourcedCount;
+    }
+
+    /**
+     * Price and stock of every part or product, as counted in the totals. Kept in primitive arrays addressed
+     * by a slot, the way RangeIndex keeps its keys, so no object is kept per part or product.
+     */
+    private static class Holdings
+    {
+        private final IdIndex<Object> slots = new IdIndex<>();  // ID -> slot in the arrays below
+        private double[] prices = new double[16];
+        private long[] stocks = new long[16];
+        private boolean[] inHouse = new boolean[16];
+        private int[] freeSlots = new int[16];  // Slots of removed IDs, reused first
+        private int freeCount = 0;
+        private int slotCount = 0;  // Slots handed out so far
+
+        /**
+         * @return slot of the ID, or -1 if it is not counted.
+         */
+        int slotOf(int id)
+        {
+            return slots.position(id);
+        }
+
+        void add(int id, double price, long stock, boolean isInHouse)
+        {
+            int slot;
+
+            if (freeCount > 0)
+            {
+                slot = freeSlots[--freeCount];
+            }
+            else
+            {
+                if (slotCount == prices.length)
+                {
+                    prices = Arrays.copyOf(prices, slotCount * 2);
+                    stocks = Arrays.copyOf(stocks, slotCount * 2);
+                    inHouse = Arrays.copyOf(inHouse, slotCount * 2);
+                }
+                slot = slotCount++;
+            }
+            slots.put(id, slot);
+            prices[slot] = price;
+            stocks[slot] = stock;
+            inHouse[slot] = isInHouse;
+        }
+
+        void remove(int id, int slot)
+        {
+            slots.remove(id);
+
+            if (freeCount == freeSlots.length)
+            {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        }
+
+        int size()
+        {
+            return slots.size();
+        }
+
+        void clear()
+        {
+            slots.clear();
+            prices = new double[16];
+            stocks = new long[16];
+            inHouse = new boolean[16];
+            freeSlots = new int[16];
+            freeCount = 0;
+            slotCount = 0;
+        }
+    }
+
+    /**
+     * A sum that keeps the low-order bits lost by each addition and adds them back when read.
+     */
+    private static class CompensatedSum
+    {
+        private double sum = 0;
+        private double compensation = 0;  // Total of what rounding took away from sum
+
+        void add(double value)
+        {
+            double total = sum + value;
+
+            if (Math.abs(sum) >= Math.abs(value))
+            {
+                compensation += (sum - total) + value;
+            }
+            else
+            {
+                compensation += (value - total) + sum;
+            }
+            sum = total;
+        }
+
+        double sum()
+        {
+            return sum + compensation;
+        }
+
+        void clear()
+        {
+            sum = 0;
+            compensation = 0;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A list of all parts stored outside the Java heap, so very large catalogs do not slow down garbage
+ * collection. Each part is a fixed width record in direct memory, names are kept in a separate string
+ * area (arena) that records point into, company names are stored as SupplierDictionary codes. Records and strings are allocated in chunks,
+ * so the store grows without copying what is already stored.
+ * Used in place of the object list when the application is started with -Dinventory.partStorage=offheap.
+ */
+public class OffHeapPartStore extends PartStore
+{
+    // Layout of a record, in bytes from its start
+    private static final int ID = 0;
+    private static final int STOCK = 4;
+    private static final int MIN = 8;
+    private static final int MAX = 12;
+    private static final int PRICE = 16;
+    private static final int NAME = 24;  // Arena reference of name
+    private static final int SOURCE = 32;  // Machine ID of in-house parts, supplier code of outsourced parts
+    private static final int KIND = 40;
+    private static final int RECORD_SIZE = 48;
+
+    private static final byte IN_HOUSE = 0;
+    private static final byte OUTSOURCED = 1;
+
+    private static final int CHUNK_SHIFT = 16;
+    private static final int RECORDS_PER_CHUNK = 1 << CHUNK_SHIFT;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int size = 0;
+    private StringArena strings = new StringArena();
+
+    @Override
+    public int getId(int row)
+    {
+        return chunk(row).getInt(offset(row) + ID);
+    }
+
+    @Override
+    public String getName(int row)
+    {
+        return strings.get(chunk(row).getLong(offset(row) + NAME));
+    }
+
+    @Override
+    public double getPrice(int row)
+    {
+        return chunk(row).getDouble(offset(row) + PRICE);
+    }
+
+    @Override
+    public int getStock(int row)
+    {
+        return chunk(row).getInt(offset(row) + STOCK);
+    }
+
+    @Override
+    public int getMin(int row)
+    {
+        return chunk(row).getInt(offset(row) + MIN);
+    }
+
+    @Override
+    public int getMax(int row)
+    {
+        return chunk(row).getInt(offset(row) + MAX);
+    }
+
+    @Override
+    public boolean isOutsourced(int row)
+    {
+        return chunk(row).get(offset(row) + KIND) == OUTSOURCED;
+    }
+
+    @Override
+    public int getMachineID(int row)
+    {
+        return (int) chunk(row).getLong(offset(row) + SOURCE);
+    }
+
+    @Override
+    public int getSupplierCode(int row)
+    {
+        return (int) chunk(row).getLong(offset(row) + SOURCE);
+    }
+
+    @Override
+    void setId(int row, int id)
+    {
+        chunk(row).putInt(offset(row) + ID, id);
+    }
+
+    @Override
+    void setName(int row, String name)
+    {
+        ByteBuffer chunk = chunk(row);
+        long oldName = chunk.getLong(offset(row) + NAME);
+
+        chunk.putLong(offset(row) + NAME, strings.add(name));
+        strings.free(oldName);
+        compactStringsIfWasteful();
+    }
+
+    @Override
+    void setPrice(int row, double price)
+    {
+        chunk(row).putDouble(offset(row) + PRICE, price);
+    }
+
+    @Override
+    void setStock(int row, int stock)
+    {
+        chunk(row).putInt(offset(row) + STOCK, stock);
+    }
+
+    @Override
+    void setMin(int row, int min)
+    {
+        chunk(row).putInt(offset(row) + MIN, min);
+    }
+
+    @Override
+    void setMax(int row, int max)
+    {
+        chunk(row).putInt(offset(row) + MAX, max);
+    }
+
+    @Override
+    void setMachineID(int row, int machineID)
+    {
+        chunk(row).putLong(offset(row) + SOURCE, machineID);
+    }
+
+    @Override
+    void setSupplierCode(int row, int supplierCode)
+    {
+        chunk(row).putLong(offset(row) + SOURCE, supplierCode);
+    }
+
+    @Override
+    public void removePositions(int[] positions, int count)
+    {
+        if (count == 0)
+        {
+            return;
+        }
+
+        beginChange();
+        try
+        {
+            int write = positions[0];
+            int next = 0;  // Next entry of positions to remove
+
+            for (int read = positions[0]; read < size; read++)
+            {
+                if (next < count && read == positions[next])
+                {
+                    nextRemove(read - next, get(read));  // Location once earlier removals have closed up the list
+                    detach(read);
+                    freeStrings(read);
+                    next++;
+                }
+                else
+                {
+                    copyRecord(read, write++);
+                }
+            }
+
+            size = write;
+            moveViews(row ->
+            {
+                int slot = Arrays.binarySearch(positions, 0, count, row);
+                return row - (-slot - 1);  // Removed rows were detached, so row is never in positions
+            });
+            modCount++;
+        }
+        finally
+        {
+            endChange();
+        }
+        compactStringsIfWasteful();
+    }
+
+    @Override
+    public Part get(int index)
+    {
+        Objects.checkIndex(index, size);
+        return view(index);
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    protected void doAdd(int index, Part element)
+    {
+        Objects.checkIndex(index, size + 1);
+        ensureCapacity(size + 1);
+
+        for (int row = size; row > index; row--)  // Parts are normally appended, so this rarely runs
+        {
+            copyRecord(row - 1, row);
+        }
+        size++;
+
+        if (index < size - 1)
+        {
+            moveViews(row -> row >= index ? row + 1 : row);
+        }
+        writeRecord(index, element);
+    }
+
+    @Override
+    protected Part doSet(int index, Part element)
+    {
+        Part oldElement = get(index);  // Listeners receive the part that was replaced
+        ByteBuffer chunk = chunk(index);
+        long oldName = chunk.getLong(offset(index) + NAME);
+
+        detach(index);
+        writeRecord(index, element);
+
+        strings.free(oldName);
+        compactStringsIfWasteful();
+        return oldElement;
+    }
+
+    @Override
+    protected Part doRemove(int index)
+    {
+        Part oldElement = get(index);
+
+        detach(index);
+        freeStrings(index);
+
+        for (int row = index + 1; row < size; row++)
+        {
+            copyRecord(row, row - 1);
+        }
+        size--;
+        moveViews(row -> row > index ? row - 1 : row);
+        compactStringsIfWasteful();
+        return oldElement;
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity)
+    {
+        int chunkCount = (int) (((long) capacity + RECORDS_PER_CHUNK - 1) >>> CHUNK_SHIFT);
+
+        if (chunkCount > chunks.length)
+        {
+            int oldCount = chunks.length;
+            chunks = Arrays.copyOf(chunks, chunkCount);
+
+            for (int i = oldCount; i < chunkCount; i++)
+            {
+                chunks[i] = ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_SIZE).order(ByteOrder.nativeOrder());
+            }
+        }
+    }
+
+    private ByteBuffer chunk(int row)
+    {
+        Objects.checkIndex(row, size);
+        return chunks[row >>> CHUNK_SHIFT];
+    }
+
+    private static int offset(int row)
+    {
+        return (row & (RECORDS_PER_CHUNK - 1)) * RECORD_SIZE;
+    }
+
+    /**
+     * Copies the values of a part into a record.
+     */
+    private void writeRecord(int row, Part part)
+    {
+        ByteBuffer chunk = chunk(row);
+        int offset = offset(row);
+
+        chunk.putInt(offset + ID, part.getId());
+        chunk.putInt(offset + STOCK, part.getStock());
+        chunk.putInt(offset + MIN, part.getMin());
+        chunk.putInt(offset + MAX, part.getMax());
+        chunk.putDouble(offset + PRICE, part.getPrice());
+        chunk.putLong(offset + NAME, strings.add(part.getName()));
+
+        if (part instanceof Outsourced)
+        {
+            chunk.put(offset + KIND, OUTSOURCED);
+            chunk.putLong(offset + SOURCE, ((Outsourced) part).getSupplierCode());
+        }
+        else
+        {
+            chunk.put(offset + KIND, IN_HOUSE);
+            chunk.putLong(offset + SOURCE, ((InHouse) part).getMachineID());
+        }
+    }
+
+    private void copyRecord(int from, int to)
+    {
+        ByteBuffer source = chunks[from >>> CHUNK_SHIFT];
+        ByteBuffer destination = chunks[to >>> CHUNK_SHIFT];
+        int sourceOffset = offset(from);
+        int destinationOffset = offset(to);
+
+        for (int i = 0; i < RECORD_SIZE; i += 8)
+        {
+            destination.putLong(destinationOffset + i, source.getLong(sourceOffset + i));
+        }
+    }
+
+    private void freeStrings(int row)
+    {
+        strings.free(chunk(row).getLong(offset(row) + NAME));
+    }
+
+    /**
+     * Copies every string still in use to a new arena once most of the arena is freed strings.
+     */
+    private void compactStringsIfWasteful()
+    {
+        if (!strings.isWasteful())
+        {
+            return;
+        }
+
+        StringArena compacted = new StringArena();
+
+        for (int row = 0; row < size; row++)
+        {
+            ByteBuffer chunk = chunks[row >>> CHUNK_SHIFT];
+            int offset = offset(row);
+
+            chunk.putLong(offset + NAME, compacted.copyFrom(strings, chunk.getLong(offset + NAME)));
+        }
+        strings = compacted;
+    }
+
+    /**
+     * Stores strings in large direct memory chunks. A reference holds the chunk number in the high
+     * 32 bits and the location in the chunk in the low 32 bits. Freed strings are only counted,
+     * their space is recovered by copying live strings to a new arena.
+     */
+    private static class StringArena
+    {
+        private static final int CHUNK_SIZE = 1 << 20;
+
+        private ByteBuffer[] chunks = new ByteBuffer[0];
+        private ByteBuffer current = null;  // Chunk strings are added to
+        private long usedBytes = 0;
+        private long freedBytes = 0;
+
+        private long add(String text)
+        {
+            return add(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private long add(byte[] bytes)
+        {
+            int length = 4 + bytes.length;
+
+            if (current == null || current.remaining() < length)
+            {
+                current = ByteBuffer.allocateDirect(Math.max(CHUNK_SIZE, length)).order(ByteOrder.nativeOrder());
+                chunks = Arrays.copyOf(chunks, chunks.length + 1);
+                chunks[chunks.length - 1] = current;
+            }
+
+            long reference = ((long) (chunks.length - 1) << 32) | current.position();
+            current.putInt(bytes.length);
+            current.put(bytes);
+            usedBytes += length;
+            return reference;
+        }
+
+        private String get(long reference)
+        {
+            return new String(bytes(reference), StandardCharsets.UTF_8);
+        }
+
+        private long copyFrom(StringArena other, long reference)
+        {
+            return add(other.bytes(reference));
+        }
+
+        private void free(long reference)
+        {
+            freedBytes += 4 + chunks[(int) (reference >>> 32)].getInt((int) reference);
+        }
+
+        private boolean isWasteful()
+        {
+            return freedBytes > CHUNK_SIZE && freedBytes * 2 > usedBytes;
+        }
+
+        private byte[] bytes(long reference)
+        {
+            ByteBuffer chunk = chunks[(int) (reference >>> 32)];
+            int offset = (int) reference;
+            byte[] bytes = new byte[chunk.getInt(offset)];
+
+            chunk.get(offset + 4, bytes);
+            return bytes;
+        }
+    }
+}
@@ -6,7 +6,7 @@ package model;
  */
 public class Outsourced extends Part
 {
-    private String companyName;
+    private int supplierCode;  // Company name is stored once in SupplierDictionary
 
     /**
      * Constructs InHouse part. A part not outsourced to a different company.
@@ -21,7 +21,7 @@ public class Outsourced extends Part
     public Outsourced(int id, String name, double price, int stock, int min, int max, String companyName)
     {
         super(id, name, price, stock, min, max);
-        this.companyName = companyName;
+        this.supplierCode = SupplierDictionary.codeOf(companyName);
     }
 
     /**
@@ -30,7 +30,7 @@ public class Outsourced extends Part
      */
     public void setCompanyName(String companyName)
     {
-        this.companyName = companyName;
+        this.supplierCode = SupplierDictionary.codeOf(companyName);
     }
 
     /**
@@ -39,6 +39,15 @@ public class Outsourced extends Part
      */
     public String getCompanyName()
     {
-        return companyName;
+        return SupplierDictionary.nameOf(getSupplierCode());
+    }
+
+    /**
+     * Get code of company, parts from the same company have the same code.
+     * @return code given to company name by SupplierDictionary.
+     */
+    public int getSupplierCode()
+    {
+        return supplierCode;
     }
 }
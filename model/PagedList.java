@@ -0,0 +1,393 @@
+package model;
+
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+import javafx.collections.WeakListChangeListener;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * A read-only list for very large tables that only holds the rows near what the table shows. Rows are
+ * loaded a page at a time from an order of IDs (table order, or a sorted index), and only a few pages are
+ * kept, so memory stays the same however many rows there are. A TableView only asks for the rows it draws,
+ * which fall in one or two pages. The page next to a loaded page is found from that page's first or last
+ * ID (keyset paging) instead of counting from the start, and the page after the one scrolled to is loaded
+ * with it, so scrolling steadily never waits for a page. Rows are read when their page loads, and IDs whose
+ * row is already gone (deleted, with the change not yet shown) are skipped. Changes to the inventory drop
+ * every page and reach the table as one change. Must be used on the JavaFX thread.
+ * @param <T> Part or Product.
+ */
+public class PagedList<T> extends ObservableListBase<T>
+{
+    private static final int PAGE_SIZE = 256;  // Rows per page, several times what a table shows at once
+    private static final int MAX_PAGES = 8;  // Pages kept, the rest are loaded again when needed
+
+    private final IntFunction<T> rows;  // Finds a row by ID
+    private RowOrder order;
+    private boolean descending;
+    private int size;
+    private int lastPage = -1;  // Page read last, tells which way the table is scrolling
+    private final ListChangeListener<Object> changeListener = change -> reload();  // One event per flush, so one reload per flush
+
+    private final Map<Integer, Page> pages = new LinkedHashMap<>(MAX_PAGES * 2, 0.75f, true)  // Page number -> rows, least recently read first
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest)
+        {
+            return size() > MAX_PAGES;
+        }
+    };
+
+    /**
+     * The IDs shown by a paged list, in order.
+     */
+    public interface RowOrder
+    {
+        int size();
+
+        int[] idsAt(int position, int count);  // Up to count IDs from a position
+
+        int[] idsAfter(int id, int count);  // Up to count IDs after an ID, null if the ID is gone
+
+        int[] idsBefore(int id, int count);  // Up to count IDs before an ID (in order), null if the ID is gone
+
+        int positionOf(int id);  // -1 if the ID is not in the order
+    }
+
+    /**
+     * Constructs a list showing rows in an order. The changes list only holds it weakly, so it is dropped
+     * along with the table showing it, such as when the scene is loaded again.
+     * @param rows finds a row by ID, returns null if there is none.
+     * @param changes list that changes whenever rows are added, removed or changed, such as Inventory.getAllParts().
+     * @param order IDs shown, in order.
+     */
+    public PagedList(IntFunction<T> rows, ObservableList<?> changes, RowOrder order)
+    {
+        this.rows = rows;
+        this.order = order;
+        this.size = order.size();
+        changes.addListener(new WeakListChangeListener<>(changeListener));  // Listener lives as long as this list
+    }
+
+    /**
+     * Shows the rows in another order, such as when the table is sorted by another column.
+     * @param order IDs shown, in order.
+     * @param descending true to show the order backwards.
+     */
+    public void setOrder(RowOrder order, boolean descending)
+    {
+        this.order = order;
+        this.descending = descending;
+        reload();
+    }
+
+    /**
+     * Drops every page and tells listeners every row may have changed. Only rows the table draws are loaded again.
+     */
+    public void reload()
+    {
+        int oldSize = size;
+
+        pages.clear();
+        lastPage = -1;
+        size = order.size();
+
+        beginChange();
+        try
+        {
+            nextReplace(0, size, new Dropped<>(oldSize));
+        }
+        finally
+        {
+            endChange();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+
+        int position = descending ? size - 1 - index : index;  // Pages always follow the order forwards
+        int page = position / PAGE_SIZE;
+        Page rowsOfPage = page(page);
+        int offset = position - page * PAGE_SIZE;
+
+        if (page != lastPage)
+        {
+            int ahead = page > lastPage ? page + 1 : page - 1;  // Next page the table will scroll to
+
+            if (lastPage >= 0 && ahead >= 0 && ahead * PAGE_SIZE < size)
+            {
+                page(ahead);
+            }
+            lastPage = page;
+        }
+        if (offset >= rowsOfPage.rows.length)  // Rows were deleted since the last reload, and the order ends before the old size
+        {
+            Object last = lastRow(page);
+
+            if (last != null)
+            {
+                return (T) last;  // Repeated until the reload for the deletion arrives
+            }
+        }
+        return offset < rowsOfPage.rows.length ? (T) rowsOfPage.rows[offset] : null;  // Null only if every row is gone
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Finds a row by its position in the order, without reading any other row, so tables can keep the
+     * selection after a reload.
+     */
+    @Override
+    public int indexOf(Object item)
+    {
+        int id = item instanceof Part ? ((Part) item).getId() : item instanceof Product ? ((Product) item).getId() : -1;
+        int position = id >= 0 ? order.positionOf(id) : -1;
+
+        if (position < 0 || position >= size)
+        {
+            return -1;
+        }
+        return descending ? size - 1 - position : position;
+    }
+
+    @Override
+    public int lastIndexOf(Object item)
+    {
+        return indexOf(item);  // IDs are unique
+    }
+
+    @Override
+    public boolean contains(Object item)
+    {
+        return indexOf(item) >= 0;
+    }
+
+    /**
+     * @return rows of a page, loaded from a neighbouring page's first or last ID when there is one.
+     */
+    private Page page(int page)
+    {
+        Page loaded = pages.get(page);
+
+        if (loaded != null)
+        {
+            return loaded;
+        }
+
+        Page previous = pages.get(page - 1);
+        Page next = pages.get(page + 1);
+        int[] ids = null;
+
+        if (previous != null && previous.ids.length == PAGE_SIZE)
+        {
+            ids = order.idsAfter(previous.ids[PAGE_SIZE - 1], PAGE_SIZE);
+        }
+        else if (next != null && next.ids.length > 0)
+        {
+            ids = order.idsBefore(next.ids[0], PAGE_SIZE);
+
+            if (ids != null && ids.length < PAGE_SIZE && page > 0)  // Rows were added or deleted, so the pages no longer line up
+            {
+                ids = null;
+            }
+        }
+
+        if (ids == null)  // No neighbour, or its row is gone
+        {
+            ids = order.idsAt(page * PAGE_SIZE, PAGE_SIZE);
+        }
+
+        loaded = resolve(ids);
+        pages.put(page, loaded);
+        return loaded;
+    }
+
+    /**
+     * Reads the rows of a page. IDs without a row are skipped and the page is filled up from the IDs after
+     * it, so the rows the table draws are never missing while a deletion waits to be shown.
+     */
+    private Page resolve(int[] ids)
+    {
+        int[] found = new int[ids.length];
+        Object[] foundRows = new Object[ids.length];
+        int count = 0;
+        int requested = ids.length;
+        int[] batch = ids;
+
+        while (batch != null)
+        {
+            for (int id : batch)
+            {
+                T row = rows.apply(id);
+
+                if (row != null)
+                {
+                    found[count] = id;
+                    foundRows[count++] = row;
+                }
+            }
+
+            if (count == found.length || batch.length < requested || batch.length == 0)
+            {
+                break;  // Full, or the order has run out
+            }
+            requested = found.length - count;
+            batch = order.idsAfter(batch[batch.length - 1], requested);  // Null if that ID has left the order too
+        }
+        return new Page(Arrays.copyOf(found, count), Arrays.copyOf(foundRows, count));
+    }
+
+    /**
+     * @return last row at or before a page, or null if there is none.
+     */
+    private Object lastRow(int page)
+    {
+        for (; page >= 0; page--)
+        {
+            Page candidate = page(page);
+
+            if (candidate.rows.length > 0)
+            {
+                return candidate.rows[candidate.rows.length - 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * IDs of a page in order, with the row of each, read when the page loaded.
+     */
+    private static class Page
+    {
+        final int[] ids;
+        final Object[] rows;
+
+        Page(int[] ids, Object[] rows)
+        {
+            this.ids = ids;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Some IDs of another order, such as search results, shown in that order. The IDs are placed by their
+     * positions in the other order, so making one takes O(k log n) for k IDs however many rows there are.
+     */
+    public static class Subset implements RowOrder
+    {
+        private final int[] ids;
+        private final IdIndex<Object> positions = new IdIndex<>();  // ID -> position in ids
+
+        /**
+         * Constructs a subset.
+         * @param order order the IDs are shown in.
+         * @param ids IDs shown, in any order. IDs not in the order are left out.
+         */
+        public Subset(RowOrder order, int[] ids)
+        {
+            long[] placed = new long[ids.length];  // Position in order, then ID, so sorting puts them in order
+            int count = 0;
+
+            for (int id : ids)
+            {
+                int position = order.positionOf(id);
+
+                if (position >= 0)
+                {
+                    placed[count++] = ((long) position << 32) | (id & 0xFFFFFFFFL);
+                }
+            }
+            Arrays.sort(placed, 0, count);
+
+            this.ids = new int[count];
+            positions.ensureCapacity(count);
+            for (int i = 0; i < count; i++)
+            {
+                this.ids[i] = (int) placed[i];
+                positions.put(this.ids[i], i);
+            }
+        }
+
+        @Override
+        public int size()
+        {
+            return ids.length;
+        }
+
+        @Override
+        public int[] idsAt(int position, int count)
+        {
+            int from = Math.min(Math.max(position, 0), ids.length);
+            return Arrays.copyOfRange(ids, from, from + Math.max(0, Math.min(count, ids.length - from)));
+        }
+
+        @Override
+        public int[] idsAfter(int id, int count)
+        {
+            int position = positions.position(id);
+            return position < 0 ? null : idsAt(position + 1, count);
+        }
+
+        @Override
+        public int[] idsBefore(int id, int count)
+        {
+            int position = positions.position(id);
+
+            if (position < 0)
+            {
+                return null;
+            }
+
+            int from = Math.max(0, position - count);
+            return Arrays.copyOfRange(ids, from, position);
+        }
+
+        @Override
+        public int positionOf(int id)
+        {
+            return positions.position(id);
+        }
+    }
+
+    /**
+     * Stands in for the rows dropped by a reload. Rows are not kept, so each one reads as null.
+     */
+    private static class Dropped<T> extends AbstractList<T>
+    {
+        private final int size;
+
+        Dropped(int size)
+        {
+            this.size = size;
+        }
+
+        @Override
+        public T get(int index)
+        {
+            return null;
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+    }
+}
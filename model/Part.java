@@ -1,5 +1,8 @@
 package model;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
  * An abstract class that is used as a basis to create part classes.
  */
@@ -12,6 +15,20 @@ public abstract class Part
     private int min;
     private int max;
 
+    private static final VarHandle STOCK;  // Changes stock in one atomic step without locking
+
+    static
+    {
+        try
+        {
+            STOCK = MethodHandles.lookup().findVarHandle(Part.class, "stock", int.class);
+        }
+        catch (ReflectiveOperationException cannotHappen)  // Field is declared above
+        {
+            throw new ExceptionInInitializerError(cannotHappen);
+        }
+    }
+
     public Part(int id, String name, double price, int stock, int min, int max)
     {
         this.id = id;
@@ -86,6 +103,30 @@ public abstract class Part
         this.stock = stock;
     }
 
+    /**
+     * Adds delta to stock in one atomic step, safe while other threads change the same stock.
+     * Stock must stay between min and max, the same rule the forms use.
+     * @param delta amount to add, negative to take stock away.
+     * @return new stock, or -1 if stock would leave min and max (stock is not changed).
+     */
+    public int adjustStock(int delta)
+    {
+        while (true)
+        {
+            int current = (int) STOCK.getVolatile(this);
+            long next = (long) current + delta;  // Cannot overflow
+
+            if (next < min || next > max)
+            {
+                return -1;
+            }
+            if (STOCK.compareAndSet(this, current, (int) next))  // Fails if another thread changed stock first, then try again
+            {
+                return (int) next;
+            }
+        }
+    }
+
     /**
      * @return the min
      */
@@ -0,0 +1,573 @@
+package model;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A list of all parts that keeps part values in its own storage instead of one object per part.
+ * Values can be read by location without creating a part object. Part objects are only created when
+ * a row is read through the list, for example by a table. They are views that read and write the
+ * store, a view that is replaced or removed keeps the values it had. Views are only weakly remembered,
+ * so the heap holds only the parts that are still being shown or used somewhere.
+ */
+public abstract class PartStore extends InventoryList<Part>
+{
+    private HashMap<Integer, ViewReference> views = new HashMap<>();  // Row -> part object created for it, if still in use
+    private final ReferenceQueue<Part> collectedViews = new ReferenceQueue<>();
+
+    /**
+     * @param row location of part.
+     * @return ID of part.
+     */
+    public abstract int getId(int row);
+
+    /**
+     * @param row location of part.
+     * @return name of part.
+     */
+    public abstract String getName(int row);
+
+    /**
+     * @param row location of part.
+     * @return price of part.
+     */
+    public abstract double getPrice(int row);
+
+    /**
+     * @param row location of part.
+     * @return stock of part.
+     */
+    public abstract int getStock(int row);
+
+    /**
+     * @param row location of part.
+     * @return minimum stock of part.
+     */
+    public abstract int getMin(int row);
+
+    /**
+     * @param row location of part.
+     * @return maximum stock of part.
+     */
+    public abstract int getMax(int row);
+
+    /**
+     * @param row location of part.
+     * @return true if part is outsourced, false if it is made in-house.
+     */
+    public abstract boolean isOutsourced(int row);
+
+    /**
+     * @param row location of an in-house part.
+     * @return machine ID of part.
+     */
+    public abstract int getMachineID(int row);
+
+    /**
+     * @param row location of an outsourced part.
+     * @return company name of part.
+     */
+    public String getCompanyName(int row)
+    {
+        return SupplierDictionary.nameOf(getSupplierCode(row));
+    }
+
+    /**
+     * @param row location of an outsourced part.
+     * @return code of company name of part, given by SupplierDictionary.
+     */
+    public abstract int getSupplierCode(int row);
+
+    abstract void setId(int row, int id);
+
+    abstract void setName(int row, String name);
+
+    abstract void setPrice(int row, double price);
+
+    abstract void setStock(int row, int stock);
+
+    /**
+     * Adds delta to the stock of a row if it stays between min and max. Not atomic, rows are only changed
+     * by the JavaFX thread, or by a thread holding Inventory's store lock for writing.
+     * @return new stock, or -1 if stock would leave min and max.
+     */
+    int adjustStock(int row, int delta)
+    {
+        long next = (long) getStock(row) + delta;
+
+        if (next < getMin(row) || next > getMax(row))
+        {
+            return -1;
+        }
+        setStock(row, (int) next);
+        return (int) next;
+    }
+
+    abstract void setMin(int row, int min);
+
+    abstract void setMax(int row, int max);
+
+    abstract void setMachineID(int row, int machineID);
+
+    abstract void setSupplierCode(int row, int supplierCode);
+
+    /**
+     * Returns the part object of a row, creating it on first read or once the last one is no longer used.
+     * Also called by the search thread, which must not see the view map mid-update.
+     */
+    synchronized Part view(int row)
+    {
+        expungeCollectedViews();
+
+        ViewReference reference = views.get(row);
+        Part view = reference != null ? reference.get() : null;
+
+        if (view == null)
+        {
+            view = isOutsourced(row) ? new OutsourcedView(this, row) : new InHouseView(this, row);
+            views.put(row, new ViewReference(view, row, collectedViews));
+        }
+        return view;
+    }
+
+    /**
+     * Copies a row into a new part that does not use the store, for threads other than the JavaFX thread.
+     * Caller must keep the rows from changing while copying.
+     */
+    Part copyRow(int row)
+    {
+        if (isOutsourced(row))
+        {
+            return new Outsourced(getId(row), getName(row), getPrice(row), getStock(row), getMin(row), getMax(row), getCompanyName(row));
+        }
+        return new InHouse(getId(row), getName(row), getPrice(row), getStock(row), getMin(row), getMax(row), getMachineID(row));
+    }
+
+    /**
+     * Lets the part object of a row (if one is still in use) keep its values once the row is replaced or removed.
+     * Must be called before the row is replaced or removed.
+     */
+    synchronized void detach(int row)
+    {
+        ViewReference reference = views.remove(row);
+        Part view = reference != null ? reference.get() : null;
+
+        if (view != null)
+        {
+            ((View) view).detach();
+        }
+    }
+
+    /**
+     * Tells every part object still in use where its row moved to.
+     * @param newRow new location of each row that was not removed.
+     */
+    synchronized void moveViews(IntUnaryOperator newRow)
+    {
+        expungeCollectedViews();
+        HashMap<Integer, ViewReference> moved = new HashMap<>(views.size() * 2);
+
+        for (ViewReference reference : views.values())
+        {
+            Part view = reference.get();
+
+            if (view != null)
+            {
+                reference.row = newRow.applyAsInt(reference.row);
+                ((View) view).moveTo(reference.row);
+                moved.put(reference.row, reference);
+            }
+        }
+        views = moved;
+    }
+
+    /**
+     * Forgets part objects that the garbage collector found are no longer used.
+     */
+    private void expungeCollectedViews()
+    {
+        ViewReference collected;
+
+        while ((collected = (ViewReference) collectedViews.poll()) != null)
+        {
+            views.remove(collected.row, collected);
+        }
+    }
+
+    /**
+     * Weak reference to the part object created for a row, remembering the row so it can be forgotten once collected.
+     */
+    private static class ViewReference extends WeakReference<Part>
+    {
+        private int row;
+
+        private ViewReference(Part view, int row, ReferenceQueue<Part> queue)
+        {
+            super(view, queue);
+            this.row = row;
+        }
+    }
+
+    private interface View
+    {
+        void moveTo(int row);
+
+        void detach();
+    }
+
+    /**
+     * View of an in-house part row. Once detached (row is -1) the values are kept in the object like a normal InHouse part.
+     */
+    private static class InHouseView extends InHouse implements View
+    {
+        private final PartStore store;
+        private int row;
+
+        private InHouseView(PartStore store, int row)
+        {
+            super(0, null, 0, 0, 0, 0, 0);  // Values are read from the store until detached
+            this.store = store;
+            this.row = row;
+        }
+
+        @Override
+        public int getId()
+        {
+            return row < 0 ? super.getId() : store.getId(row);
+        }
+
+        @Override
+        public void setId(int id)
+        {
+            if (row < 0)
+            {
+                super.setId(id);
+            }
+            else
+            {
+                store.setId(row, id);
+            }
+        }
+
+        @Override
+        public String getName()
+        {
+            return row < 0 ? super.getName() : store.getName(row);
+        }
+
+        @Override
+        public void setName(String name)
+        {
+            if (row < 0)
+            {
+                super.setName(name);
+            }
+            else
+            {
+                store.setName(row, name);
+            }
+        }
+
+        @Override
+        public double getPrice()
+        {
+            return row < 0 ? super.getPrice() : store.getPrice(row);
+        }
+
+        @Override
+        public void setPrice(double price)
+        {
+            if (row < 0)
+            {
+                super.setPrice(price);
+            }
+            else
+            {
+                store.setPrice(row, price);
+            }
+        }
+
+        @Override
+        public int getStock()
+        {
+            return row < 0 ? super.getStock() : store.getStock(row);
+        }
+
+        @Override
+        public void setStock(int stock)
+        {
+            if (row < 0)
+            {
+                super.setStock(stock);
+            }
+            else
+            {
+                store.setStock(row, stock);
+            }
+        }
+
+        @Override
+        public int adjustStock(int delta)
+        {
+            return row < 0 ? super.adjustStock(delta) : store.adjustStock(row, delta);
+        }
+
+        @Override
+        public int getMin()
+        {
+            return row < 0 ? super.getMin() : store.getMin(row);
+        }
+
+        @Override
+        public void setMin(int min)
+        {
+            if (row < 0)
+            {
+                super.setMin(min);
+            }
+            else
+            {
+                store.setMin(row, min);
+            }
+        }
+
+        @Override
+        public int getMax()
+        {
+            return row < 0 ? super.getMax() : store.getMax(row);
+        }
+
+        @Override
+        public void setMax(int max)
+        {
+            if (row < 0)
+            {
+                super.setMax(max);
+            }
+            else
+            {
+                store.setMax(row, max);
+            }
+        }
+
+        @Override
+        public int getMachineID()
+        {
+            return row < 0 ? super.getMachineID() : store.getMachineID(row);
+        }
+
+        @Override
+        public void setMachineID(int machineID)
+        {
+            if (row < 0)
+            {
+                super.setMachineID(machineID);
+            }
+            else
+            {
+                store.setMachineID(row, machineID);
+            }
+        }
+
+        @Override
+        public void moveTo(int row)
+        {
+            this.row = row;
+        }
+
+        @Override
+        public void detach()
+        {
+            super.setId(getId());
+            super.setName(getName());
+            super.setPrice(getPrice());
+            super.setStock(getStock());
+            super.setMin(getMin());
+            super.setMax(getMax());
+            super.setMachineID(getMachineID());
+            row = -1;
+        }
+    }
+
+    /**
+     * View of an outsourced part row. Once detached (row is -1) the values are kept in the object like a normal Outsourced part.
+     */
+    private static class OutsourcedView extends Outsourced implements View
+    {
+        private final PartStore store;
+        private int row;
+
+        private OutsourcedView(PartStore store, int row)
+        {
+            super(0, null, 0, 0, 0, 0, null);  // Values are read from the store until detached
+            this.store = store;
+            this.row = row;
+        }
+
+        @Override
+        public int getId()
+        {
+            return row < 0 ? super.getId() : store.getId(row);
+        }
+
+        @Override
+        public void setId(int id)
+        {
+            if (row < 0)
+            {
+                super.setId(id);
+            }
+            else
+            {
+                store.setId(row, id);
+            }
+        }
+
+        @Override
+        public String getName()
+        {
+            return row < 0 ? super.getName() : store.getName(row);
+        }
+
+        @Override
+        public void setName(String name)
+        {
+            if (row < 0)
+            {
+                super.setName(name);
+            }
+            else
+            {
+                store.setName(row, name);
+            }
+        }
+
+        @Override
+        public double getPrice()
+        {
+            return row < 0 ? super.getPrice() : store.getPrice(row);
+        }
+
+        @Override
+        public void setPrice(double price)
+        {
+            if (row < 0)
+            {
+                super.setPrice(price);
+            }
+            else
+            {
+                store.setPrice(row, price);
+            }
+        }
+
+        @Override
+        public int getStock()
+        {
+            return row < 0 ? super.getStock() : store.getStock(row);
+        }
+
+        @Override
+        public void setStock(int stock)
+        {
+            if (row < 0)
+            {
+                super.setStock(stock);
+            }
+            else
+            {
+                store.setStock(row, stock);
+            }
+        }
+
+        @Override
+        public int adjustStock(int delta)
+        {
+            return row < 0 ? super.adjustStock(delta) : store.adjustStock(row, delta);
+        }
+
+        @Override
+        public int getMin()
+        {
+            return row < 0 ? super.getMin() : store.getMin(row);
+        }
+
+        @Override
+        public void setMin(int min)
+        {
+            if (row < 0)
+            {
+                super.setMin(min);
+            }
+            else
+            {
+                store.setMin(row, min);
+            }
+        }
+
+        @Override
+        public int getMax()
+        {
+            return row < 0 ? super.getMax() : store.getMax(row);
+        }
+
+        @Override
+        public void setMax(int max)
+        {
+            if (row < 0)
+            {
+                super.setMax(max);
+            }
+            else
+            {
+                store.setMax(row, max);
+            }
+        }
+
+        @Override
+        public String getCompanyName()
+        {
+            return row < 0 ? super.getCompanyName() : store.getCompanyName(row);
+        }
+
+        @Override
+        public void setCompanyName(String companyName)
+        {
+            if (row < 0)
+            {
+                super.setCompanyName(companyName);
+            }
+            else
+            {
+                store.setSupplierCode(row, SupplierDictionary.codeOf(companyName));
+            }
+        }
+
+        @Override
+        public int getSupplierCode()
+        {
+            return row < 0 ? super.getSupplierCode() : store.getSupplierCode(row);
+        }
+
+        @Override
+        public void moveTo(int row)
+        {
+            this.row = row;
+        }
+
+        @Override
+        public void detach()
+        {
+            super.setId(getId());
+            super.setName(getName());
+            super.setPrice(getPrice());
+            super.setStock(getStock());
+            super.setMin(getMin());
+            super.setMax(getMax());
+            super.setCompanyName(getCompanyName());
+            row = -1;
+        }
+    }
+}
@@ -3,12 +3,20 @@ package model;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
- *  A class used to generate and interact with products.
+ *  A class used to generate and interact with products. Associated parts and components can only be changed
+ *  before the product is added to the inventory; to change a stored product, build a new one and pass it to
+ *  Inventory.updateProduct, so the change is locked and journaled like any other update.
  */
 public class Product
 {
-    private ObservableList<Part> associatedParts = FXCollections.observableArrayList();
+    private final BillOfMaterials parts = new BillOfMaterials();  // Associated part ID -> quantity, sorted by ID
+    private final BillOfMaterials components = new BillOfMaterials();  // Component product ID -> quantity, for products built from sub-assemblies
+    private volatile boolean stored;  // True while the inventory holds this product, its bills are then read only
+    private volatile double materialCost = CostRollup.NO_COST;  // Kept up to date by the cost rollup while stored
     private int id;
     private String name;
     private double price;
@@ -16,6 +24,20 @@ public class Product
     private int min;
     private int max;
 
+    private static final VarHandle STOCK;  // Changes stock in one atomic step without locking
+
+    static
+    {
+        try
+        {
+            STOCK = MethodHandles.lookup().findVarHandle(Product.class, "stock", int.class);
+        }
+        catch (ReflectiveOperationException cannotHappen)  // Field is declared above
+        {
+            throw new ExceptionInInitializerError(cannotHappen);
+        }
+    }
+
     /**
      * Constructs product.
      * @param id Product's ID.
@@ -99,6 +121,30 @@ public class Product
         return stock;
     }
 
+    /**
+     * Adds delta to stock in one atomic step, safe while other threads change the same stock.
+     * Stock must stay between min and max, the same rule the forms use.
+     * @param delta amount to add, negative to take stock away.
+     * @return new stock, or -1 if stock would leave min and max (stock is not changed).
+     */
+    public int adjustStock(int delta)
+    {
+        while (true)
+        {
+            int current = (int) STOCK.getVolatile(this);
+            long next = (long) current + delta;  // Cannot overflow
+
+            if (next < min || next > max)
+            {
+                return -1;
+            }
+            if (STOCK.compareAndSet(this, current, (int) next))  // Fails if another thread changed stock first, then try again
+            {
+                return (int) next;
+            }
+        }
+    }
+
     /**
      * @param min the minimum amount of products allowed.
      */
@@ -132,37 +178,222 @@ public class Product
     }
 
     /**
+     * Adds one of a part to the product.
      * @param part to be associated with the product.
      */
     public void addAssociatedPart(Part part)
     {
-        associatedParts.add(part);
+        addAssociatedPart(part, 1);
     }
 
+    /**
+     * Adds a quantity of a part to the product, listing the part if it is not listed yet.
+     * @param part to be associated with the product.
+     * @param quantity amount of the part one product needs, must be positive.
+     * @return new quantity of the part, or -1 if quantity is not valid or the product is stored (nothing is changed).
+     */
+    public int addAssociatedPart(Part part, int quantity)
+    {
+        if (isStored("addAssociatedPart"))
+        {
+            return -1;
+        }
+        return parts.add(part.getId(), quantity);
+    }
 
     /**
-     * Deletes part from associated parts list by comparing IDs.
+     * Sets the quantity of a part, listing it if needed. A quantity of 0 deletes the part from the product.
+     * @param partId numeric ID of part.
+     * @param quantity amount of the part one product needs, 0 or more.
+     * @return true if quantity was set, false if it is negative or the product is stored.
+     */
+    public boolean setAssociatedPartQuantity(int partId, int quantity)
+    {
+        return !isStored("setAssociatedPartQuantity") && parts.setQuantity(partId, quantity);
+    }
+
+    /**
+     * @param partId numeric ID of part.
+     * @return amount of the part one product needs, 0 if it is not associated.
+     */
+    public int getAssociatedPartQuantity(int partId)
+    {
+        return parts.quantityOf(partId);
+    }
+
+    /**
+     * @return number of different parts associated with product.
+     */
+    public int getAssociatedPartCount()
+    {
+        return parts.size();
+    }
+
+    /**
+     * Deletes part from associated parts by comparing IDs, whatever its quantity.
      * @param selectedAssociatedPart Part to be deleted.
-     * @return returns true if part is deleted, false otherwise.
+     * @return returns true if part is deleted, false otherwise (or if the product is stored).
      */
     public boolean deleteAssociatedPart(Part selectedAssociatedPart)
     {
-        for(Part currentPart : associatedParts)
+        return !isStored("deleteAssociatedPart") && parts.remove(selectedAssociatedPart.getId()) != 0;
+    }
+
+    /**
+     * Builds a list of the associated parts for tables, one row per part in ID order (quantities come from
+     * getAssociatedPartQuantity). Parts are looked up in the inventory, so rows show current part values,
+     * and parts no longer in the inventory are left out.
+     * @return new list of all parts associated with product.
+     */
+    public ObservableList<Part> getAllAssociatedParts()
+    {
+        ObservableList<Part> associatedParts = FXCollections.observableArrayList();
+
+        for (int i = 0; i < parts.size(); i++)
         {
-            if(currentPart.getId() == selectedAssociatedPart.getId())
+            Part part = Inventory.lookupPart(parts.partIdAt(i));
+
+            if (part != null)
             {
-                return true;
+                associatedParts.add(part);
             }
         }
+        return associatedParts;
+    }
 
-        return false;
+    /**
+     * Finds the parts this product and another product both use, in one pass over both bills.
+     * @param other product to compare with.
+     * @return bill of the shared parts, each with the smaller of its two quantities.
+     */
+    public BillOfMaterials getSharedParts(Product other)
+    {
+        return parts.shared(other.parts);
     }
 
     /**
-     * @return all parts associated with product.
+     * @return copy of the part ID -> quantity bill, changing it does not change the product.
      */
-    public ObservableList<Part> getAllAssociatedParts()
+    public BillOfMaterials getBillOfMaterials()
     {
-        return associatedParts;
+        return parts.copy();
+    }
+
+    /**
+     * @return the bill itself, for saving and indexing without a copy. Callers must not change it.
+     */
+    BillOfMaterials billOfMaterials()
+    {
+        return parts;
+    }
+
+    /**
+     * Adds a quantity of another product (a sub-assembly) to this product, listing it if it is not listed yet.
+     * @param component product this product is partly built from.
+     * @param quantity amount of the component one product needs, must be positive.
+     * @return new quantity of the component, or -1 if quantity is not valid, component is this product or the
+     * product is stored.
+     */
+    public int addComponent(Product component, int quantity)
+    {
+        if (component.getId() == id)
+        {
+            System.out.println("Debug Info (addComponent): Product " + id + " cannot be a component of itself");
+            return -1;
+        }
+        if (isStored("addComponent"))
+        {
+            return -1;
+        }
+        return components.add(component.getId(), quantity);
+    }
+
+    /**
+     * Sets the quantity of a component, listing it if needed. A quantity of 0 deletes the component.
+     * @param productId numeric ID of component product.
+     * @param quantity amount of the component one product needs, 0 or more.
+     * @return true if quantity was set, false if it is negative, component is this product or the product is stored.
+     */
+    public boolean setComponentQuantity(int productId, int quantity)
+    {
+        return productId != id && !isStored("setComponentQuantity") && components.setQuantity(productId, quantity);
+    }
+
+    /**
+     * @param productId numeric ID of component product.
+     * @return amount of the component one product needs, 0 if it is not a component.
+     */
+    public int getComponentQuantity(int productId)
+    {
+        return components.quantityOf(productId);
+    }
+
+    /**
+     * @return number of different components.
+     */
+    public int getComponentCount()
+    {
+        return components.size();
+    }
+
+    /**
+     * Deletes a component whatever its quantity.
+     * @param component product to be deleted from components.
+     * @return true if component is deleted, false if it was not a component or the product is stored.
+     */
+    public boolean deleteComponent(Product component)
+    {
+        return !isStored("deleteComponent") && components.remove(component.getId()) != 0;
+    }
+
+    /**
+     * @return copy of the component product ID -> quantity bill, changing it does not change the product.
+     */
+    public BillOfMaterials getComponents()
+    {
+        return components.copy();
+    }
+
+    /**
+     * @return cost of the associated parts and components for one unit, kept up to date while the product is
+     * stored, or CostRollup.NO_COST if it is not stored or its components form a loop.
+     */
+    public double getMaterialCost()
+    {
+        return materialCost;
+    }
+
+    /**
+     * @param materialCost cost worked out by the cost rollup.
+     */
+    void setMaterialCost(double materialCost)
+    {
+        this.materialCost = materialCost;
+    }
+
+    /**
+     * @return the component bill itself, for saving and indexing without a copy. Callers must not change it.
+     */
+    BillOfMaterials componentBill()
+    {
+        return components;
+    }
+
+    /**
+     * Marks the product as held by the inventory, which indexes its bills as they are when it is added.
+     * @param stored true while the inventory holds the product, false once it is removed.
+     */
+    void attach(boolean stored)
+    {
+        this.stored = stored;
+    }
+
+    private boolean isStored(String method)
+    {
+        if (stored)
+        {
+            System.out.println("Debug Info (" + method + "): Product " + id + " is in the inventory, update it with Inventory.updateProduct");
+        }
+        return stored;
     }
 }
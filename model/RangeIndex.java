@@ -0,0 +1,684 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.ToLongFunction;
+
+/**
+ * Sorted index of parts or products by one value (price or stock), so range questions such as "priced
+ * between 5 and 10" or "stock below 3" visit only the matching items, and items can be listed in order of
+ * the value without sorting. Entries are (key, ID) pairs, kept sorted in leaves of primitive arrays under a
+ * B+-tree whose branches count the entries below each child, so finding an entry, the entry at a position
+ * or the position of an entry takes one walk from the root. Ties are kept in ID order. Values are turned
+ * into long keys that sort the same way, see priceKey(). Thread safe.
+ * @param <T> type of item indexed.
+ */
+public class RangeIndex<T> implements PagedList.RowOrder
+{
+    private static final int LEAF_SIZE = 256;  // Entries per full leaf, a full leaf is split in two
+    private static final int BRANCH_SIZE = 64;  // Children per full branch, a full branch is split in two
+
+    private final ToLongFunction<T> key;
+    private final IdIndex<Object> slots = new IdIndex<>();  // Item ID -> slot in itemKeys
+    private long[] itemKeys = new long[16];  // Key each item is stored under, by slot
+    private int[] freeSlots = new int[16];  // Slots of removed items, reused first
+    private int freeCount = 0;
+    private int slotCount = 0;  // Slots handed out so far
+    private Node root = new Leaf();
+    private int size = 0;
+
+    /**
+     * Constructs an empty index.
+     * @param key reads the key of an item, such as RangeIndex.priceKey(part.getPrice()).
+     */
+    public RangeIndex(ToLongFunction<T> key)
+    {
+        this.key = key;
+    }
+
+    /**
+     * Turns a price into a key. Keys of prices sort the same way the prices do, including negative prices.
+     * @param price price of part or product.
+     * @return key of price.
+     */
+    public static long priceKey(double price)
+    {
+        long bits = Double.doubleToLongBits(price + 0.0);  // Adding 0.0 turns -0.0 into 0.0
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);  // Negative doubles sort backwards as longs, so flip all but the sign
+    }
+
+    /**
+     * Adds an item, or moves it after its value changed. The key is read while the index is locked, so when
+     * several threads change one item the last update always sees the latest value.
+     * @param id numeric ID of item.
+     * @param item item whose key is read.
+     */
+    public synchronized void update(int id, T item)
+    {
+        long newKey = key.applyAsLong(item);
+        int slot = slots.position(id);
+
+        if (slot >= 0)
+        {
+            if (itemKeys[slot] == newKey)
+            {
+                return;
+            }
+            delete(itemKeys[slot], id);
+        }
+        else
+        {
+            slot = newSlot();
+            slots.put(id, slot);
+        }
+        insert(newKey, id);
+        itemKeys[slot] = newKey;
+    }
+
+    /**
+     * Removes an item. Does nothing if it is not indexed.
+     * @param id numeric ID of item.
+     */
+    public synchronized void remove(int id)
+    {
+        int slot = slots.position(id);
+
+        if (slot >= 0)
+        {
+            delete(itemKeys[slot], id);
+            slots.remove(id);
+
+            if (freeCount == freeSlots.length)
+            {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    /**
+     * Removes every item.
+     */
+    public synchronized void clear()
+    {
+        slots.clear();
+        itemKeys = new long[16];
+        freeSlots = new int[16];
+        freeCount = 0;
+        slotCount = 0;
+        root = new Leaf();
+        size = 0;
+    }
+
+    /**
+     * @return number of items indexed.
+     */
+    @Override
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Lists the items whose key is in a range, in key order. Takes O(log n + k) for k items found.
+     * @param fromKey smallest key included.
+     * @param toKey largest key included.
+     * @return IDs of items found, smallest key first (ties by ID).
+     */
+    public synchronized int[] range(long fromKey, long toKey)
+    {
+        int[] found = new int[16];
+        int count = 0;
+
+        if (fromKey > toKey)
+        {
+            return new int[0];
+        }
+
+        Leaf leaf = leafOf(fromKey, Integer.MIN_VALUE);
+        int index = leaf.indexOf(fromKey, Integer.MIN_VALUE);
+
+        for (; leaf != null; leaf = leaf.next, index = 0)
+        {
+            for (; index < leaf.size; index++)
+            {
+                if (leaf.keys[index] > toKey)
+                {
+                    return Arrays.copyOf(found, count);
+                }
+                if (count == found.length)
+                {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count++] = leaf.ids[index];
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * @return IDs of every item, smallest key first (ties by ID).
+     */
+    public synchronized int[] inOrder()
+    {
+        Node node = root;
+
+        while (node instanceof Branch)
+        {
+            node = ((Branch) node).children[0];
+        }
+        return copyFrom((Leaf) node, 0, size);
+    }
+
+    /**
+     * Lists items by position in key order, for jumping to any point of a sorted table. The start is found
+     * from the entry counts of the branches on the way down, then the items are copied in order.
+     * @param position position of the first item listed, 0 is the smallest key.
+     * @param count largest number of items listed.
+     * @return IDs of up to count items, in key order.
+     */
+    @Override
+    public synchronized int[] idsAt(int position, int count)
+    {
+        if (position >= size)
+        {
+            return new int[0];
+        }
+
+        Node node = root;
+        position = Math.max(position, 0);
+
+        while (node instanceof Branch)
+        {
+            Branch branch = (Branch) node;
+            int child = 0;
+
+            while (child < branch.size - 1 && position >= branch.counts[child])
+            {
+                position -= branch.counts[child++];
+            }
+            node = branch.children[child];
+        }
+        return copyFrom((Leaf) node, position, count);
+    }
+
+    /**
+     * Lists the items after an item in key order (keyset paging), so moving through a sorted table one page
+     * at a time takes O(log n + count) per page wherever the page is.
+     * @param id numeric ID of item the list starts after.
+     * @param count largest number of items listed.
+     * @return IDs of up to count items following the item in key order, or null if the item is not indexed.
+     */
+    @Override
+    public synchronized int[] idsAfter(int id, int count)
+    {
+        int slot = slots.position(id);
+
+        if (slot < 0)
+        {
+            return null;
+        }
+
+        Leaf leaf = leafOf(itemKeys[slot], id);
+        return copyFrom(leaf, leaf.indexOf(itemKeys[slot], id) + 1, count);
+    }
+
+    /**
+     * Lists the items before an item in key order (keyset paging backwards).
+     * @param id numeric ID of item the list ends before.
+     * @param count largest number of items listed.
+     * @return IDs of up to count items preceding the item, in key order, or null if the item is not indexed.
+     */
+    @Override
+    public synchronized int[] idsBefore(int id, int count)
+    {
+        int slot = slots.position(id);
+
+        if (slot < 0)
+        {
+            return null;
+        }
+
+        Leaf leaf = leafOf(itemKeys[slot], id);
+        int index = leaf.indexOf(itemKeys[slot], id);
+        int[] found = new int[Math.max(0, Math.min(count, size))];
+        int filled = found.length;  // Filled from the end, walking backwards
+
+        while (filled > 0)
+        {
+            if (index == 0)
+            {
+                if (leaf.previous == null)
+                {
+                    break;
+                }
+                leaf = leaf.previous;
+                index = leaf.size;
+            }
+
+            int taken = Math.min(index, filled);
+            index -= taken;
+            filled -= taken;
+            System.arraycopy(leaf.ids, index, found, filled, taken);
+        }
+        return Arrays.copyOfRange(found, filled, found.length);
+    }
+
+    /**
+     * @param id numeric ID of item.
+     * @return position of the item in key order, or -1 if it is not indexed.
+     */
+    @Override
+    public synchronized int positionOf(int id)
+    {
+        int slot = slots.position(id);
+
+        if (slot < 0)
+        {
+            return -1;
+        }
+
+        long itemKey = itemKeys[slot];
+        Node node = root;
+        int position = 0;
+
+        while (node instanceof Branch)
+        {
+            Branch branch = (Branch) node;
+            int child = branch.childFor(itemKey, id);
+
+            for (int before = 0; before < child; before++)
+            {
+                position += branch.counts[before];
+            }
+            node = branch.children[child];
+        }
+        return position + ((Leaf) node).indexOf(itemKey, id);
+    }
+
+    /**
+     * @return leaf that holds the entry or where it belongs.
+     */
+    private Leaf leafOf(long entryKey, int id)
+    {
+        Node node = root;
+
+        while (node instanceof Branch)
+        {
+            Branch branch = (Branch) node;
+            node = branch.children[branch.childFor(entryKey, id)];
+        }
+        return (Leaf) node;
+    }
+
+    /**
+     * @return up to count IDs in key order, starting at a position inside a leaf.
+     */
+    private int[] copyFrom(Leaf leaf, int index, int count)
+    {
+        int[] found = new int[Math.max(0, Math.min(count, size))];
+        int filled = 0;
+
+        for (; leaf != null && filled < found.length; leaf = leaf.next, index = 0)
+        {
+            int taken = Math.min(leaf.size - index, found.length - filled);
+
+            if (taken > 0)
+            {
+                System.arraycopy(leaf.ids, index, found, filled, taken);
+                filled += taken;
+            }
+        }
+        return filled == found.length ? found : Arrays.copyOf(found, filled);
+    }
+
+    private int newSlot()
+    {
+        if (freeCount > 0)
+        {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == itemKeys.length)
+        {
+            itemKeys = Arrays.copyOf(itemKeys, slotCount * 2);
+        }
+        return slotCount++;
+    }
+
+    private void insert(long entryKey, int id)
+    {
+        Node extra = root.insert(entryKey, id);
+
+        if (extra != null)  // Root was split, grow the tree by one level
+        {
+            Branch newRoot = new Branch();
+            newRoot.append(root);
+            newRoot.append(extra);
+            root = newRoot;
+        }
+        size++;
+    }
+
+    private void delete(long entryKey, int id)
+    {
+        root.delete(entryKey, id);
+        size--;
+
+        while (root instanceof Branch)
+        {
+            Branch branch = (Branch) root;
+
+            if (branch.size == 0)
+            {
+                root = new Leaf();
+            }
+            else if (branch.size == 1)  // Shrink the tree while the root has one child
+            {
+                root = branch.children[0];
+            }
+            else
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return true if entry (keyA, idA) sorts before entry (keyB, idB).
+     */
+    private static boolean before(long keyA, int idA, long keyB, int idB)
+    {
+        return keyA < keyB || (keyA == keyB && idA < idB);
+    }
+
+    /**
+     * Part of the tree, a leaf of entries or a branch of nodes.
+     */
+    private abstract static class Node
+    {
+        int size;  // Entries in a leaf, children in a branch
+
+        /**
+         * Adds an entry below this node.
+         * @return new node holding the upper half of this node if it was split, else null.
+         */
+        abstract Node insert(long entryKey, int id);
+
+        /**
+         * Removes an entry below this node, the entry must be there.
+         * @return true if the node is left empty and must be dropped.
+         */
+        abstract boolean delete(long entryKey, int id);
+
+        abstract int count();  // Entries below this node
+
+        abstract long lowKey();  // Key of an entry no later entry below this node sorts before
+
+        abstract int lowId();
+    }
+
+    /**
+     * Entries sorted by (key, ID) in primitive arrays, linked to the leaves before and after it.
+     */
+    private static class Leaf extends Node
+    {
+        final long[] keys = new long[LEAF_SIZE];
+        final int[] ids = new int[LEAF_SIZE];
+        Leaf previous;
+        Leaf next;
+
+        /**
+         * @return position in the leaf of the first entry not before (entryKey, id).
+         */
+        int indexOf(long entryKey, int id)
+        {
+            int low = 0;
+            int high = size;
+
+            while (low < high)
+            {
+                int middle = (low + high) >>> 1;
+
+                if (before(keys[middle], ids[middle], entryKey, id))
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        @Override
+        Node insert(long entryKey, int id)
+        {
+            Leaf target = this;
+            Leaf upper = null;
+
+            if (size == LEAF_SIZE)
+            {
+                upper = split();
+
+                if (!before(entryKey, id, upper.keys[0], upper.ids[0]))
+                {
+                    target = upper;  // Belongs in the upper half
+                }
+            }
+
+            int index = target.indexOf(entryKey, id);
+            System.arraycopy(target.keys, index, target.keys, index + 1, target.size - index);
+            System.arraycopy(target.ids, index, target.ids, index + 1, target.size - index);
+            target.keys[index] = entryKey;
+            target.ids[index] = id;
+            target.size++;
+            return upper;
+        }
+
+        @Override
+        boolean delete(long entryKey, int id)
+        {
+            int index = indexOf(entryKey, id);
+
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+
+            if (size > 0)
+            {
+                return false;
+            }
+            if (previous != null)  // Unlink, the branch above drops the leaf
+            {
+                previous.next = next;
+            }
+            if (next != null)
+            {
+                next.previous = previous;
+            }
+            return true;
+        }
+
+        /**
+         * Moves the upper half of this full leaf into a new leaf after it.
+         */
+        private Leaf split()
+        {
+            Leaf upper = new Leaf();
+            int half = LEAF_SIZE / 2;
+
+            System.arraycopy(keys, half, upper.keys, 0, LEAF_SIZE - half);
+            System.arraycopy(ids, half, upper.ids, 0, LEAF_SIZE - half);
+            upper.size = LEAF_SIZE - half;
+            size = half;
+
+            upper.previous = this;
+            upper.next = next;
+            if (next != null)
+            {
+                next.previous = upper;
+            }
+            next = upper;
+            return upper;
+        }
+
+        @Override
+        int count()
+        {
+            return size;
+        }
+
+        @Override
+        long lowKey()
+        {
+            return keys[0];
+        }
+
+        @Override
+        int lowId()
+        {
+            return ids[0];
+        }
+    }
+
+    /**
+     * Children in key order, each with the number of entries below it and a lower bound of its entries.
+     * Lower bounds stay valid when the lowest entry of a child is removed, so they are only set when a
+     * child is added.
+     */
+    private static class Branch extends Node
+    {
+        final Node[] children = new Node[BRANCH_SIZE];
+        final int[] counts = new int[BRANCH_SIZE];
+        final long[] lowKeys = new long[BRANCH_SIZE];
+        final int[] lowIds = new int[BRANCH_SIZE];
+        int total;  // Entries below this branch
+
+        /**
+         * @return child that holds the entry or where it belongs: the last child whose lower bound is not after it.
+         */
+        int childFor(long entryKey, int id)
+        {
+            int low = 0;
+            int high = size - 1;
+
+            while (low < high)
+            {
+                int middle = (low + high + 1) >>> 1;
+
+                if (before(entryKey, id, lowKeys[middle], lowIds[middle]))
+                {
+                    high = middle - 1;
+                }
+                else
+                {
+                    low = middle;
+                }
+            }
+            return low;
+        }
+
+        void append(Node child)
+        {
+            addAt(size, child);
+        }
+
+        @Override
+        Node insert(long entryKey, int id)
+        {
+            int child = childFor(entryKey, id);
+            Node extra = children[child].insert(entryKey, id);
+
+            counts[child]++;
+            total++;
+            if (extra == null)
+            {
+                return null;
+            }
+
+            counts[child] -= extra.count();
+            total -= extra.count();  // Added back by addAt()
+            addAt(child + 1, extra);
+            return size == BRANCH_SIZE ? split() : null;  // Split once full, so a split child always fits
+        }
+
+        @Override
+        boolean delete(long entryKey, int id)
+        {
+            int child = childFor(entryKey, id);
+
+            counts[child]--;
+            total--;
+            if (children[child].delete(entryKey, id))
+            {
+                removeAt(child);
+            }
+            return size == 0;
+        }
+
+        private void addAt(int index, Node child)
+        {
+            System.arraycopy(children, index, children, index + 1, size - index);
+            System.arraycopy(counts, index, counts, index + 1, size - index);
+            System.arraycopy(lowKeys, index, lowKeys, index + 1, size - index);
+            System.arraycopy(lowIds, index, lowIds, index + 1, size - index);
+            children[index] = child;
+            counts[index] = child.count();
+            lowKeys[index] = child.lowKey();
+            lowIds[index] = child.lowId();
+            total += counts[index];
+            size++;
+        }
+
+        private void removeAt(int index)
+        {
+            System.arraycopy(children, index + 1, children, index, size - index - 1);
+            System.arraycopy(counts, index + 1, counts, index, size - index - 1);
+            System.arraycopy(lowKeys, index + 1, lowKeys, index, size - index - 1);
+            System.arraycopy(lowIds, index + 1, lowIds, index, size - index - 1);
+            size--;
+            children[size] = null;  // Let the removed node be collected
+        }
+
+        /**
+         * Moves the upper half of this full branch into a new branch after it.
+         */
+        private Branch split()
+        {
+            Branch upper = new Branch();
+            int half = BRANCH_SIZE / 2;
+
+            for (int i = half; i < BRANCH_SIZE; i++)
+            {
+                upper.children[i - half] = children[i];
+                upper.counts[i - half] = counts[i];
+                upper.lowKeys[i - half] = lowKeys[i];
+                upper.lowIds[i - half] = lowIds[i];
+                upper.total += counts[i];
+                total -= counts[i];
+                children[i] = null;
+            }
+            upper.size = BRANCH_SIZE - half;
+            size = half;
+            return upper;
+        }
+
+        @Override
+        int count()
+        {
+            return total;
+        }
+
+        @Override
+        long lowKey()
+        {
+            return lowKeys[0];
+        }
+
+        @Override
+        int lowId()
+        {
+            return lowIds[0];
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package model;
+
+import javafx.collections.transformation.FilteredList;
+
+import java.util.Collection;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * A predicate that makes a FilteredList show search results. The results are found ahead of time
+ * (usually on the search thread), so when the predicate is swapped in the FilteredList only has to check
+ * whether each object's ID is one of theirs. IDs are compared rather than objects, since searches may
+ * return a copy of a part kept in a part store. Objects added or replaced afterwards are checked against
+ * the search input, so edits made elsewhere show up in an active search without searching again.
+ * @param <T> Part or Product.
+ */
+public class SearchFilter<T> implements Predicate<T>
+{
+    private final String query;
+    private final SearchSession.Matcher<T> matcher;
+    private final ToIntFunction<T> idOf;
+    private final IdIndex<Object> found = new IdIndex<>();  // IDs of the objects found
+    private boolean applying = false;  // True only while the FilteredList checks every object for the first time
+
+    /**
+     * Constructs search filter.
+     * @param input text typed by the user.
+     * @param foundItems every object matching input at the time of the search.
+     * @param matcher checks one object against normalized input.
+     * @param idOf reads the ID of an object.
+     */
+    public SearchFilter(String input, Collection<T> foundItems, SearchSession.Matcher<T> matcher, ToIntFunction<T> idOf)
+    {
+        this.query = SearchMatcher.normalize(input);
+        this.matcher = matcher;
+        this.idOf = idOf;
+        this.found.ensureCapacity(foundItems.size());
+
+        for (T item : foundItems)
+        {
+            found.put(idOf.applyAsInt(item), 0);
+        }
+    }
+
+    /**
+     * Swaps this filter into a view. Must be called on the JavaFX thread, before the searched list changes again.
+     * @param view list shown in a table.
+     */
+    public void applyTo(FilteredList<T> view)
+    {
+        applying = true;
+        try
+        {
+            view.setPredicate(this);
+        }
+        finally
+        {
+            applying = false;
+        }
+    }
+
+    /**
+     * @param item part or product being shown or hidden.
+     * @return true if object matches search input.
+     */
+    @Override
+    public boolean test(T item)
+    {
+        if (applying)
+        {
+            return found.contains(idOf.applyAsInt(item));
+        }
+        return matcher.matches(query, item);  // Object changed after the search was made
+    }
+}
@@ -0,0 +1,149 @@
+package model;
+
+/**
+ * A class that checks search input against a part or product without creating Strings.
+ * The search key of an object is its ID followed by its name, compared in lowercase with
+ * blank spaces skipped. The ID digits are computed directly from the integer.
+ */
+public class SearchMatcher
+{
+    private static final long[] POWERS_OF_TEN = new long[11];
+
+    static
+    {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+        {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Converts search input to lowercase and removes blank spaces. Only needs to be done
+     * once per search, the result is then passed to matches().
+     * @param text search input.
+     * @return normalized search input.
+     */
+    public static String normalize(String text)
+    {
+        StringBuilder builder = new StringBuilder(text.length());
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+
+            if (!isBlank(c))
+            {
+                builder.append(Character.toLowerCase(c));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Checks if normalized search input is found in the ID, the name, or the ID and name combined.
+     * Allocates nothing.
+     * @param query search input, already passed through normalize().
+     * @param id numeric ID of part or product.
+     * @param name name of part or product.
+     * @return true if input is found.
+     */
+    public static boolean matches(String query, int id, String name)
+    {
+        if (query.isEmpty())
+        {
+            return true;
+        }
+
+        int digits = digitCount(id);
+        int length = digits + name.length();
+        char first = query.charAt(0);
+
+        for (int start = 0; start < length; start++)
+        {
+            char c = keyChar(id, digits, name, start);
+
+            if (isBlank(c) || Character.toLowerCase(c) != first)  // Input can't start here
+            {
+                continue;
+            }
+
+            int matched = 1;
+            int position = start + 1;
+
+            while (matched < query.length() && position < length)
+            {
+                char next = keyChar(id, digits, name, position++);
+
+                if (isBlank(next))
+                {
+                    continue;
+                }
+                if (Character.toLowerCase(next) != query.charAt(matched))
+                {
+                    break;
+                }
+                matched++;
+            }
+
+            if (matched == query.length())
+            {
+                return true;
+            }
+            if (position >= length)  // Ran out of key, later starts are even shorter
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true for the characters matched by the regex \s.
+     */
+    static boolean isBlank(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * @return number of characters the ID takes up when written out, including a minus sign.
+     */
+    static int digitCount(int id)
+    {
+        long value = Math.abs((long) id);
+        int count = id < 0 ? 2 : 1;
+
+        while (value >= 10)
+        {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns one character of the raw search key (ID followed by name), before lowercase and blank removal.
+     * @param id numeric ID of object.
+     * @param digits result of digitCount(id).
+     * @param name name of object.
+     * @param position location in the key, between 0 and digits + name length.
+     * @return character at that location.
+     */
+    static char keyChar(int id, int digits, String name, int position)
+    {
+        if (position >= digits)
+        {
+            return name.charAt(position - digits);
+        }
+        if (id < 0)
+        {
+            if (position == 0)
+            {
+                return '-';
+            }
+            return (char) ('0' + (-(long) id / POWERS_OF_TEN[digits - 1 - position]) % 10);
+        }
+        return (char) ('0' + (id / POWERS_OF_TEN[digits - 1 - position]) % 10);
+    }
+}
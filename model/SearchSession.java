@@ -0,0 +1,123 @@
+package model;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Remembers earlier searches made from one search box so that typing does not search the whole
+ * inventory for every character. If new input extends the previous input, only the previous
+ * results are checked. If characters are removed, an earlier result is reused.
+ * Cached results are thrown away whenever the inventory changes.
+ * @param <T> Part or Product.
+ */
+public class SearchSession<T>
+{
+    /**
+     * Checks a single part or product against normalized search input.
+     */
+    public interface Matcher<T>
+    {
+        boolean matches(String query, T item);
+    }
+
+    private final Function<String, ObservableList<T>> fullSearch;
+    private final Matcher<T> matcher;
+    private final IntSupplier inventoryVersion;
+
+    private final ArrayList<String> queries = new ArrayList<>();  // Each entry extends the one before it
+    private final ArrayList<ObservableList<T>> results = new ArrayList<>();  // Result of the query at the same location
+    private int cachedVersion;
+
+    /**
+     * Constructs search session.
+     * @param fullSearch searches the whole inventory, for example Inventory::lookupPart.
+     * @param matcher checks one object against normalized input.
+     * @param inventoryVersion returns a number that changes whenever the searched list changes.
+     */
+    public SearchSession(Function<String, ObservableList<T>> fullSearch, Matcher<T> matcher, IntSupplier inventoryVersion)
+    {
+        this.fullSearch = fullSearch;
+        this.matcher = matcher;
+        this.inventoryVersion = inventoryVersion;
+        this.cachedVersion = inventoryVersion.getAsInt();
+    }
+
+    /**
+     * Returns every object matching the input. The returned list should not be modified.
+     * Not thread safe, a session should only be used from one thread at a time.
+     * @param input text typed by the user.
+     * @return list containing all objects matching input.
+     */
+    public ObservableList<T> search(String input)
+    {
+        String query = SearchMatcher.normalize(input);
+
+        if (cachedVersion != inventoryVersion.getAsInt())  // Inventory changed, cached results may be wrong
+        {
+            reset();
+        }
+
+        while (!queries.isEmpty() && !query.startsWith(lastQuery()))  // Drop searches the new input no longer extends
+        {
+            queries.remove(queries.size() - 1);
+            results.remove(results.size() - 1);
+        }
+
+        if (queries.isEmpty())
+        {
+            return remember(query, fullSearch.apply(query));
+        }
+
+        ObservableList<T> previousResult = results.get(results.size() - 1);
+
+        if (query.equals(lastQuery()))  // Backspace, or only blank spaces were typed
+        {
+            return previousResult;
+        }
+
+        ObservableList<T> narrowedResult = FXCollections.observableArrayList();
+
+        for (int i = 0; i < previousResult.size(); i++)  // Anything that matches the new input also matched the old one
+        {
+            if ((i & 4095) == 0 && Thread.currentThread().isInterrupted())  // Search was cancelled by newer input
+            {
+                throw new CancellationException();
+            }
+
+            T item = previousResult.get(i);
+
+            if (matcher.matches(query, item))
+            {
+                narrowedResult.add(item);
+            }
+        }
+        return remember(query, narrowedResult);
+    }
+
+    /**
+     * Forgets all cached results.
+     */
+    public void reset()
+    {
+        queries.clear();
+        results.clear();
+        cachedVersion = inventoryVersion.getAsInt();
+    }
+
+    private String lastQuery()
+    {
+        return queries.get(queries.size() - 1);
+    }
+
+    private ObservableList<T> remember(String query, ObservableList<T> result)
+    {
+        queries.add(query);
+        results.add(result);
+        return result;
+    }
+}
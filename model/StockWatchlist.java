@@ -0,0 +1,252 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Parts or products ordered by how close their stock is to min or max, so the most critical ones can be
+ * listed without scanning the inventory. The margin of an item is the distance from its stock to the
+ * nearer of min and max, negative once stock is outside them. Items are kept in a binary heap with the
+ * smallest margin on top, and an ID index finds an item's place in the heap, so changing one stock level
+ * takes O(log n). Thread safe.
+ * @param <T> type of item watched.
+ */
+public class StockWatchlist<T>
+{
+    private final ToIntFunction<T> stock;
+    private final ToIntFunction<T> min;
+    private final ToIntFunction<T> max;
+    private final IdIndex<Object> places = new IdIndex<>();  // Item ID -> position in heap
+    private int[] ids = new int[16];
+    private long[] margins = new long[16];
+    private int size = 0;
+
+    /**
+     * Constructs an empty watchlist.
+     * @param stock reads the stock of an item.
+     * @param min reads the min of an item.
+     * @param max reads the max of an item.
+     */
+    public StockWatchlist(ToIntFunction<T> stock, ToIntFunction<T> min, ToIntFunction<T> max)
+    {
+        this.stock = stock;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Adds an item, or moves it after its stock, min or max changed. Levels are read while the watchlist
+     * is locked, so when several threads change one item the last update always sees the latest stock.
+     * @param id numeric ID of item.
+     * @param item item whose levels are read.
+     */
+    public synchronized void update(int id, T item)
+    {
+        long level = stock.applyAsInt(item);
+        long margin = Math.min(level - min.applyAsInt(item), max.applyAsInt(item) - level);  // Long, so extreme levels cannot overflow
+        int place = places.position(id);
+
+        if (place < 0)
+        {
+            if (size == ids.length)
+            {
+                ids = Arrays.copyOf(ids, size * 2);
+                margins = Arrays.copyOf(margins, size * 2);
+            }
+            place = size++;
+            ids[place] = id;
+            places.put(id, place);
+        }
+        margins[place] = margin;
+
+        if (!siftUp(place))
+        {
+            siftDown(place);
+        }
+    }
+
+    /**
+     * Stops watching an item. Does nothing if it is not watched.
+     * @param id numeric ID of item.
+     */
+    public synchronized void remove(int id)
+    {
+        int place = places.position(id);
+
+        if (place < 0)
+        {
+            return;
+        }
+        places.remove(id);
+        size--;
+
+        if (place < size)  // Last item fills the hole, then moves to where it belongs
+        {
+            ids[place] = ids[size];
+            margins[place] = margins[size];
+            places.setPosition(ids[place], place);
+
+            if (!siftUp(place))
+            {
+                siftDown(place);
+            }
+        }
+    }
+
+    /**
+     * Stops watching every item.
+     */
+    public synchronized void clear()
+    {
+        places.clear();
+        size = 0;
+    }
+
+    /**
+     * @return number of items watched.
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param id numeric ID of item.
+     * @return distance from stock to the nearer of min and max (negative if outside them), or Long.MAX_VALUE if not watched.
+     */
+    public synchronized long marginOf(int id)
+    {
+        int place = places.position(id);
+        return place >= 0 ? margins[place] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Lists the most critical items without disturbing the heap. Only the top of the heap is visited: a
+     * second small heap holds the candidates, starting with the top, and each item taken adds its two
+     * children. Takes O(k log k) whatever the number of items watched.
+     * @param k largest number of items listed.
+     * @return IDs of up to k items, smallest margin first (ties by ID).
+     */
+    public synchronized int[] mostCritical(int k)
+    {
+        int count = Math.max(0, Math.min(k, size));
+        int[] result = new int[count];
+        int[] candidates = new int[count + 1];  // Heap positions, each taken item removes one and adds at most two
+        int candidateCount = 0;
+
+        if (count > 0)
+        {
+            candidates[candidateCount++] = 0;
+        }
+
+        for (int taken = 0; taken < count; taken++)
+        {
+            int place = candidates[0];
+            result[taken] = ids[place];
+            candidates[0] = candidates[--candidateCount];
+            siftCandidateDown(candidates, candidateCount);
+
+            for (int child = 2 * place + 1; child <= 2 * place + 2 && child < size; child++)
+            {
+                int at = candidateCount++;
+
+                while (at > 0 && before(child, candidates[(at - 1) / 2]))
+                {
+                    candidates[at] = candidates[(at - 1) / 2];
+                    at = (at - 1) / 2;
+                }
+                candidates[at] = child;
+            }
+        }
+        return result;
+    }
+
+    private void siftCandidateDown(int[] candidates, int count)
+    {
+        int at = 0;
+
+        while (true)
+        {
+            int smallest = at;
+            int left = 2 * at + 1;
+
+            if (left < count && before(candidates[left], candidates[smallest]))
+            {
+                smallest = left;
+            }
+            if (left + 1 < count && before(candidates[left + 1], candidates[smallest]))
+            {
+                smallest = left + 1;
+            }
+            if (smallest == at)
+            {
+                return;
+            }
+
+            int swapped = candidates[at];
+            candidates[at] = candidates[smallest];
+            candidates[smallest] = swapped;
+            at = smallest;
+        }
+    }
+
+    /**
+     * @return true if the item at heap position a is more critical than the item at position b.
+     */
+    private boolean before(int a, int b)
+    {
+        return margins[a] < margins[b] || (margins[a] == margins[b] && ids[a] < ids[b]);
+    }
+
+    /**
+     * @return true if the item moved.
+     */
+    private boolean siftUp(int place)
+    {
+        int start = place;
+
+        while (place > 0 && before(place, (place - 1) / 2))
+        {
+            swap(place, (place - 1) / 2);
+            place = (place - 1) / 2;
+        }
+        return place != start;
+    }
+
+    private void siftDown(int place)
+    {
+        while (true)
+        {
+            int smallest = place;
+            int left = 2 * place + 1;
+
+            if (left < size && before(left, smallest))
+            {
+                smallest = left;
+            }
+            if (left + 1 < size && before(left + 1, smallest))
+            {
+                smallest = left + 1;
+            }
+            if (smallest == place)
+            {
+                return;
+            }
+            swap(place, smallest);
+            place = smallest;
+        }
+    }
+
+    private void swap(int a, int b)
+    {
+        int id = ids[a];
+        long margin = margins[a];
+
+        ids[a] = ids[b];
+        margins[a] = margins[b];
+        ids[b] = id;
+        margins[b] = margin;
+        places.setPosition(ids[a], a);
+        places.setPosition(ids[b], b);
+    }
+}
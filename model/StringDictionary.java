@@ -0,0 +1,104 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Stores each distinct string once and refers to it by a small integer code, so a column of
+ * repeated strings only needs an int per row. Each code counts how many rows use it, and the code
+ * is freed for another string once nothing uses it.
+ */
+public class StringDictionary
+{
+    private final HashMap<String, Integer> codes = new HashMap<>();
+    private String[] values = new String[16];
+    private int[] useCounts = new int[16];
+    private int[] freeCodes = new int[16];  // Codes whose use count dropped to zero
+    private int freeCount = 0;
+    private int codeCount = 0;  // Codes handed out so far, including freed ones
+
+    /**
+     * Returns the code of a string, adding the string if it is new, and counts one more use of it.
+     * @param value string to be stored, cannot be null.
+     * @return code of string.
+     */
+    public int acquire(String value)
+    {
+        Integer existing = codes.get(value);
+
+        if (existing != null)
+        {
+            useCounts[existing]++;
+            return existing;
+        }
+
+        int code;
+        if (freeCount > 0)
+        {
+            code = freeCodes[--freeCount];
+        }
+        else
+        {
+            if (codeCount == values.length)
+            {
+                values = Arrays.copyOf(values, codeCount * 2);
+                useCounts = Arrays.copyOf(useCounts, codeCount * 2);
+            }
+            code = codeCount++;
+        }
+
+        values[code] = value;
+        useCounts[code] = 1;
+        codes.put(value, code);
+        return code;
+    }
+
+    /**
+     * Counts one less use of a code, forgetting its string once nothing uses it.
+     * @param code code returned by acquire.
+     */
+    public void release(int code)
+    {
+        if (--useCounts[code] > 0)
+        {
+            return;
+        }
+
+        codes.remove(values[code]);
+        values[code] = null;
+
+        if (freeCount == freeCodes.length)
+        {
+            freeCodes = Arrays.copyOf(freeCodes, freeCount * 2);
+        }
+        freeCodes[freeCount++] = code;
+    }
+
+    /**
+     * @param code code returned by acquire.
+     * @return string stored under the code.
+     */
+    public String get(int code)
+    {
+        return values[code];
+    }
+
+    /**
+     * @return number of distinct strings in use.
+     */
+    public int size()
+    {
+        return codes.size();
+    }
+
+    /**
+     * Removes every string.
+     */
+    public void clear()
+    {
+        codes.clear();
+        Arrays.fill(values, 0, codeCount, null);
+        freeCount = 0;
+        codeCount = 0;
+    }
+}
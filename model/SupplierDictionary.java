@@ -0,0 +1,79 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every supplier (company name of outsourced parts) a small integer code, so each part stores
+ * an int instead of its own copy of the name, and parts can be matched or grouped by supplier by
+ * comparing ints. Codes start at 0 and are never reused. Thread safe.
+ */
+public class SupplierDictionary
+{
+    public static final int NO_SUPPLIER = -1;  // Code of a missing (null) company name
+
+    private static final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[16];  // Replaced, never changed in place, once codes are published
+    private static int count = 0;
+
+    /**
+     * Returns the code of a company name, giving it a new code if it has never been seen.
+     * @param companyName name of supplier.
+     * @return code of supplier, or NO_SUPPLIER if name is null.
+     */
+    public static int codeOf(String companyName)
+    {
+        if (companyName == null)
+        {
+            return NO_SUPPLIER;
+        }
+
+        Integer code = codes.get(companyName);
+        return code != null ? code : addSupplier(companyName);
+    }
+
+    /**
+     * Finds the code of a company name without adding it.
+     * @param companyName name of supplier.
+     * @return code of supplier, or NO_SUPPLIER if no part has ever used this name.
+     */
+    public static int find(String companyName)
+    {
+        Integer code = companyName == null ? null : codes.get(companyName);
+        return code != null ? code : NO_SUPPLIER;
+    }
+
+    /**
+     * @param code code returned by codeOf.
+     * @return company name of supplier, or null for NO_SUPPLIER.
+     */
+    public static String nameOf(int code)
+    {
+        return code == NO_SUPPLIER ? null : names[code];
+    }
+
+    /**
+     * @return number of codes handed out, every code is below this number.
+     */
+    public static int size()
+    {
+        return codes.size();
+    }
+
+    private static synchronized int addSupplier(String companyName)
+    {
+        Integer existing = codes.get(companyName);  // Another thread may have added it first
+
+        if (existing != null)
+        {
+            return existing;
+        }
+
+        String[] grown = count == names.length ? Arrays.copyOf(names, count * 2) : names;
+        grown[count] = companyName;
+        names = grown;  // Name is visible before the code is handed out
+
+        codes.put(companyName, count);
+        return count++;
+    }
+}
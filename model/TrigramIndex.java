@@ -0,0 +1,530 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * An inverted index from three character sequences (trigrams) to the IDs containing them.
+ * Each object is indexed by its search key, the ID followed by the name, lowercase with blank
+ * spaces removed. A search only has to verify the IDs found in every trigram of the query,
+ * instead of checking every object.
+ * After loading many objects at once the index can be rebuilt on a background thread, searches
+ * check every object until it is ready.
+ * Searches never read the lists being changed. The owner of the index calls publish() after each batch
+ * of changes, which hands searches an immutable snapshot: lists changed since the last snapshot are
+ * shared with it and copied before they are changed again (copy on write), so a snapshot only costs the
+ * lists that changed.
+ */
+public class TrigramIndex
+{
+    private static final Posting EMPTY = new Posting();  // Snapshot entry of a trigram whose list was emptied
+
+    private HashMap<Long, Posting> postings = new HashMap<>();  // Only read and changed while locked
+    private boolean ready = true;  // False while a background rebuild is running
+    private int rebuildNumber = 0;  // Lets a newer rebuild or clear() cancel an older rebuild
+    private final ArrayList<Change> changesDuringRebuild = new ArrayList<>();
+    private final HashSet<Long> changedGrams = new HashSet<>();  // Trigrams whose lists changed since the last publish()
+    private volatile Snapshot published = new Snapshot(new HashMap<>(), new HashMap<>(), true);  // Read by searches on any thread
+
+    /**
+     * Indexes an object under its ID and name.
+     * @param id numeric ID of object.
+     * @param name name of object.
+     */
+    public synchronized void add(int id, String name)
+    {
+        if (!ready)  // Applied to the new index once the rebuild finishes
+        {
+            changesDuringRebuild.add(new Change(true, id, name));
+            return;
+        }
+        addTo(postings, id, name);
+    }
+
+    /**
+     * Removes an object from the index. Name must be the same name the object was added with.
+     * @param id numeric ID of object.
+     * @param name name of object when it was added.
+     */
+    public synchronized void remove(int id, String name)
+    {
+        if (!ready)
+        {
+            changesDuringRebuild.add(new Change(false, id, name));
+            return;
+        }
+        removeFrom(postings, id, name);
+    }
+
+    /**
+     * Finds the IDs that contain every trigram of the query, in the last published snapshot. These are
+     * candidates only, each one still has to be checked against the full query. Can be called from any thread.
+     * @param query search text that has already been normalized.
+     * @return sorted array of candidate IDs, or null if the query is too short or the index is being rebuilt.
+     */
+    public int[] candidates(String query)
+    {
+        return published.candidates(query);
+    }
+
+    /**
+     * Hands searches a snapshot holding every change made since the last call. Call after each batch of
+     * add() and remove() calls. Takes time in proportion to the lists changed, not the size of the index.
+     */
+    public synchronized void publish()
+    {
+        if (changedGrams.isEmpty())
+        {
+            return;
+        }
+
+        Snapshot current = published;
+        HashMap<Long, Posting> base = current.base;
+        HashMap<Long, Posting> changed = new HashMap<>(current.changed);
+
+        for (Long gram : changedGrams)
+        {
+            Posting posting = postings.get(gram);
+            changed.put(gram, posting != null ? posting.share() : EMPTY);
+        }
+        changedGrams.clear();
+
+        if (changed.size() > base.size() / 4 + 64)  // Fold the changed lists into a new base, so snapshots stay cheap to make
+        {
+            base = new HashMap<>(base);
+
+            for (Map.Entry<Long, Posting> entry : changed.entrySet())
+            {
+                if (entry.getValue().size == 0)
+                {
+                    base.remove(entry.getKey());
+                }
+                else
+                {
+                    base.put(entry.getKey(), entry.getValue());
+                }
+            }
+            changed = new HashMap<>();
+        }
+        published = new Snapshot(base, changed, ready);
+    }
+
+    /**
+     * Removes every entry, cancelling any rebuild that is running.
+     */
+    public synchronized void clear()
+    {
+        rebuildNumber++;
+        changesDuringRebuild.clear();
+        changedGrams.clear();
+        postings = new HashMap<>();
+        ready = true;
+        published = new Snapshot(new HashMap<>(), new HashMap<>(), true);
+    }
+
+    /**
+     * Replaces the index with one built from these objects on a background thread. Much faster than
+     * calling add() for each object, since every list is sorted once at the end. Until the rebuild
+     * finishes candidates() returns null, and changes made through add() and remove() are applied
+     * to the new index when it is ready.
+     * @param ids numeric IDs of every object, not changed by the index.
+     * @param names names of every object, at the same locations as ids.
+     */
+    public synchronized void rebuildInBackground(int[] ids, String[] names)
+    {
+        int number = ++rebuildNumber;
+        changesDuringRebuild.clear();
+        changedGrams.clear();
+        postings = new HashMap<>();
+        ready = false;
+        published = new Snapshot(new HashMap<>(), new HashMap<>(), false);  // Searches check every object until the rebuild is done
+
+        Thread builder = new Thread(() -> finishRebuild(number, build(ids, names)), "trigram-index");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private synchronized void finishRebuild(int number, HashMap<Long, Posting> built)
+    {
+        if (number != rebuildNumber)  // Cleared or rebuilt again while building
+        {
+            return;
+        }
+
+        for (Change change : changesDuringRebuild)
+        {
+            if (change.added)
+            {
+                addTo(built, change.id, change.name);
+            }
+            else
+            {
+                removeFrom(built, change.id, change.name);
+            }
+        }
+        changesDuringRebuild.clear();
+        changedGrams.clear();
+        postings = built;
+        ready = true;
+
+        HashMap<Long, Posting> base = new HashMap<>(built.size() * 2);
+
+        for (Map.Entry<Long, Posting> entry : built.entrySet())
+        {
+            base.put(entry.getKey(), entry.getValue().share());
+        }
+        published = new Snapshot(base, new HashMap<>(), true);
+    }
+
+    private static HashMap<Long, Posting> build(int[] ids, String[] names)
+    {
+        BuildTable table = new BuildTable();
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            for (long gram : keyTrigrams(ids[i], names[i]))
+            {
+                table.posting(gram).append(ids[i]);
+            }
+        }
+
+        HashMap<Long, Posting> built = new HashMap<>(table.size * 2);
+
+        for (int slot = 0; slot < table.postings.length; slot++)  // Only distinct trigrams are boxed, not every occurrence
+        {
+            Posting posting = table.postings[slot];
+
+            if (posting != null)
+            {
+                posting.sortDistinct();
+                built.put(table.grams[slot], posting);
+            }
+        }
+        return built;
+    }
+
+    private void addTo(HashMap<Long, Posting> postings, int id, String name)
+    {
+        for (long gram : keyTrigrams(id, name))
+        {
+            postings.computeIfAbsent(gram, k -> new Posting()).add(id);
+            changedGrams.add(gram);
+        }
+    }
+
+    private void removeFrom(HashMap<Long, Posting> postings, int id, String name)
+    {
+        for (long gram : keyTrigrams(id, name))
+        {
+            Posting posting = postings.get(gram);
+
+            if (posting != null)
+            {
+                posting.remove(id);
+                changedGrams.add(gram);
+
+                if (posting.size == 0)  // Drop empty lists so the map does not grow forever
+                {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Packs every trigram of the normalized search key (ID followed by name) into a long,
+     * without building the key as a String.
+     */
+    private static long[] keyTrigrams(int id, String name)
+    {
+        int digits = SearchMatcher.digitCount(id);
+        int length = digits + name.length();
+        long[] grams = new long[Math.max(0, length - 2)];
+        int gramCount = 0;
+        long window = 0;
+        int filled = 0;
+
+        for (int i = 0; i < length; i++)
+        {
+            char c = SearchMatcher.keyChar(id, digits, name, i);
+
+            if (SearchMatcher.isBlank(c))
+            {
+                continue;
+            }
+
+            window = ((window << 16) | Character.toLowerCase(c)) & 0xFFFF_FFFF_FFFFL;  // Keep the last three characters
+
+            if (++filled >= 3)
+            {
+                grams[gramCount++] = window;
+            }
+        }
+        return Arrays.copyOf(grams, gramCount);
+    }
+
+    private static long trigram(String text, int start)
+    {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    /**
+     * The lists of the index at one moment, never changed once made. Lists changed since the base was
+     * made are looked up first.
+     */
+    private static class Snapshot
+    {
+        private final HashMap<Long, Posting> base;
+        private final HashMap<Long, Posting> changed;  // Trigram -> list, EMPTY if the list was emptied
+        private final boolean ready;
+
+        private Snapshot(HashMap<Long, Posting> base, HashMap<Long, Posting> changed, boolean ready)
+        {
+            this.base = base;
+            this.changed = changed;
+            this.ready = ready;
+        }
+
+        private Posting list(long gram)
+        {
+            Posting posting = changed.get(gram);
+
+            if (posting == null)
+            {
+                posting = base.get(gram);
+            }
+            return posting == null || posting.size == 0 ? null : posting;
+        }
+
+        private int[] candidates(String query)
+        {
+            if (query.length() < 3 || !ready)
+            {
+                return null;  // Caller has to fall back to checking every object
+            }
+
+            int gramCount = query.length() - 2;
+            Posting[] lists = new Posting[gramCount];
+
+            for (int i = 0; i < gramCount; i++)
+            {
+                lists[i] = list(trigram(query, i));
+
+                if (lists[i] == null)  // A trigram nothing contains, so nothing can match
+                {
+                    return new int[0];
+                }
+            }
+
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));  // Start from the shortest list
+
+            int[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+            int resultSize = result.length;
+
+            for (int i = 1; i < gramCount && resultSize > 0; i++)
+            {
+                if (lists[i] == lists[i - 1])  // Repeated trigram in query
+                {
+                    continue;
+                }
+
+                int kept = 0;
+
+                for (int j = 0; j < resultSize; j++)
+                {
+                    if (lists[i].contains(result[j]))
+                    {
+                        result[kept++] = result[j];
+                    }
+                }
+                resultSize = kept;
+            }
+
+            return Arrays.copyOf(result, resultSize);
+        }
+    }
+
+    /**
+     * Sorted list of IDs that contain one trigram.
+     */
+    private static class Posting
+    {
+        private int[] ids = new int[4];
+        private int size;
+        private boolean shared = false;  // True if a snapshot reads ids, it is copied before it is changed
+
+        private Posting()
+        {
+        }
+
+        private Posting(int[] ids, int size)
+        {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        /**
+         * @return list for a snapshot, holding the IDs this list has now.
+         */
+        private Posting share()
+        {
+            shared = true;
+            return new Posting(ids, size);
+        }
+
+        private void own()
+        {
+            if (shared)
+            {
+                ids = ids.clone();
+                shared = false;
+            }
+        }
+
+        private void add(int id)
+        {
+            int slot = Arrays.binarySearch(ids, 0, size, id);
+
+            if (slot >= 0)  // Trigram appears more than once in the same key
+            {
+                return;
+            }
+
+            own();
+            slot = -slot - 1;
+
+            if (size == ids.length)
+            {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, slot, ids, slot + 1, size - slot);  // Generated IDs are increasing, so this is usually an append
+            ids[slot] = id;
+            size++;
+        }
+
+        /**
+         * Adds an ID without keeping the list sorted, sortDistinct() must be called before the list is used.
+         */
+        private void append(int id)
+        {
+            if (size == ids.length)
+            {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        private void sortDistinct()
+        {
+            Arrays.sort(ids, 0, size);
+
+            int distinct = 0;
+            for (int i = 0; i < size; i++)
+            {
+                if (distinct == 0 || ids[i] != ids[distinct - 1])
+                {
+                    ids[distinct++] = ids[i];
+                }
+            }
+            size = distinct;
+        }
+
+        private void remove(int id)
+        {
+            int slot = Arrays.binarySearch(ids, 0, size, id);
+
+            if (slot >= 0)
+            {
+                own();
+                System.arraycopy(ids, slot + 1, ids, slot, size - slot - 1);
+                size--;
+            }
+        }
+
+        private boolean contains(int id)
+        {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    /**
+     * Trigram to list table used while rebuilding, stores trigrams as primitives so that each
+     * occurrence of a trigram does not create a Long.
+     */
+    private static class BuildTable
+    {
+        private long[] grams = new long[1 << 12];
+        private Posting[] postings = new Posting[1 << 12];
+        private int size = 0;
+
+        private Posting posting(long gram)
+        {
+            int mask = grams.length - 1;
+            int slot = (int) (gram * 0x9E3779B97F4A7C15L >>> 40) & mask;
+
+            while (postings[slot] != null)
+            {
+                if (grams[slot] == gram)
+                {
+                    return postings[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            Posting posting = new Posting();
+            grams[slot] = gram;
+            postings[slot] = posting;
+
+            if (++size * 2 > grams.length)  // Keep table at most half full
+            {
+                grow();
+            }
+            return posting;
+        }
+
+        private void grow()
+        {
+            long[] oldGrams = grams;
+            Posting[] oldPostings = postings;
+
+            grams = new long[oldGrams.length * 2];
+            postings = new Posting[oldPostings.length * 2];
+            int mask = grams.length - 1;
+
+            for (int i = 0; i < oldPostings.length; i++)
+            {
+                if (oldPostings[i] != null)
+                {
+                    int slot = (int) (oldGrams[i] * 0x9E3779B97F4A7C15L >>> 40) & mask;
+
+                    while (postings[slot] != null)
+                    {
+                        slot = (slot + 1) & mask;
+                    }
+                    grams[slot] = oldGrams[i];
+                    postings[slot] = oldPostings[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * An add or remove made while a rebuild was running.
+     */
+    private static class Change
+    {
+        private final boolean added;
+        private final int id;
+        private final String name;
+
+        private Change(boolean added, int id, String name)
+        {
+            this.added = added;
+            this.id = id;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reverse index from part ID to the products whose associated parts list the part, so "where used"
+ * questions and the check made before deleting a part never scan the products. Only products in the
+ * inventory are indexed, they keep the index up to date as their associated parts change. Thread safe.
+ */
+public class WhereUsedIndex
+{
+    private final ConcurrentHashMap<Integer, ProductCounts> users = new ConcurrentHashMap<>();  // Part ID -> products using it, unused parts have no entry
+
+    /**
+     * Records that a product lists a part.
+     * @param partId numeric ID of associated part.
+     * @param productId numeric ID of product listing the part.
+     */
+    public void add(int partId, int productId)
+    {
+        users.compute(partId, (id, counts) ->
+        {
+            ProductCounts result = counts != null ? counts : new ProductCounts();
+            result.add(productId);
+            return result;
+        });
+    }
+
+    /**
+     * Records that a product no longer lists a part. Does nothing if the product does not list the part.
+     * @param partId numeric ID of associated part.
+     * @param productId numeric ID of product listing the part.
+     */
+    public void remove(int partId, int productId)
+    {
+        users.computeIfPresent(partId, (id, counts) ->
+        {
+            counts.remove(productId);
+            return counts.isEmpty() ? null : counts;  // Null drops the entry, so isUsed() stays a key lookup
+        });
+    }
+
+    /**
+     * Records every associated part of a product.
+     * @param product product being added to the inventory.
+     */
+    public void addProduct(Product product)
+    {
+        BillOfMaterials parts = product.billOfMaterials();
+
+        for (int i = 0; i < parts.size(); i++)
+        {
+            add(parts.partIdAt(i), product.getId());
+        }
+    }
+
+    /**
+     * Removes every associated part of a product.
+     * @param product product being removed from the inventory.
+     */
+    public void removeProduct(Product product)
+    {
+        BillOfMaterials parts = product.billOfMaterials();
+
+        for (int i = 0; i < parts.size(); i++)
+        {
+            remove(parts.partIdAt(i), product.getId());
+        }
+    }
+
+    /**
+     * @param partId numeric ID of part.
+     * @return true if any product lists the part.
+     */
+    public boolean isUsed(int partId)
+    {
+        return users.containsKey(partId);
+    }
+
+    /**
+     * @param partId numeric ID of part.
+     * @return IDs of every product listing the part (each once, in no particular order), empty if unused.
+     */
+    public int[] productsUsing(int partId)
+    {
+        ProductCounts counts = users.get(partId);
+        return counts != null ? counts.productIds() : new int[0];
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear()
+    {
+        users.clear();
+    }
+
+    /**
+     * Product ID -> number of times the product was recorded as listing the part (1 unless a product is
+     * recorded twice), in a small open addressing table.
+     * Changed only inside compute() for its part, read by any thread.
+     */
+    private static class ProductCounts
+    {
+        private int[] productIds = new int[4];
+        private int[] counts = new int[4];  // A count of 0 marks an empty slot
+        private int size = 0;
+
+        synchronized void add(int productId)
+        {
+            if ((size + 1) * 2 > productIds.length)  // Keep load factor at or below 0.5
+            {
+                resize(productIds.length * 2);
+            }
+
+            int slot = findSlot(productId);
+
+            if (counts[slot] == 0)
+            {
+                productIds[slot] = productId;
+                size++;
+            }
+            counts[slot]++;
+        }
+
+        synchronized void remove(int productId)
+        {
+            int slot = findSlot(productId);
+
+            if (counts[slot] == 0 || --counts[slot] > 0)  // Not listed, or still listed more than once
+            {
+                return;
+            }
+
+            // Backward shift deletion, same as IdIndex
+            int mask = productIds.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+
+            while (counts[next] != 0)
+            {
+                int home = hash(productIds[next], mask);
+
+                if (((next - home) & mask) >= ((next - hole) & mask))
+                {
+                    productIds[hole] = productIds[next];
+                    counts[hole] = counts[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            counts[hole] = 0;
+            size--;
+        }
+
+        synchronized boolean isEmpty()
+        {
+            return size == 0;
+        }
+
+        synchronized int[] productIds()
+        {
+            int[] ids = new int[size];
+            int count = 0;
+
+            for (int slot = 0; slot < counts.length; slot++)
+            {
+                if (counts[slot] != 0)
+                {
+                    ids[count++] = productIds[slot];
+                }
+            }
+            return ids;
+        }
+
+        private int findSlot(int productId)
+        {
+            int mask = productIds.length - 1;
+            int slot = hash(productId, mask);
+
+            while (counts[slot] != 0 && productIds[slot] != productId)
+            {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static int hash(int id, int mask)
+        {
+            int h = id * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void resize(int capacity)
+        {
+            int[] oldIds = productIds;
+            int[] oldCounts = counts;
+
+            productIds = new int[capacity];
+            counts = new int[capacity];
+
+            for (int i = 0; i < oldCounts.length; i++)
+            {
+                if (oldCounts[i] != 0)
+                {
+                    int slot = findSlot(oldIds[i]);
+                    productIds[slot] = oldIds[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+}